@@ -49,6 +49,10 @@ public final class BasicMovie implements Comparable<BasicMovie> {
     private Integer collectionId;
     @NotNull
     private Integer tmdbId;
+    @NotNull
+    private IdSource imdbIdSource;
+    @NotNull
+    private IdSource tmdbIdSource;
 
     private BasicMovie(@NotNull String name,
                        @NotNull Integer year,
@@ -75,6 +79,8 @@ public final class BasicMovie implements Comparable<BasicMovie> {
         this.moviesInCollection = moviesInCollection;
         this.ratingKey = ratingKey;
         this.key = key;
+        this.imdbIdSource = IdSource.UNKNOWN;
+        this.tmdbIdSource = IdSource.UNKNOWN;
     }
 
     public @NotNull Integer getCollectionId() {
@@ -106,7 +112,20 @@ public final class BasicMovie implements Comparable<BasicMovie> {
     }
 
     public void setImdbId(@NotNull String imdbId) {
+        setImdbId(imdbId, IdSource.UNKNOWN);
+    }
+
+    public void setImdbId(@NotNull String imdbId, @NotNull IdSource imdbIdSource) {
         this.imdbId = imdbId;
+        this.imdbIdSource = imdbIdSource;
+    }
+
+    /**
+     * Not saved with the movie, so movies read back from disk always say {@link IdSource#UNKNOWN}
+     */
+    @JsonIgnore
+    public @NotNull IdSource getImdbIdSource() {
+        return imdbIdSource;
     }
 
     public @NotNull Integer getTmdbId() {
@@ -114,11 +133,24 @@ public final class BasicMovie implements Comparable<BasicMovie> {
     }
 
     public void setTmdbId(int tmdbId) {
-        this.tmdbId = tmdbId;
+        setTmdbId(tmdbId, IdSource.UNKNOWN);
     }
 
     public void setTmdbId(@NotNull Integer tmdbId) {
+        setTmdbId(tmdbId, IdSource.UNKNOWN);
+    }
+
+    public void setTmdbId(@NotNull Integer tmdbId, @NotNull IdSource tmdbIdSource) {
         this.tmdbId = tmdbId;
+        this.tmdbIdSource = tmdbIdSource;
+    }
+
+    /**
+     * Not saved with the movie, so movies read back from disk always say {@link IdSource#UNKNOWN}
+     */
+    @JsonIgnore
+    public @NotNull IdSource getTmdbIdSource() {
+        return tmdbIdSource;
     }
 
     public @NotNull String getLanguage() {
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Difference between the owned movies saved by the last scan of a library and the ones found now
+ */
+public final class LibraryChanges {
+
+    @NotNull
+    private final List<BasicMovie> changed;
+    @NotNull
+    private final List<BasicMovie> removed;
+
+    private LibraryChanges(@NotNull List<BasicMovie> changed, @NotNull List<BasicMovie> removed) {
+        this.changed = Collections.unmodifiableList(changed);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * A movie counts as changed when it's new, or when Plex now reports different ids for it
+     */
+    public static @NotNull LibraryChanges between(@NotNull Collection<BasicMovie> previous, @NotNull Collection<BasicMovie> current) {
+        MovieIndex previousIndex = new MovieIndex(previous);
+        MovieIndex currentIndex = new MovieIndex(current);
+
+        List<BasicMovie> changed = new ArrayList<>();
+        for (BasicMovie basicMovie : current) {
+            BasicMovie previousMovie = previousIndex.get(basicMovie);
+            if (previousMovie == null || isDifferent(previousMovie, basicMovie)) {
+                changed.add(basicMovie);
+            }
+        }
+
+        List<BasicMovie> removed = new ArrayList<>();
+        for (BasicMovie basicMovie : previous) {
+            if (!currentIndex.contains(basicMovie)) {
+                removed.add(basicMovie);
+            }
+        }
+
+        return new LibraryChanges(changed, removed);
+    }
+
+    private static boolean isDifferent(@NotNull BasicMovie previous, @NotNull BasicMovie current) {
+        return !Objects.equals(previous.getTmdbId(), current.getTmdbId()) ||
+                !Objects.equals(previous.getImdbId(), current.getImdbId()) ||
+                !Objects.equals(previous.getRatingKey(), current.getRatingKey());
+    }
+
+    public @NotNull List<BasicMovie> getChanged() {
+        return changed;
+    }
+
+    public @NotNull List<BasicMovie> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryChanges{" +
+                "changed=" + changed.size() +
+                ", removed=" + removed.size() +
+                '}';
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps movies hashed by TMDB id, IMDB id, and title plus year so lookups don't have to walk a list. A lookup follows
+ * the same precedence as {@link BasicMovie#equals(Object)}: TMDB id first, then IMDB id, then title and year.
+ * <p>
+ * Each key points at the first movie indexed under it, and later movies with the same key are only reachable through
+ * their other keys. A lookup returns the movie under the query's TMDB id if there is one, else the movie under its
+ * IMDB id, else the movie under its title and year. This is not always the movie {@link List#indexOf(Object)} would
+ * find, which is the first movie equal to the query on any of its keys.
+ * <p>
+ * Keys are read when a movie is added. Ids on {@link BasicMovie} can change after that, and the index doesn't see the
+ * new ids until {@link #reindex(BasicMovie)} is called. Keys the movie had before stay in place. All methods are
+ * synchronized on the index, so callers can lock on it to make a lookup and an add atomic.
+ */
+public final class MovieIndex implements Iterable<BasicMovie> {
+
+    @NotNull
+    private final List<BasicMovie> movies;
+    @NotNull
+    private final Map<Integer, BasicMovie> byTmdbId;
+    @NotNull
+    private final Map<String, BasicMovie> byImdbId;
+    @NotNull
+    private final Map<Pair<String, Integer>, BasicMovie> byNameAndYear;
+
+    public MovieIndex() {
+        movies = new ArrayList<>();
+        byTmdbId = new HashMap<>();
+        byImdbId = new HashMap<>();
+        byNameAndYear = new HashMap<>();
+    }
+
+    public MovieIndex(@NotNull Collection<BasicMovie> basicMovies) {
+        this();
+        basicMovies.forEach(this::add);
+    }
+
+    /**
+     * @return The movie matching the given movie, or null if none do
+     */
+    public synchronized @Nullable BasicMovie get(@NotNull BasicMovie basicMovie) {
+        if (basicMovie.getTmdbId() != -1) {
+            BasicMovie found = byTmdbId.get(basicMovie.getTmdbId());
+            if (found != null) {
+                return found;
+            }
+        }
+
+        if (StringUtils.isNotEmpty(basicMovie.getImdbId())) {
+            BasicMovie found = byImdbId.get(basicMovie.getImdbId());
+            if (found != null) {
+                return found;
+            }
+        }
+
+        return byNameAndYear.get(nameAndYear(basicMovie));
+    }
+
+    public synchronized boolean contains(@NotNull BasicMovie basicMovie) {
+        return get(basicMovie) != null;
+    }
+
+    /**
+     * Adds the movie even if a matching one is already present, the same as adding to a list
+     */
+    public synchronized void add(@NotNull BasicMovie basicMovie) {
+        movies.add(basicMovie);
+        reindex(basicMovie);
+    }
+
+    /**
+     * Adds the movie only if no matching movie is present
+     *
+     * @return True if the movie was added
+     */
+    public synchronized boolean addIfAbsent(@NotNull BasicMovie basicMovie) {
+        if (contains(basicMovie)) {
+            return false;
+        }
+        add(basicMovie);
+        return true;
+    }
+
+    /**
+     * Indexes any ids set on the movie since it was added. Keys already pointing at another movie are left alone.
+     */
+    public synchronized void reindex(@NotNull BasicMovie basicMovie) {
+        if (basicMovie.getTmdbId() != -1) {
+            byTmdbId.putIfAbsent(basicMovie.getTmdbId(), basicMovie);
+        }
+
+        if (StringUtils.isNotEmpty(basicMovie.getImdbId())) {
+            byImdbId.putIfAbsent(basicMovie.getImdbId(), basicMovie);
+        }
+
+        byNameAndYear.putIfAbsent(nameAndYear(basicMovie), basicMovie);
+    }
+
+    public synchronized int size() {
+        return movies.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return movies.isEmpty();
+    }
+
+    /**
+     * @return A copy of every movie in the order they were added
+     */
+    public synchronized @NotNull List<BasicMovie> toList() {
+        return new ArrayList<>(movies);
+    }
+
+    /**
+     * Iterates over a copy, so the index can keep changing while iterating
+     */
+    @Override
+    public @NotNull Iterator<BasicMovie> iterator() {
+        return toList().iterator();
+    }
+
+    private static @NotNull Pair<String, Integer> nameAndYear(@NotNull BasicMovie basicMovie) {
+        return new Pair<>(basicMovie.getNameWithoutBadCharacters(), basicMovie.getYear());
+    }
+}
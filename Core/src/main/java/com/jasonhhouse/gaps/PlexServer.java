@@ -13,6 +13,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.jasonhhouse.plex.libs.PlexLibrary;
 import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -33,9 +34,11 @@ public final class PlexServer {
     private String address;
     @Schema(required = true, defaultValue = "32400", description = "Port of your Plex Server")
     private Integer port;
+    private final boolean unmodifiable;
 
     public PlexServer() {
         plexLibraries = new LinkedHashSet<>();
+        unmodifiable = false;
     }
 
     public PlexServer(String friendlyName, String machineIdentifier, String plexToken, String address, Integer port) {
@@ -45,6 +48,24 @@ public final class PlexServer {
         this.address = address;
         this.port = port;
         plexLibraries = new LinkedHashSet<>();
+        unmodifiable = false;
+    }
+
+    private PlexServer(PlexServer plexServer) {
+        this.friendlyName = plexServer.friendlyName;
+        this.machineIdentifier = plexServer.machineIdentifier;
+        this.plexToken = plexServer.plexToken;
+        this.address = plexServer.address;
+        this.port = plexServer.port;
+        this.plexLibraries = Collections.unmodifiableSet(new LinkedHashSet<>(plexServer.plexLibraries));
+        this.unmodifiable = true;
+    }
+
+    /**
+     * @return A copy that can be shared, its setters and library set throw {@link UnsupportedOperationException}
+     */
+    public PlexServer toUnmodifiable() {
+        return unmodifiable ? this : new PlexServer(this);
     }
 
     public String getFriendlyName() {
@@ -52,6 +73,7 @@ public final class PlexServer {
     }
 
     public void setFriendlyName(String friendlyName) {
+        checkModifiable();
         this.friendlyName = friendlyName;
     }
 
@@ -60,6 +82,7 @@ public final class PlexServer {
     }
 
     public void setMachineIdentifier(String machineIdentifier) {
+        checkModifiable();
         this.machineIdentifier = machineIdentifier;
     }
 
@@ -72,6 +95,7 @@ public final class PlexServer {
     }
 
     public void setPlexToken(String plexToken) {
+        checkModifiable();
         this.plexToken = plexToken;
     }
 
@@ -80,6 +104,7 @@ public final class PlexServer {
     }
 
     public void setAddress(String address) {
+        checkModifiable();
         this.address = address;
     }
 
@@ -88,9 +113,16 @@ public final class PlexServer {
     }
 
     public void setPort(Integer port) {
+        checkModifiable();
         this.port = port;
     }
 
+    private void checkModifiable() {
+        if (unmodifiable) {
+            throw new UnsupportedOperationException("Plex server " + friendlyName + " is shared and can't be changed");
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
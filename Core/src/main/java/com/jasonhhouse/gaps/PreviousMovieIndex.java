@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.jasonhhouse.gaps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Movies found on earlier scans, looked up by title and year so a library scan can carry their TMDB details over. The
+ * index is only built the first time it's needed, then shared by every library scanned with it. Titles are matched
+ * ignoring case and extra whitespace. When several movies share a title and year, the first one wins, as in
+ * {@link MovieIndex}.
+ */
+public final class PreviousMovieIndex {
+
+    @NotNull
+    private final Supplier<? extends Collection<BasicMovie>> source;
+
+    @Nullable
+    private volatile Map<Pair<String, Integer>, BasicMovie> byTitleAndYear;
+
+    private PreviousMovieIndex(@NotNull Supplier<? extends Collection<BasicMovie>> source) {
+        this.source = source;
+    }
+
+    public static @NotNull PreviousMovieIndex empty() {
+        return new PreviousMovieIndex(Collections::emptyList);
+    }
+
+    public static @NotNull PreviousMovieIndex of(@NotNull Collection<BasicMovie> basicMovies) {
+        return new PreviousMovieIndex(() -> basicMovies);
+    }
+
+    /**
+     * @param source Read once, the first time a movie is looked up
+     */
+    public static @NotNull PreviousMovieIndex lazy(@NotNull Supplier<? extends Collection<BasicMovie>> source) {
+        return new PreviousMovieIndex(source);
+    }
+
+    /**
+     * @return The movie with the same title and year, or null if there isn't one
+     */
+    public @Nullable BasicMovie get(@NotNull String title, int year) {
+        return getByTitleAndYear().get(new Pair<>(normalize(title), year));
+    }
+
+    public int size() {
+        return getByTitleAndYear().size();
+    }
+
+    static @NotNull String normalize(@NotNull String title) {
+        return StringUtils.normalizeSpace(title).toLowerCase(Locale.ROOT);
+    }
+
+    private @NotNull Map<Pair<String, Integer>, BasicMovie> getByTitleAndYear() {
+        Map<Pair<String, Integer>, BasicMovie> index = byTitleAndYear;
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = byTitleAndYear;
+            if (index == null) {
+                Collection<BasicMovie> basicMovies = source.get();
+                index = new HashMap<>(Math.max(16, (int) (basicMovies.size() / 0.75f) + 1));
+                for (BasicMovie basicMovie : basicMovies) {
+                    index.putIfAbsent(new Pair<>(normalize(basicMovie.getName()), basicMovie.getYear()), basicMovie);
+                }
+                byTitleAndYear = index;
+            }
+            return index;
+        }
+    }
+}
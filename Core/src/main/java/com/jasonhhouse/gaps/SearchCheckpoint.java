@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Saved progress of a library search, so a search stopped part way through can skip the owned movies it already
+ * finished. Searched holds every movie whose collection has been resolved, owned or found in a collection.
+ */
+public final class SearchCheckpoint {
+
+    @NotNull
+    private final String machineIdentifier;
+    @NotNull
+    private final Integer key;
+    @NotNull
+    private final Long savedAt;
+    @NotNull
+    private final List<BasicMovie> processed;
+    @NotNull
+    private final List<BasicMovie> searched;
+    @NotNull
+    private final List<BasicMovie> recommended;
+
+    @JsonCreator
+    public SearchCheckpoint(@JsonProperty(value = "machineIdentifier") @NotNull String machineIdentifier,
+                            @JsonProperty(value = "key") @NotNull Integer key,
+                            @JsonProperty(value = "savedAt") @Nullable Long savedAt,
+                            @JsonProperty(value = "processed") @Nullable Collection<BasicMovie> processed,
+                            @JsonProperty(value = "searched") @Nullable Collection<BasicMovie> searched,
+                            @JsonProperty(value = "recommended") @Nullable Collection<BasicMovie> recommended) {
+        this.machineIdentifier = machineIdentifier;
+        this.key = key;
+        this.savedAt = savedAt == null ? 0L : savedAt;
+        this.processed = copy(processed);
+        this.searched = copy(searched);
+        this.recommended = copy(recommended);
+    }
+
+    private static @NotNull List<BasicMovie> copy(@Nullable Collection<BasicMovie> basicMovies) {
+        return basicMovies == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(basicMovies));
+    }
+
+    @NotNull
+    public String getMachineIdentifier() {
+        return machineIdentifier;
+    }
+
+    @NotNull
+    public Integer getKey() {
+        return key;
+    }
+
+    /**
+     * @return Epoch milliseconds the checkpoint was taken
+     */
+    @NotNull
+    public Long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * @return Owned movies fully searched
+     */
+    @NotNull
+    public List<BasicMovie> getProcessed() {
+        return processed;
+    }
+
+    @NotNull
+    public List<BasicMovie> getSearched() {
+        return searched;
+    }
+
+    @NotNull
+    public List<BasicMovie> getRecommended() {
+        return recommended;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCheckpoint{" +
+                "machineIdentifier='" + machineIdentifier + '\'' +
+                ", key=" + key +
+                ", savedAt=" + savedAt +
+                ", processed=" + processed.size() +
+                ", searched=" + searched.size() +
+                ", recommended=" + recommended.size() +
+                '}';
+    }
+}
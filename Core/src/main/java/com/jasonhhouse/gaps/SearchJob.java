@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * One search of one library. Holds the search's own cancel flag, progress counts and state, so searches of different
+ * libraries can run side by side without stepping on each other.
+ */
+public final class SearchJob {
+
+    public enum State {
+        QUEUED, RUNNING, FINISHED, CANCELLED, FAILED
+    }
+
+    @NotNull
+    private final String id;
+    @NotNull
+    private final String machineIdentifier;
+    @NotNull
+    private final Integer key;
+    @NotNull
+    private final AtomicBoolean cancelled;
+    @NotNull
+    private final AtomicInteger searchedMovieCount;
+    @NotNull
+    private final AtomicInteger totalMovieCount;
+    @NotNull
+    private final AtomicInteger tvdbLookups;
+    @NotNull
+    private final Set<BasicMovie> recommended;
+    @NotNull
+    private final CompletableFuture<Void> completion;
+
+    @NotNull
+    private volatile State state;
+    @Nullable
+    private volatile Instant startedAt;
+    @Nullable
+    private volatile Instant finishedAt;
+    @Nullable
+    private volatile String error;
+
+    public SearchJob(@NotNull String machineIdentifier, @NotNull Integer key) {
+        this.id = UUID.randomUUID().toString();
+        this.machineIdentifier = machineIdentifier;
+        this.key = key;
+        this.cancelled = new AtomicBoolean();
+        this.searchedMovieCount = new AtomicInteger();
+        this.totalMovieCount = new AtomicInteger();
+        this.tvdbLookups = new AtomicInteger();
+        this.recommended = Collections.synchronizedSet(new LinkedHashSet<>());
+        this.completion = new CompletableFuture<>();
+        this.state = State.QUEUED;
+    }
+
+    public @NotNull String getId() {
+        return id;
+    }
+
+    public @NotNull String getMachineIdentifier() {
+        return machineIdentifier;
+    }
+
+    public @NotNull Integer getKey() {
+        return key;
+    }
+
+    public @NotNull State getState() {
+        return state;
+    }
+
+    public @Nullable Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public @Nullable Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Movies looked up so far, shared by every thread working on the search
+     */
+    public @NotNull AtomicInteger getSearchedMovieCount() {
+        return searchedMovieCount;
+    }
+
+    public @NotNull AtomicInteger getTotalMovieCount() {
+        return totalMovieCount;
+    }
+
+    /**
+     * Movies found on TMDB through their TVDB id
+     */
+    public @NotNull AtomicInteger getTvdbLookups() {
+        return tvdbLookups;
+    }
+
+    /**
+     * Movies recommended so far, filled in by the search as it finds them. Lock on the set to walk it.
+     */
+    public @NotNull Set<BasicMovie> getRecommended() {
+        return recommended;
+    }
+
+    /**
+     * @return A copy of the movies recommended so far
+     */
+    public @NotNull List<BasicMovie> getRecommendedSoFar() {
+        synchronized (recommended) {
+            return new ArrayList<>(recommended);
+        }
+    }
+
+    /**
+     * @return Why the search failed, or null if it hasn't
+     */
+    public @Nullable String getError() {
+        return error;
+    }
+
+    /**
+     * Asks the search to stop, it checks between movies
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return True while the search is queued or running
+     */
+    public boolean isActive() {
+        return !completion.isDone();
+    }
+
+    /**
+     * Completes normally once the search ends, or exceptionally with the error that failed it
+     */
+    public @NotNull CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    public void started() {
+        startedAt = Instant.now();
+        state = State.RUNNING;
+    }
+
+    public void finished() {
+        finishedAt = Instant.now();
+        state = isCancelled() ? State.CANCELLED : State.FINISHED;
+        completion.complete(null);
+    }
+
+    public void failed(@NotNull Throwable throwable) {
+        finishedAt = Instant.now();
+        error = throwable.getMessage();
+        state = isCancelled() ? State.CANCELLED : State.FAILED;
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchJob{" +
+                "id='" + id + '\'' +
+                ", machineIdentifier='" + machineIdentifier + '\'' +
+                ", key=" + key +
+                ", state=" + state +
+                ", searchedMovieCount=" + searchedMovieCount +
+                ", totalMovieCount=" + totalMovieCount +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.time.Duration;
+import java.time.Instant;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Point in time view of a {@link SearchJob} for polling clients. Times are epoch milliseconds.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class SearchJobStatus {
+
+    @NotNull
+    private final String id;
+    @NotNull
+    private final String machineIdentifier;
+    @NotNull
+    private final Integer key;
+    @NotNull
+    private final SearchJob.State state;
+    private final int searchedMovieCount;
+    private final int totalMovieCount;
+    private final int recommendedMovieCount;
+    @Nullable
+    private final Long startedAt;
+    @Nullable
+    private final Long finishedAt;
+    @Nullable
+    private final Long etaSeconds;
+    @Nullable
+    private final String error;
+
+    private SearchJobStatus(@NotNull SearchJob searchJob, @NotNull Instant now) {
+        this.id = searchJob.getId();
+        this.machineIdentifier = searchJob.getMachineIdentifier();
+        this.key = searchJob.getKey();
+        this.state = searchJob.getState();
+        this.searchedMovieCount = searchJob.getSearchedMovieCount().get();
+        this.totalMovieCount = searchJob.getTotalMovieCount().get();
+        this.recommendedMovieCount = searchJob.getRecommended().size();
+        Instant started = searchJob.getStartedAt();
+        Instant finished = searchJob.getFinishedAt();
+        this.startedAt = started == null ? null : started.toEpochMilli();
+        this.finishedAt = finished == null ? null : finished.toEpochMilli();
+        this.etaSeconds = state == SearchJob.State.RUNNING ? eta(started, now, searchedMovieCount, totalMovieCount) : null;
+        this.error = searchJob.getError();
+    }
+
+    public static @NotNull SearchJobStatus of(@NotNull SearchJob searchJob) {
+        return new SearchJobStatus(searchJob, Instant.now());
+    }
+
+    public static @NotNull SearchJobStatus of(@NotNull SearchJob searchJob, @NotNull Instant now) {
+        return new SearchJobStatus(searchJob, now);
+    }
+
+    /**
+     * Assumes the movies left take as long on average as the ones searched so far
+     */
+    private static @Nullable Long eta(@Nullable Instant started, @NotNull Instant now, int searched, int total) {
+        if (started == null || searched <= 0 || total <= 0) {
+            return null;
+        }
+
+        long elapsedMillis = Duration.between(started, now).toMillis();
+        long remainingMillis = elapsedMillis * Math.max(0, total - searched) / searched;
+        return Duration.ofMillis(remainingMillis).getSeconds();
+    }
+
+    public @NotNull String getId() {
+        return id;
+    }
+
+    public @NotNull String getMachineIdentifier() {
+        return machineIdentifier;
+    }
+
+    public @NotNull Integer getKey() {
+        return key;
+    }
+
+    public @NotNull SearchJob.State getState() {
+        return state;
+    }
+
+    public int getSearchedMovieCount() {
+        return searchedMovieCount;
+    }
+
+    public int getTotalMovieCount() {
+        return totalMovieCount;
+    }
+
+    public int getRecommendedMovieCount() {
+        return recommendedMovieCount;
+    }
+
+    public @Nullable Long getStartedAt() {
+        return startedAt;
+    }
+
+    public @Nullable Long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public @Nullable Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public @Nullable String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchJobStatus{" +
+                "id='" + id + '\'' +
+                ", machineIdentifier='" + machineIdentifier + '\'' +
+                ", key=" + key +
+                ", state=" + state +
+                ", searchedMovieCount=" + searchedMovieCount +
+                ", totalMovieCount=" + totalMovieCount +
+                ", recommendedMovieCount=" + recommendedMovieCount +
+                ", etaSeconds=" + etaSeconds +
+                '}';
+    }
+}
@@ -10,17 +10,21 @@
 
 package com.jasonhhouse.gaps;
 
+import java.util.List;
 import java.util.Objects;
 
+/**
+ * Progress of a running search along with the movies recommended since the last update
+ */
 public final class SearchResults {
     private final int searchedMovieCount;
     private final int totalMovieCount;
-    private final BasicMovie nextBasicMovie;
+    private final List<BasicMovie> nextMovies;
 
-    public SearchResults(int searchedMovieCount, int totalMovieCount, BasicMovie nextBasicMovie) {
+    public SearchResults(int searchedMovieCount, int totalMovieCount, List<BasicMovie> nextMovies) {
         this.searchedMovieCount = searchedMovieCount;
         this.totalMovieCount = totalMovieCount;
-        this.nextBasicMovie = nextBasicMovie;
+        this.nextMovies = nextMovies;
     }
 
     public int getSearchedMovieCount() {
@@ -31,8 +35,8 @@ public final class SearchResults {
         return totalMovieCount;
     }
 
-    public BasicMovie getNextMovie() {
-        return nextBasicMovie;
+    public List<BasicMovie> getNextMovies() {
+        return nextMovies;
     }
 
     @Override
@@ -54,7 +58,7 @@ public final class SearchResults {
         return "SearchResults{" +
                 "searchedMovieCount=" + searchedMovieCount +
                 ", totalMovieCount=" + totalMovieCount +
-                ", nextMovie=" + nextBasicMovie +
+                ", nextMovies=" + nextMovies +
                 '}';
     }
 }
@@ -13,6 +13,8 @@ package com.jasonhhouse.gaps.properties;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.jasonhhouse.gaps.NotificationType;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang3.BooleanUtils;
 import org.jetbrains.annotations.NotNull;
@@ -29,7 +31,7 @@ abstract class AbstractNotificationProperties implements NotificationProperties
 
     public AbstractNotificationProperties(@NotNull Boolean enabled, @NotNull List<NotificationType> notificationTypes) {
         this.enabled = enabled;
-        this.notificationTypes = notificationTypes;
+        this.notificationTypes = Collections.unmodifiableList(new ArrayList<>(notificationTypes));
     }
 
     @Override
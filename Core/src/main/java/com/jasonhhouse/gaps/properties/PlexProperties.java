@@ -17,6 +17,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.jasonhhouse.gaps.PlexServer;
 import com.jasonhhouse.gaps.Schedule;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -50,6 +51,8 @@ public final class PlexProperties {
     @NotNull
     private Schedule schedule;
 
+    private final boolean unmodifiable;
+
     @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
     public PlexProperties(@JsonProperty(value = "plexServers") @Nullable List<PlexServer> plexServers,
                           @JsonProperty(value = "telegramProperties") @Nullable TelegramProperties telegramProperties,
@@ -73,6 +76,7 @@ public final class PlexProperties {
         this.movieDbApiKey = movieDbApiKey == null ? "" : movieDbApiKey;
         this.password = password == null ? "" : password;
         this.schedule = schedule == null ? Schedule.EVERY_MONDAY : schedule;
+        this.unmodifiable = false;
     }
 
     public PlexProperties() {
@@ -87,6 +91,35 @@ public final class PlexProperties {
         this.movieDbApiKey = "";
         this.password = "";
         this.schedule = Schedule.EVERY_MONDAY;
+        this.unmodifiable = false;
+    }
+
+    private PlexProperties(@NotNull PlexProperties plexProperties) {
+        List<PlexServer> unmodifiablePlexServers = new ArrayList<>();
+        for (PlexServer plexServer : plexProperties.plexServers) {
+            unmodifiablePlexServers.add(plexServer.toUnmodifiable());
+        }
+        this.plexServers = Collections.unmodifiableList(unmodifiablePlexServers);
+        this.telegramProperties = plexProperties.telegramProperties;
+        this.pushBulletProperties = plexProperties.pushBulletProperties;
+        this.emailProperties = plexProperties.emailProperties;
+        this.gotifyProperties = plexProperties.gotifyProperties;
+        this.slackProperties = plexProperties.slackProperties;
+        this.pushOverProperties = plexProperties.pushOverProperties;
+        this.discordProperties = plexProperties.discordProperties;
+        this.movieDbApiKey = plexProperties.movieDbApiKey;
+        this.password = plexProperties.password;
+        this.schedule = plexProperties.schedule;
+        this.unmodifiable = true;
+    }
+
+    /**
+     * @return A copy that can be shared between threads. Its setters, server list and servers throw
+     * {@link UnsupportedOperationException}. The notification properties can't be changed, so they are shared as is.
+     */
+    @NotNull
+    public PlexProperties toUnmodifiable() {
+        return unmodifiable ? this : new PlexProperties(this);
     }
 
     @NotNull
@@ -100,6 +133,7 @@ public final class PlexProperties {
     }
 
     public void setSlackProperties(@NotNull SlackProperties slackProperties) {
+        checkModifiable();
         this.slackProperties = slackProperties;
     }
 
@@ -109,6 +143,7 @@ public final class PlexProperties {
     }
 
     public void setGotifyProperties(@NotNull GotifyProperties gotifyProperties) {
+        checkModifiable();
         this.gotifyProperties = gotifyProperties;
     }
 
@@ -118,6 +153,7 @@ public final class PlexProperties {
     }
 
     public void setEmailProperties(@NotNull EmailProperties emailProperties) {
+        checkModifiable();
         this.emailProperties = emailProperties;
     }
 
@@ -127,6 +163,7 @@ public final class PlexProperties {
     }
 
     public void setPushBulletProperties(@NotNull PushBulletProperties pushBulletProperties) {
+        checkModifiable();
         this.pushBulletProperties = pushBulletProperties;
     }
 
@@ -136,10 +173,12 @@ public final class PlexProperties {
     }
 
     public void setTelegramProperties(@NotNull TelegramProperties telegramProperties) {
+        checkModifiable();
         this.telegramProperties = telegramProperties;
     }
 
     public void addPlexServer(@NotNull PlexServer plexServer) {
+        checkModifiable();
         this.plexServers.add(plexServer);
     }
 
@@ -149,6 +188,7 @@ public final class PlexProperties {
     }
 
     public void setMovieDbApiKey(@NotNull String movieDbApiKey) {
+        checkModifiable();
         this.movieDbApiKey = movieDbApiKey;
     }
 
@@ -158,6 +198,7 @@ public final class PlexProperties {
     }
 
     public void setPassword(@NotNull String password) {
+        checkModifiable();
         this.password = password;
     }
 
@@ -167,6 +208,7 @@ public final class PlexProperties {
     }
 
     public void setPushOverProperties(@NotNull PushOverProperties pushOverProperties) {
+        checkModifiable();
         this.pushOverProperties = pushOverProperties;
     }
 
@@ -176,6 +218,7 @@ public final class PlexProperties {
     }
 
     public void setSchedule(@NotNull Schedule schedule) {
+        checkModifiable();
         this.schedule = schedule;
     }
 
@@ -184,9 +227,16 @@ public final class PlexProperties {
     }
 
     public void setDiscordProperties(@NotNull DiscordProperties discordProperties) {
+        checkModifiable();
         this.discordProperties = discordProperties;
     }
 
+    private void checkModifiable() {
+        if (unmodifiable) {
+            throw new UnsupportedOperationException("Shared properties can't be changed, edit a copy instead");
+        }
+    }
+
     @Override
     public String toString() {
         return "PlexProperties{" +
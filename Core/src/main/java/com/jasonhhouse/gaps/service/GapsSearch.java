@@ -11,6 +11,9 @@
 
 package com.jasonhhouse.gaps.service;
 
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.SearchJob;
+import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -19,17 +22,47 @@ import org.jetbrains.annotations.NotNull;
 public interface GapsSearch {
 
     /**
-     * Kicks of searching for all missing movies
+     * Kicks of searching for all missing movies and waits for it to finish
      */
     void run(@NotNull String machineIdentifier, @NotNull Integer key);
 
     /**
-     * Cancel the current search
+     * Searches only the owned movies that were added or changed since the last search, keeping the earlier
+     * recommendations that are still missing. Waits for the search to finish.
+     */
+    void run(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies);
+
+    /**
+     * Queues a search for all missing movies without waiting for it
+     *
+     * @return The new search, or the one already queued or running for the library
+     */
+    @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key);
+
+    /**
+     * Queues a search of the added or changed owned movies without waiting for it
+     *
+     * @return The new search, or the one already queued or running for the library
+     */
+    @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies);
+
+    /**
+     * Cancel every search
      */
     void cancelSearch();
 
     /**
-     * @return Returns true if currently searching
+     * Cancel the search of one library
+     */
+    void cancelSearch(@NotNull String machineIdentifier, @NotNull Integer key);
+
+    /**
+     * @return Returns true if any library is being searched
      */
     boolean isSearching();
+
+    /**
+     * @return Returns true if the library is being searched
+     */
+    boolean isSearching(@NotNull String machineIdentifier, @NotNull Integer key);
 }
\ No newline at end of file
@@ -60,8 +60,17 @@ public interface IO {
 
     void writeProperties(@NotNull PlexProperties plexProperties);
 
+    /**
+     * @return A copy of the properties that can be changed and passed back to {@link #writeProperties(PlexProperties)}
+     */
     @NotNull PlexProperties readProperties();
 
+    /**
+     * @return The current properties, shared with every other caller so they can't be changed. Setters and the
+     * server lists throw {@link UnsupportedOperationException}. Use {@link #readProperties()} to get a copy to edit.
+     */
+    @NotNull PlexProperties getProperties();
+
     @NotNull Payload nuke();
 
 }
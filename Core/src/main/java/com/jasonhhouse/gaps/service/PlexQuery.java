@@ -12,14 +12,13 @@
 package com.jasonhhouse.gaps.service;
 
 import com.jasonhhouse.gaps.BasicMovie;
-import com.jasonhhouse.gaps.Pair;
 import com.jasonhhouse.gaps.Payload;
 import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.PreviousMovieIndex;
 import com.jasonhhouse.gaps.properties.PlexProperties;
 import com.jasonhhouse.plex.libs.PlexLibrary;
 import com.jasonhhouse.plex.video.MediaContainer;
 import java.util.List;
-import java.util.Map;
 import okhttp3.HttpUrl;
 import org.jetbrains.annotations.NotNull;
 
@@ -44,7 +43,7 @@ public interface PlexQuery {
      * Connect to plex via the URL and parse all the movies from the returned XML creating a HashSet of movies the
      * user has.
      */
-    @NotNull List<BasicMovie> findAllPlexMovies(@NotNull Map<Pair<String, Integer>, BasicMovie> previousMovies, @NotNull HttpUrl url);
+    @NotNull List<BasicMovie> findAllPlexMovies(@NotNull PreviousMovieIndex previousMovies, @NotNull HttpUrl url);
 
     @NotNull MediaContainer findAllPlexVideos(@NotNull String url);
 
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryChangesTest {
+
+    private final BasicMovie alien = new BasicMovie.Builder("Alien", 1979).setTmdbId(348).setRatingKey(1).build();
+    private final BasicMovie aliens = new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).setRatingKey(2).build();
+
+    @Test
+    void unchangedLibrary() {
+        LibraryChanges libraryChanges = LibraryChanges.between(List.of(alien, aliens), List.of(
+                new BasicMovie.Builder("Alien", 1979).setTmdbId(348).setRatingKey(1).build(),
+                new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).setRatingKey(2).build()));
+
+        assertTrue(libraryChanges.isEmpty(), "Same movies should not be a change");
+    }
+
+    @Test
+    void addedMovie() {
+        BasicMovie alien3 = new BasicMovie.Builder("Alien 3", 1992).setRatingKey(3).build();
+        LibraryChanges libraryChanges = LibraryChanges.between(List.of(alien, aliens), List.of(alien, aliens, alien3));
+
+        assertEquals(List.of(alien3), libraryChanges.getChanged(), "New movie should be changed");
+        assertTrue(libraryChanges.getRemoved().isEmpty(), "Nothing was removed");
+    }
+
+    @Test
+    void changedIds() {
+        BasicMovie rematched = new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).setImdbId("tt0090605").setRatingKey(2).build();
+        LibraryChanges libraryChanges = LibraryChanges.between(List.of(alien, aliens), List.of(alien, rematched));
+
+        assertEquals(List.of(rematched), libraryChanges.getChanged(), "Movie with a new IMDB id should be changed");
+    }
+
+    @Test
+    void removedMovie() {
+        LibraryChanges libraryChanges = LibraryChanges.between(List.of(alien, aliens), List.of(alien));
+
+        assertTrue(libraryChanges.getChanged().isEmpty(), "Nothing was added");
+        assertEquals(List.of(aliens), libraryChanges.getRemoved(), "Missing movie should be removed");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieIndexTest {
+
+    @Test
+    void getByTmdbId() {
+        BasicMovie saved = new BasicMovie.Builder("Alien", 1979).setTmdbId(348).build();
+        MovieIndex movieIndex = new MovieIndex(List.of(saved));
+
+        BasicMovie renamed = new BasicMovie.Builder("Alien: Director's Cut", 2003).setTmdbId(348).build();
+        assertSame(saved, movieIndex.get(renamed), "Should match on TMDB id even when the title differs");
+    }
+
+    @Test
+    void getByImdbId() {
+        BasicMovie saved = new BasicMovie.Builder("Alien", 1979).setImdbId("tt0078748").build();
+        MovieIndex movieIndex = new MovieIndex(List.of(saved));
+
+        BasicMovie renamed = new BasicMovie.Builder("Alien: Director's Cut", 2003).setImdbId("tt0078748").build();
+        assertSame(saved, movieIndex.get(renamed), "Should match on IMDB id even when the title differs");
+    }
+
+    @Test
+    void getByNameAndYear() {
+        BasicMovie saved = new BasicMovie.Builder("Alien: Resurrection", 1997).build();
+        MovieIndex movieIndex = new MovieIndex(List.of(saved));
+
+        assertSame(saved, movieIndex.get(new BasicMovie.Builder("Alien Resurrection", 1997).build()), "Should match on title without bad characters and year");
+        assertNull(movieIndex.get(new BasicMovie.Builder("Alien Resurrection", 1998).build()), "Different year should not match");
+    }
+
+    @Test
+    void tmdbIdTakesPrecedence() {
+        BasicMovie byTmdb = new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).build();
+        BasicMovie byName = new BasicMovie.Builder("Alien 3", 1992).build();
+        MovieIndex movieIndex = new MovieIndex(List.of(byName, byTmdb));
+
+        BasicMovie search = new BasicMovie.Builder("Alien 3", 1992).setTmdbId(679).build();
+        assertSame(byTmdb, movieIndex.get(search), "TMDB id should win over title and year");
+        assertEquals(search, byTmdb, "Index should agree with BasicMovie.equals");
+    }
+
+    @Test
+    void reindexAfterSettingId() {
+        BasicMovie saved = new BasicMovie.Builder("Prometheus", 2012).build();
+        MovieIndex movieIndex = new MovieIndex(List.of(saved));
+        BasicMovie search = new BasicMovie.Builder("Prometheus (Extended)", 2012).setTmdbId(70981).build();
+
+        assertFalse(movieIndex.contains(search), "Movie has no TMDB id yet");
+
+        saved.setTmdbId(70981);
+        movieIndex.reindex(saved);
+        assertTrue(movieIndex.contains(search), "Movie should be found by its new TMDB id");
+    }
+
+    @Test
+    void addIfAbsent() {
+        MovieIndex movieIndex = new MovieIndex();
+        assertTrue(movieIndex.addIfAbsent(new BasicMovie.Builder("Alien", 1979).build()), "First add should succeed");
+        assertFalse(movieIndex.addIfAbsent(new BasicMovie.Builder("Alien", 1979).build()), "Duplicate should not be added");
+        assertEquals(1, movieIndex.size(), "Only one movie should be held");
+    }
+
+    @Test
+    void matchesListLookups() {
+        List<BasicMovie> basicMovies = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            BasicMovie.Builder builder = new BasicMovie.Builder("Movie " + i, 1950 + i % 70);
+            if (i % 3 == 0) {
+                builder.setTmdbId(i);
+            } else if (i % 3 == 1) {
+                builder.setImdbId("tt" + i);
+            }
+            basicMovies.add(builder.build());
+        }
+        MovieIndex movieIndex = new MovieIndex(basicMovies);
+
+        for (int i = 0; i < 20500; i += 7) {
+            BasicMovie search = new BasicMovie.Builder("Movie " + i, 1950 + i % 70).build();
+            int index = basicMovies.indexOf(search);
+            BasicMovie expected = index == -1 ? null : basicMovies.get(index);
+            assertSame(expected, movieIndex.get(search), "Index and list should find the same movie for " + search.getName());
+        }
+    }
+}
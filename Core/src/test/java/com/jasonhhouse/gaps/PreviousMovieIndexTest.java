@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.jasonhhouse.gaps;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PreviousMovieIndexTest {
+
+    @Test
+    void matchesTitleIgnoringCaseAndSpacing() {
+        BasicMovie saved = new BasicMovie.Builder("Alien: Resurrection", 1997).setTmdbId(8078).build();
+        PreviousMovieIndex previousMovies = PreviousMovieIndex.of(List.of(saved));
+
+        assertSame(saved, previousMovies.get("alien:  Resurrection ", 1997), "Case and extra spaces should not matter");
+        assertNull(previousMovies.get("Alien: Resurrection", 1998), "Year must match");
+        assertNull(previousMovies.get("Alien", 1997), "Title must match");
+    }
+
+    @Test
+    void firstMovieWins() {
+        BasicMovie first = new BasicMovie.Builder("Alien", 1979).setTmdbId(348).build();
+        BasicMovie second = new BasicMovie.Builder("ALIEN", 1979).setTmdbId(1).build();
+
+        PreviousMovieIndex previousMovies = PreviousMovieIndex.of(List.of(first, second));
+
+        assertSame(first, previousMovies.get("Alien", 1979), "First movie added should be kept");
+        assertEquals(1, previousMovies.size(), "Both movies share one key");
+    }
+
+    @Test
+    void sourceIsReadOnceWhenFirstNeeded() {
+        AtomicInteger reads = new AtomicInteger();
+        PreviousMovieIndex previousMovies = PreviousMovieIndex.lazy(() -> {
+            reads.incrementAndGet();
+            return List.of(new BasicMovie.Builder("Alien", 1979).build());
+        });
+        assertEquals(0, reads.get(), "Nothing should be read until a movie is looked up");
+
+        for (int library = 0; library < 12; library++) {
+            previousMovies.get("Alien", 1979);
+        }
+
+        assertEquals(1, reads.get(), "Every lookup should share the one index");
+    }
+}
@@ -12,6 +12,7 @@ package com.jasonhhouse.gaps;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 
 
 @ConstructorBinding
@@ -25,8 +26,15 @@ public class GapsConfiguration {
     private final Boolean sslEnabled;
     private final String storageFolder;
     private final Properties properties;
+    private final Tmdb tmdb;
+    private final Search search;
+    private final Plex plex;
+    private final Http http;
+    private final Storage storage;
+    private final Notifications notifications;
 
-    public GapsConfiguration(String name, String description, String version, Boolean loginEnabled, Boolean sslEnabled, String storageFolder, Properties properties) {
+    public GapsConfiguration(String name, String description, String version, Boolean loginEnabled, Boolean sslEnabled, String storageFolder, Properties properties, @DefaultValue Tmdb tmdb, @DefaultValue Search search, @DefaultValue Plex plex, @DefaultValue Http http, @DefaultValue Storage storage,
+                             @DefaultValue Notifications notifications) {
         this.name = name;
         this.description = description;
         this.version = version;
@@ -34,6 +42,12 @@ public class GapsConfiguration {
         this.sslEnabled = sslEnabled;
         this.storageFolder = storageFolder;
         this.properties = properties;
+        this.tmdb = tmdb;
+        this.search = search;
+        this.plex = plex;
+        this.http = http;
+        this.storage = storage;
+        this.notifications = notifications;
     }
 
     public String getStorageFolder() {
@@ -64,6 +78,30 @@ public class GapsConfiguration {
         return properties;
     }
 
+    public Tmdb getTmdb() {
+        return tmdb;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public Plex getPlex() {
+        return plex;
+    }
+
+    public Http getHttp() {
+        return http;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public Notifications getNotifications() {
+        return notifications;
+    }
+
     @Override
     public String toString() {
         return "YamlConfig{" +
@@ -73,6 +111,12 @@ public class GapsConfiguration {
                 ", loginEnabled=" + loginEnabled +
                 ", sslEnabled=" + sslEnabled +
                 ", storagePath='" + storageFolder + '\'' +
+                ", tmdb=" + tmdb +
+                ", search=" + search +
+                ", plex=" + plex +
+                ", http=" + http +
+                ", storage=" + storage +
+                ", notifications=" + notifications +
                 '}';
     }
 
@@ -83,13 +127,24 @@ public class GapsConfiguration {
         private final String movieIds;
         private final String ownedMovies;
         private final String recommendedMovies;
+        /**
+         * Log of every movie Gaps knows about, replaces movieIds which is only read once to move it over
+         */
+        private final String movieStore;
+        /**
+         * Progress of an unfinished search, kept in each library's folder
+         */
+        private final String searchCheckpoint;
 
-        public Properties(String rssFeed, String gapsProperties, String movieIds, String ownedMovies, String recommendedMovies) {
+        public Properties(String rssFeed, String gapsProperties, String movieIds, String ownedMovies, String recommendedMovies, @DefaultValue("movieIds.log") String movieStore,
+                          @DefaultValue("searchCheckpoint.json") String searchCheckpoint) {
             this.rssFeed = rssFeed;
             this.gapsProperties = gapsProperties;
             this.movieIds = movieIds;
             this.ownedMovies = ownedMovies;
             this.recommendedMovies = recommendedMovies;
+            this.movieStore = movieStore;
+            this.searchCheckpoint = searchCheckpoint;
         }
 
         public String getRssFeed() {
@@ -111,5 +166,387 @@ public class GapsConfiguration {
         public String getRecommendedMovies() {
             return recommendedMovies;
         }
+
+        public String getMovieStore() {
+            return movieStore;
+        }
+
+        public String getSearchCheckpoint() {
+            return searchCheckpoint;
+        }
+    }
+
+    @ConstructorBinding
+    public static final class Tmdb {
+        /**
+         * Requests per second shared by every search talking to TMDB
+         */
+        private final Double requestsPerSecond;
+        /**
+         * Requests that may go out back to back after TMDB has been left alone for a while
+         */
+        private final Integer burst;
+        /**
+         * Owned movies looked up against TMDB at the same time
+         */
+        private final Integer maxConcurrentRequests;
+        /**
+         * Hours a cached TMDB response stays valid, zero or less turns the cache off
+         */
+        private final Integer cacheTtlHours;
+        /**
+         * TMDB responses kept in memory in front of the on disk cache
+         */
+        private final Integer cacheMaxEntries;
+
+        public Tmdb(@DefaultValue("4") Double requestsPerSecond, @DefaultValue("1") Integer burst, @DefaultValue("4") Integer maxConcurrentRequests,
+                    @DefaultValue("168") Integer cacheTtlHours, @DefaultValue("2000") Integer cacheMaxEntries) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.cacheTtlHours = cacheTtlHours;
+            this.cacheMaxEntries = cacheMaxEntries;
+        }
+
+        public Double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public Integer getBurst() {
+            return burst;
+        }
+
+        public Integer getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public Integer getCacheTtlHours() {
+            return cacheTtlHours;
+        }
+
+        public Integer getCacheMaxEntries() {
+            return cacheMaxEntries;
+        }
+
+        @Override
+        public String toString() {
+            return "Tmdb{" +
+                    "requestsPerSecond=" + requestsPerSecond +
+                    ", burst=" + burst +
+                    ", maxConcurrentRequests=" + maxConcurrentRequests +
+                    ", cacheTtlHours=" + cacheTtlHours +
+                    ", cacheMaxEntries=" + cacheMaxEntries +
+                    '}';
+        }
+    }
+
+    @ConstructorBinding
+    public static final class Search {
+        /**
+         * Scheduled searches only look up movies added or changed since the last run
+         */
+        private final Boolean incremental;
+        /**
+         * Longest a new recommendation waits before the RSS feed is written
+         */
+        private final Long rssFlushSeconds;
+        /**
+         * New recommendations that get the RSS feed written right away
+         */
+        private final Integer rssFlushAdditions;
+        /**
+         * Libraries searched at the same time, the rest wait their turn
+         */
+        private final Integer maxConcurrentSearches;
+        /**
+         * Seconds between saves of a running search's progress, zero or less turns checkpoints off
+         */
+        private final Long checkpointSeconds;
+        /**
+         * Milliseconds between progress updates sent to the browser, recommendations found in between go out together
+         */
+        private final Long progressIntervalMillis;
+
+        public Search(@DefaultValue("false") Boolean incremental, @DefaultValue("5") Long rssFlushSeconds, @DefaultValue("50") Integer rssFlushAdditions,
+                      @DefaultValue("2") Integer maxConcurrentSearches, @DefaultValue("60") Long checkpointSeconds, @DefaultValue("500") Long progressIntervalMillis) {
+            this.incremental = incremental;
+            this.rssFlushSeconds = rssFlushSeconds;
+            this.rssFlushAdditions = rssFlushAdditions;
+            this.maxConcurrentSearches = maxConcurrentSearches;
+            this.checkpointSeconds = checkpointSeconds;
+            this.progressIntervalMillis = progressIntervalMillis;
+        }
+
+        public Boolean getIncremental() {
+            return incremental;
+        }
+
+        public Long getRssFlushSeconds() {
+            return rssFlushSeconds;
+        }
+
+        public Integer getRssFlushAdditions() {
+            return rssFlushAdditions;
+        }
+
+        public Integer getMaxConcurrentSearches() {
+            return maxConcurrentSearches;
+        }
+
+        public Long getCheckpointSeconds() {
+            return checkpointSeconds;
+        }
+
+        public Long getProgressIntervalMillis() {
+            return progressIntervalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Search{" +
+                    "incremental=" + incremental +
+                    ", rssFlushSeconds=" + rssFlushSeconds +
+                    ", rssFlushAdditions=" + rssFlushAdditions +
+                    ", maxConcurrentSearches=" + maxConcurrentSearches +
+                    ", checkpointSeconds=" + checkpointSeconds +
+                    ", progressIntervalMillis=" + progressIntervalMillis +
+                    '}';
+        }
+    }
+
+    @ConstructorBinding
+    public static final class Plex {
+        /**
+         * Movie metadata requests sent to each Plex server at the same time
+         */
+        private final Integer maxConcurrentRequests;
+        /**
+         * Plex servers checked and scanned at the same time by a scheduled search
+         */
+        private final Integer maxConcurrentServers;
+        /**
+         * Minutes a scheduled search waits for one server to be checked and scanned before moving on without it
+         */
+        private final Long serverScanTimeoutMinutes;
+
+        public Plex(@DefaultValue("4") Integer maxConcurrentRequests, @DefaultValue("4") Integer maxConcurrentServers, @DefaultValue("60") Long serverScanTimeoutMinutes) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.maxConcurrentServers = maxConcurrentServers;
+            this.serverScanTimeoutMinutes = serverScanTimeoutMinutes;
+        }
+
+        public Integer getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public Integer getMaxConcurrentServers() {
+            return maxConcurrentServers;
+        }
+
+        public Long getServerScanTimeoutMinutes() {
+            return serverScanTimeoutMinutes;
+        }
+
+        @Override
+        public String toString() {
+            return "Plex{" +
+                    "maxConcurrentRequests=" + maxConcurrentRequests +
+                    ", maxConcurrentServers=" + maxConcurrentServers +
+                    ", serverScanTimeoutMinutes=" + serverScanTimeoutMinutes +
+                    '}';
+        }
+    }
+
+    @ConstructorBinding
+    public static final class Http {
+        /**
+         * Timeout for library listings and metadata calls to Plex
+         */
+        private final Long plexTimeoutMillis;
+        /**
+         * Timeout for calls to TMDB
+         */
+        private final Long tmdbTimeoutMillis;
+        /**
+         * Timeout for calls to Radarr
+         */
+        private final Long radarrTimeoutMillis;
+        /**
+         * Timeout for calls to notification webhooks
+         */
+        private final Long notificationTimeoutMillis;
+        /**
+         * Idle connections kept open to each kind of server, raised to match the concurrent requests allowed to it
+         */
+        private final Integer maxIdleConnections;
+        /**
+         * Seconds an idle connection is kept open for reuse
+         */
+        private final Long keepAliveSeconds;
+
+        public Http(@DefaultValue("180000") Long plexTimeoutMillis, @DefaultValue("30000") Long tmdbTimeoutMillis,
+                    @DefaultValue("2500") Long radarrTimeoutMillis, @DefaultValue("2500") Long notificationTimeoutMillis,
+                    @DefaultValue("5") Integer maxIdleConnections, @DefaultValue("300") Long keepAliveSeconds) {
+            this.plexTimeoutMillis = plexTimeoutMillis;
+            this.tmdbTimeoutMillis = tmdbTimeoutMillis;
+            this.radarrTimeoutMillis = radarrTimeoutMillis;
+            this.notificationTimeoutMillis = notificationTimeoutMillis;
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveSeconds = keepAliveSeconds;
+        }
+
+        public Long getPlexTimeoutMillis() {
+            return plexTimeoutMillis;
+        }
+
+        public Long getTmdbTimeoutMillis() {
+            return tmdbTimeoutMillis;
+        }
+
+        public Long getRadarrTimeoutMillis() {
+            return radarrTimeoutMillis;
+        }
+
+        public Long getNotificationTimeoutMillis() {
+            return notificationTimeoutMillis;
+        }
+
+        public Integer getMaxIdleConnections() {
+            return maxIdleConnections;
+        }
+
+        public Long getKeepAliveSeconds() {
+            return keepAliveSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Http{" +
+                    "plexTimeoutMillis=" + plexTimeoutMillis +
+                    ", tmdbTimeoutMillis=" + tmdbTimeoutMillis +
+                    ", radarrTimeoutMillis=" + radarrTimeoutMillis +
+                    ", notificationTimeoutMillis=" + notificationTimeoutMillis +
+                    ", maxIdleConnections=" + maxIdleConnections +
+                    ", keepAliveSeconds=" + keepAliveSeconds +
+                    '}';
+        }
+    }
+
+    @ConstructorBinding
+    public static final class Storage {
+        /**
+         * Flush files to disk before they replace the old version, turn off to trade crash safety for speed
+         */
+        private final Boolean fsync;
+        /**
+         * Milliseconds to gather renames before flushing their folders together, zero flushes every write. File data is
+         * always flushed before the rename.
+         */
+        private final Long fsyncBatchMillis;
+        /**
+         * Gzip movie id, owned and recommended movie files on disk, files in either form are read back
+         */
+        private final Boolean gzip;
+
+        public Storage(@DefaultValue("true") Boolean fsync, @DefaultValue("0") Long fsyncBatchMillis, @DefaultValue("false") Boolean gzip) {
+            this.fsync = fsync;
+            this.fsyncBatchMillis = fsyncBatchMillis;
+            this.gzip = gzip;
+        }
+
+        public Boolean getFsync() {
+            return fsync;
+        }
+
+        public Long getFsyncBatchMillis() {
+            return fsyncBatchMillis;
+        }
+
+        public Boolean getGzip() {
+            return gzip;
+        }
+
+        @Override
+        public String toString() {
+            return "Storage{" +
+                    "fsync=" + fsync +
+                    ", fsyncBatchMillis=" + fsyncBatchMillis +
+                    ", gzip=" + gzip +
+                    '}';
+        }
+    }
+
+    @ConstructorBinding
+    public static final class Notifications {
+        /**
+         * Notification agents sent to at the same time
+         */
+        private final Integer threads;
+        /**
+         * Milliseconds an agent gets to send one message before the attempt is abandoned
+         */
+        private final Long deadlineMillis;
+        /**
+         * Times a message is tried with each agent before it is dropped
+         */
+        private final Integer maxAttempts;
+        /**
+         * Milliseconds before the first retry, doubled for each retry after it
+         */
+        private final Long retryBackoffMillis;
+        /**
+         * Messages waiting to be sent before new ones are dropped
+         */
+        private final Integer outboxSize;
+        /**
+         * Send each agent one summary of a scheduled run instead of a message for every server and library
+         */
+        private final Boolean digest;
+
+        public Notifications(@DefaultValue("4") Integer threads, @DefaultValue("10000") Long deadlineMillis, @DefaultValue("3") Integer maxAttempts,
+                             @DefaultValue("2000") Long retryBackoffMillis, @DefaultValue("500") Integer outboxSize, @DefaultValue("false") Boolean digest) {
+            this.threads = threads;
+            this.deadlineMillis = deadlineMillis;
+            this.maxAttempts = maxAttempts;
+            this.retryBackoffMillis = retryBackoffMillis;
+            this.outboxSize = outboxSize;
+            this.digest = digest;
+        }
+
+        public Integer getThreads() {
+            return threads;
+        }
+
+        public Long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        public Integer getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public Long getRetryBackoffMillis() {
+            return retryBackoffMillis;
+        }
+
+        public Integer getOutboxSize() {
+            return outboxSize;
+        }
+
+        public Boolean getDigest() {
+            return digest;
+        }
+
+        @Override
+        public String toString() {
+            return "Notifications{" +
+                    "threads=" + threads +
+                    ", deadlineMillis=" + deadlineMillis +
+                    ", maxAttempts=" + maxAttempts +
+                    ", retryBackoffMillis=" + retryBackoffMillis +
+                    ", outboxSize=" + outboxSize +
+                    ", digest=" + digest +
+                    '}';
+        }
     }
 }
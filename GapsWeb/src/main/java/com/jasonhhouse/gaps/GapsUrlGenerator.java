@@ -39,6 +39,7 @@ public class GapsUrlGenerator implements UrlGenerator {
     private static final String METADATA = "metadata";
     private static final String ALL = "all";
     private static final String PLEX_TOKEN = "X-Plex-Token";
+    private static final String INCLUDE_GUIDS = "includeGuids";
 
     @Override
     public @NotNull HttpUrl generateSearchMovieUrl(@NotNull String movieDbKey, @NotNull String query, @NotNull String year, @NotNull String language) {
@@ -112,6 +113,7 @@ public class GapsUrlGenerator implements UrlGenerator {
                 .addPathSegment(SECTIONS)
                 .addPathSegment(plexLibrary.getKey().toString())
                 .addPathSegment(ALL)
+                .addQueryParameter(INCLUDE_GUIDS, "1")
                 .addQueryParameter(PLEX_TOKEN, plexServer.getPlexToken())
                 .build();
     }
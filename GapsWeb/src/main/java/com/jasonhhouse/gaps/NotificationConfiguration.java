@@ -18,6 +18,9 @@ import com.jasonhhouse.gaps.notifications.PushOverNotificationAgent;
 import com.jasonhhouse.gaps.notifications.SlackNotificationAgent;
 import com.jasonhhouse.gaps.notifications.TelegramNotificationAgent;
 import com.jasonhhouse.gaps.service.FileIoService;
+import com.jasonhhouse.gaps.service.HttpClientFactory;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -26,23 +29,30 @@ public class NotificationConfiguration {
 
     private final FileIoService fileIoService;
 
-    public NotificationConfiguration(FileIoService fileIoService) {
+    private final OkHttpClient client;
+
+    public NotificationConfiguration(FileIoService fileIoService, HttpClientFactory httpClientFactory, GapsConfiguration gapsConfiguration) {
         this.fileIoService = fileIoService;
+        //Bound the whole call and not just each read, so a webhook that trickles its answer still frees its sender by the deadline
+        this.client = httpClientFactory.getClient(HttpClientFactory.Target.NOTIFICATIONS)
+                .newBuilder()
+                .callTimeout(gapsConfiguration.getNotifications().getDeadlineMillis(), TimeUnit.MILLISECONDS)
+                .build();
     }
 
     @Bean
     public TelegramNotificationAgent getTelegramElement() {
-        return new TelegramNotificationAgent(fileIoService);
+        return new TelegramNotificationAgent(fileIoService, client);
     }
 
     @Bean
     public PushBulletNotificationAgent getPushBulletElement() {
-        return new PushBulletNotificationAgent(fileIoService);
+        return new PushBulletNotificationAgent(fileIoService, client);
     }
 
     @Bean
     public SlackNotificationAgent getSlackElement() {
-        return new SlackNotificationAgent(fileIoService);
+        return new SlackNotificationAgent(fileIoService, client);
     }
 
     @Bean
@@ -52,16 +62,16 @@ public class NotificationConfiguration {
 
     @Bean
     public GotifyNotificationAgent getGotifyElement() {
-        return new GotifyNotificationAgent(fileIoService);
+        return new GotifyNotificationAgent(fileIoService, client);
     }
 
     @Bean
     public PushOverNotificationAgent getPushOverElement() {
-        return new PushOverNotificationAgent(fileIoService);
+        return new PushOverNotificationAgent(fileIoService, client);
     }
 
     @Bean
     public DiscordNotificationAgent getDiscordElement() {
-        return new DiscordNotificationAgent(fileIoService);
+        return new DiscordNotificationAgent(fileIoService, client);
     }
 }
@@ -10,30 +10,44 @@
 
 package com.jasonhhouse.gaps;
 
+import com.jasonhhouse.gaps.notifications.GapsEvent;
 import com.jasonhhouse.gaps.properties.PlexProperties;
 import com.jasonhhouse.gaps.service.FileIoService;
-import com.jasonhhouse.gaps.service.GapsSearch;
+import com.jasonhhouse.gaps.service.GapsSearchService;
+import com.jasonhhouse.gaps.service.NotificationDigest;
 import com.jasonhhouse.gaps.service.NotificationService;
 import com.jasonhhouse.gaps.service.PlexQuery;
 import com.jasonhhouse.gaps.service.TmdbService;
 import com.jasonhhouse.plex.libs.PlexLibrary;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import okhttp3.HttpUrl;
 import org.apache.commons.collections4.CollectionUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 public final class SearchGapsTask implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchGapsTask.class);
 
     @NotNull
-    private final GapsSearch gapsSearch;
+    private final GapsSearchService gapsSearchService;
     @NotNull
     private final TmdbService tmdbService;
     @NotNull
@@ -44,19 +58,23 @@ public final class SearchGapsTask implements Runnable {
     private final GapsUrlGenerator gapsUrlGenerator;
     @NotNull
     private final NotificationService notificationService;
+    @NotNull
+    private final GapsConfiguration gapsConfiguration;
 
-    public SearchGapsTask(@NotNull GapsSearch gapsSearch,
+    public SearchGapsTask(@NotNull GapsSearchService gapsSearchService,
                           @NotNull TmdbService tmdbService,
                           @NotNull FileIoService fileIoService,
                           @NotNull PlexQuery plexQuery,
                           @NotNull GapsUrlGenerator gapsUrlGenerator,
-                          @NotNull NotificationService notificationService) {
-        this.gapsSearch = gapsSearch;
+                          @NotNull NotificationService notificationService,
+                          @NotNull GapsConfiguration gapsConfiguration) {
+        this.gapsSearchService = gapsSearchService;
         this.tmdbService = tmdbService;
         this.fileIoService = fileIoService;
         this.plexQuery = plexQuery;
         this.gapsUrlGenerator = gapsUrlGenerator;
         this.notificationService = notificationService;
+        this.gapsConfiguration = gapsConfiguration;
     }
 
     @Override
@@ -69,110 +87,261 @@ public final class SearchGapsTask implements Runnable {
             return;
         }
 
-        boolean tmdbResult = checkTmdbKey();
-
-        if (tmdbResult) {
-            checkPlexServers(plexProperties);
+        if (gapsConfiguration.getNotifications().getDigest()) {
+            try (NotificationDigest notificationDigest = notificationService.startDigest()) {
+                search(plexProperties, notificationDigest);
+            }
+        } else {
+            search(plexProperties, null);
+        }
+    }
 
-            updatePlexLibraries(plexProperties);
+    /**
+     * @param notificationDigest Digest of this run that every event is published with, or null to send them on their own
+     */
+    private void search(@NotNull PlexProperties plexProperties, @Nullable NotificationDigest notificationDigest) {
+        boolean tmdbResult = checkTmdbKey(notificationDigest);
 
-            updateLibraryMovies(plexProperties);
+        if (tmdbResult) {
+            List<ServerScan> serverScans = scanPlexServers(plexProperties, notificationDigest);
 
-            findRecommendedMovies(plexProperties);
+            findRecommendedMovies(serverScans, notificationDigest);
         }
     }
 
-    private boolean checkTmdbKey() {
+    private boolean checkTmdbKey(@Nullable NotificationDigest notificationDigest) {
         LOGGER.debug("checkTmdbKey()");
 
-        String tmdbKey = fileIoService.readProperties().getMovieDbApiKey();
+        String tmdbKey = fileIoService.getProperties().getMovieDbApiKey();
         Payload payload = tmdbService.testTmdbKey(tmdbKey);
 
         if (Payload.TMDB_KEY_VALID.getCode() == payload.getCode()) {
-            notificationService.tmdbConnectionSuccessful();
+            notificationService.publish(GapsEvent.tmdbConnectionSuccessful(), notificationDigest);
             return true;
         } else {
-            notificationService.tmdbConnectionFailed(payload.getReason());
+            notificationService.publish(GapsEvent.tmdbConnectionFailed(payload.getReason()), notificationDigest);
             return false;
         }
     }
 
-    private void checkPlexServers(@NotNull PlexProperties plexProperties) {
-        LOGGER.debug("checkPlexServers()");
+    /**
+     * Servers are scanned side by side, as many at once as configured, so an unreachable server only holds up itself.
+     * Each server's scan gets its own time limit, counted from when it starts. A scan still queued behind other servers
+     * gets the same limit to start. A scan that runs out of time is abandoned: it's interrupted or never started, and
+     * anything it finds after that is neither written nor published.
+     *
+     * @return The scans that finished in time, in server order. Servers that timed out or threw are left out.
+     */
+    private @NotNull List<ServerScan> scanPlexServers(@NotNull PlexProperties plexProperties, @Nullable NotificationDigest notificationDigest) {
+        LOGGER.debug("scanPlexServers()");
 
-        int counter = 0;
-        for (PlexServer plexServer : plexProperties.getPlexServers()) {
-            Payload payload = plexQuery.queryPlexServer(plexServer);
-            if (payload.getCode() == Payload.PLEX_CONNECTION_SUCCEEDED.getCode()) {
-                notificationService.plexServerConnectSuccessful(plexServer);
-            } else {
-                notificationService.plexServerConnectFailed(plexServer, payload.getReason());
+        List<PlexServer> plexServers = plexProperties.getPlexServers();
+        PreviousMovieIndex previousMovies = PreviousMovieIndex.lazy(fileIoService::readMovieIdsFromFile);
+        long timeoutMinutes = gapsConfiguration.getPlex().getServerScanTimeoutMinutes();
+        long timeoutNanos = TimeUnit.MINUTES.toNanos(timeoutMinutes);
+        int threads = Math.max(1, Math.min(plexServers.size(), gapsConfiguration.getPlex().getMaxConcurrentServers()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("Gaps-Scan-"));
+
+        long start = System.currentTimeMillis();
+        List<ServerScan> serverScans = new ArrayList<>();
+        try {
+            for (PlexServer plexServer : plexServers) {
+                ServerScan serverScan = new ServerScan(plexServer);
+                serverScan.future = executorService.submit(() -> {
+                    serverScan.started.complete(System.nanoTime());
+                    scanPlexServer(serverScan, previousMovies, notificationDigest);
+                });
+                serverScans.add(serverScan);
             }
-            counter++;
-        }
-        LOGGER.info("checkPlexServers() executed {} times", counter);
-    }
 
-    private void updatePlexLibraries(@NotNull PlexProperties plexProperties) {
-        LOGGER.debug("updatePlexLibraries()");
-
-        int counter = 0;
-        //Update each Plex Library from each Plex Server
-        for (PlexServer plexServer : plexProperties.getPlexServers()) {
-            Payload getLibrariesResults = plexQuery.getLibraries(plexServer);
-            if (Payload.PLEX_LIBRARIES_FOUND == getLibrariesResults) {
-                LOGGER.info("Plex libraries found for Plex Server {}", plexServer.getFriendlyName());
-            } else {
-                LOGGER.warn("Plex libraries not found for Plex Server {}", plexServer.getFriendlyName());
+            //Wait in server order so the searches start in the same order as before
+            List<ServerScan> finished = new ArrayList<>();
+            for (ServerScan serverScan : serverScans) {
+                String friendlyName = serverScan.plexServer.getFriendlyName();
+                try {
+                    long remainingNanos = serverScan.started.get(timeoutNanos, TimeUnit.NANOSECONDS) + timeoutNanos - System.nanoTime();
+                    serverScan.future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+                    finished.add(serverScan);
+                } catch (TimeoutException e) {
+                    serverScan.abandon();
+                    if (serverScan.started.isDone()) {
+                        LOGGER.warn("Scan of Plex Server {} took longer than {} minutes, leaving it", friendlyName, timeoutMinutes);
+                    } else {
+                        LOGGER.warn("Scan of Plex Server {} didn't start within {} minutes, leaving it", friendlyName, timeoutMinutes);
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.error(String.format("Scan of Plex Server %s failed", friendlyName), e.getCause());
+                } catch (InterruptedException e) {
+                    LOGGER.warn("Interrupted while scanning Plex servers");
+                    Thread.currentThread().interrupt();
+                    serverScans.forEach(ServerScan::abandon);
+                    return Collections.emptyList();
+                }
             }
-            counter++;
+            LOGGER.info("Scanned {} Plex servers {} at a time in {} ms", plexServers.size(), threads, System.currentTimeMillis() - start);
+            return finished;
+        } finally {
+            executorService.shutdownNow();
         }
-        LOGGER.info("updatePlexLibraries() executed {} times", counter);
     }
 
-    private void updateLibraryMovies(@NotNull PlexProperties plexProperties) {
-        LOGGER.debug("updateLibraryMovies()");
+    /**
+     * Checks the server is reachable, refreshes its library list and then reads the movies in each library. A server
+     * that can't be reached has its libraries reported as failed straight away.
+     */
+    private void scanPlexServer(@NotNull ServerScan serverScan, @NotNull PreviousMovieIndex previousMovies, @Nullable NotificationDigest notificationDigest) {
+        PlexServer plexServer = serverScan.plexServer;
+        LOGGER.debug("scanPlexServer( {} )", plexServer.getFriendlyName());
 
-        int counter = 0;
-        for (PlexServer plexServer : plexProperties.getPlexServers()) {
-            for (PlexLibrary plexLibrary : plexServer.getPlexLibraries()) {
-                HttpUrl url = gapsUrlGenerator.generatePlexLibraryUrl(plexServer, plexLibrary);
-                try {
-                    List<BasicMovie> ownedBasicMovies = plexQuery.findAllPlexMovies(generateOwnedMovieMap(plexProperties), url);
-                    plexQuery.findAllMovieIds(ownedBasicMovies, plexServer, plexLibrary);
-                    fileIoService.writeOwnedMoviesToFile(ownedBasicMovies, plexServer.getMachineIdentifier(), plexLibrary.getKey());
-                    notificationService.plexLibraryScanSuccessful(plexServer, plexLibrary);
-                } catch (ResponseStatusException e) {
-                    notificationService.plexLibraryScanFailed(plexServer, plexLibrary, e.getMessage());
+        String reason;
+        try {
+            Payload payload = plexQuery.queryPlexServer(plexServer);
+            reason = payload.getCode() == Payload.PLEX_CONNECTION_SUCCEEDED.getCode() ? null : payload.getReason();
+        } catch (RuntimeException e) {
+            serverScan.ifActive(() -> LOGGER.error(String.format("Connection to Plex Server %s failed", plexServer.getFriendlyName()), e));
+            reason = describe(e);
+        }
+
+        if (reason != null) {
+            String failure = reason;
+            serverScan.ifActive(() -> {
+                notificationService.publish(GapsEvent.plexServerConnectFailed(plexServer, failure), notificationDigest);
+                for (PlexLibrary plexLibrary : plexServer.getPlexLibraries()) {
+                    notificationService.publish(GapsEvent.plexLibraryScanFailed(plexServer, plexLibrary, failure), notificationDigest);
                 }
-                counter++;
+            });
+            return;
+        }
+        serverScan.ifActive(() -> notificationService.publish(GapsEvent.plexServerConnectSuccessful(plexServer), notificationDigest));
+
+        Payload getLibrariesResults = plexQuery.getLibraries(plexServer);
+        if (Payload.PLEX_LIBRARIES_FOUND == getLibrariesResults) {
+            LOGGER.info("Plex libraries found for Plex Server {}", plexServer.getFriendlyName());
+        } else {
+            LOGGER.warn("Plex libraries not found for Plex Server {}", plexServer.getFriendlyName());
+        }
+
+        for (PlexLibrary plexLibrary : plexServer.getPlexLibraries()) {
+            if (serverScan.isAbandoned()) {
+                LOGGER.info("Stopping abandoned scan of Plex Server {}", plexServer.getFriendlyName());
+                return;
+            }
+
+            HttpUrl url = gapsUrlGenerator.generatePlexLibraryUrl(plexServer, plexLibrary);
+            Pair<String, Integer> library = new Pair<>(plexServer.getMachineIdentifier(), plexLibrary.getKey());
+            try {
+                List<BasicMovie> ownedBasicMovies = plexQuery.findAllPlexMovies(previousMovies, url);
+                plexQuery.findAllMovieIds(ownedBasicMovies, plexServer, plexLibrary);
+
+                List<BasicMovie> previousOwnedMovies = fileIoService.readOwnedMovies(plexServer.getMachineIdentifier(), plexLibrary.getKey());
+                serverScan.ifActive(() -> {
+                    if (!previousOwnedMovies.isEmpty()) {
+                        LibraryChanges changes = LibraryChanges.between(previousOwnedMovies, ownedBasicMovies);
+                        LOGGER.info("{} in {} since the last scan", changes, plexLibrary.getTitle());
+                        serverScan.libraryChanges.put(library, changes);
+                    }
+
+                    fileIoService.writeOwnedMoviesToFile(ownedBasicMovies, plexServer.getMachineIdentifier(), plexLibrary.getKey());
+                    serverScan.scannedLibraries.add(library);
+                    notificationService.publish(GapsEvent.plexLibraryScanSuccessful(plexServer, plexLibrary), notificationDigest);
+                });
+            } catch (RuntimeException e) {
+                serverScan.ifActive(() -> {
+                    LOGGER.error(String.format("Scan of %s on Plex Server %s failed", plexLibrary.getTitle(), plexServer.getFriendlyName()), e);
+                    notificationService.publish(GapsEvent.plexLibraryScanFailed(plexServer, plexLibrary, describe(e)), notificationDigest);
+                });
             }
         }
-        LOGGER.info("updateLibraryMovies() executed {} times", counter);
     }
 
-    private void findRecommendedMovies(@NotNull PlexProperties plexProperties) {
+    private static @NotNull String describe(@NotNull RuntimeException e) {
+        return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+    }
+
+    /**
+     * Only libraries read in this run are searched. The owned movies of any other library could be out of date.
+     */
+    private void findRecommendedMovies(@NotNull List<ServerScan> serverScans, @Nullable NotificationDigest notificationDigest) {
         LOGGER.debug("updateLibraryMovies()");
-        int counter =0;
-        for (PlexServer plexServer : plexProperties.getPlexServers()) {
+        //Start every search first so libraries are searched side by side, as many at once as the search pool allows
+        List<SearchJob> searchJobs = new ArrayList<>();
+        for (ServerScan serverScan : serverScans) {
+            PlexServer plexServer = serverScan.plexServer;
             for (PlexLibrary plexLibrary : plexServer.getPlexLibraries()) {
-                gapsSearch.run(plexServer.getMachineIdentifier(), plexLibrary.getKey());
-                counter++;
+                Pair<String, Integer> library = new Pair<>(plexServer.getMachineIdentifier(), plexLibrary.getKey());
+                if (!serverScan.scannedLibraries.contains(library)) {
+                    LOGGER.info("{} wasn't scanned. Skipping search.", plexLibrary.getTitle());
+                    continue;
+                }
+
+                LibraryChanges changes = serverScan.libraryChanges.get(library);
+                //Removed movies may need to be recommended again, so only a library that was searched before and just gained or changed movies can be searched incrementally
+                if (gapsConfiguration.getSearch().getIncremental() && changes != null && changes.getRemoved().isEmpty()
+                        && fileIoService.doesRssFileExist(plexServer.getMachineIdentifier(), plexLibrary.getKey())) {
+                    if (changes.getChanged().isEmpty()) {
+                        LOGGER.info("No changes in {}. Skipping search.", plexLibrary.getTitle());
+                        continue;
+                    }
+                    searchJobs.add(gapsSearchService.start(plexServer.getMachineIdentifier(), plexLibrary.getKey(), changes.getChanged(), notificationDigest));
+                } else {
+                    searchJobs.add(gapsSearchService.start(plexServer.getMachineIdentifier(), plexLibrary.getKey(), notificationDigest));
+                }
             }
         }
-        LOGGER.info("findRecommendedMovies() executed {} times", counter);
+
+        for (SearchJob searchJob : searchJobs) {
+            try {
+                searchJob.getCompletion().join();
+            } catch (CompletionException e) {
+                LOGGER.warn("Search of {} {} failed: {}", searchJob.getMachineIdentifier(), searchJob.getKey(), e.getCause().getMessage());
+            }
+        }
+        LOGGER.info("findRecommendedMovies() executed {} times", searchJobs.size());
     }
 
-    private @NotNull Map<Pair<String, Integer>, BasicMovie> generateOwnedMovieMap(@NotNull PlexProperties plexProperties) {
-        Set<BasicMovie> everyBasicMovie = fileIoService.readMovieIdsFromFile();
-        Map<Pair<String, Integer>, BasicMovie> previousMovies = new HashMap<>();
+    /**
+     * One server's part of a run. Once the run stops waiting for it the scan is abandoned, and from then on it keeps,
+     * writes and publishes nothing.
+     */
+    private static final class ServerScan {
+        @NotNull
+        private final PlexServer plexServer;
+        @NotNull
+        private final CompletableFuture<Long> started;
+        @NotNull
+        private final Set<Pair<String, Integer>> scannedLibraries;
+        @NotNull
+        private final Map<Pair<String, Integer>, LibraryChanges> libraryChanges;
+        private Future<?> future;
+        private boolean abandoned;
+
+        private ServerScan(@NotNull PlexServer plexServer) {
+            this.plexServer = plexServer;
+            this.started = new CompletableFuture<>();
+            this.scannedLibraries = new HashSet<>();
+            this.libraryChanges = new HashMap<>();
+        }
+
+        /**
+         * Runs the action unless the scan was abandoned. The run waits for a running action before abandoning the scan.
+         */
+        private synchronized void ifActive(@NotNull Runnable action) {
+            if (!abandoned) {
+                action.run();
+            }
+        }
 
-        plexProperties
-                .getPlexServers()
-                .forEach(plexServer -> plexServer
-                        .getPlexLibraries()
-                        .forEach(plexLibrary -> everyBasicMovie.forEach(movie -> previousMovies.put(new Pair<>(movie.getName(), movie.getYear()), movie))));
+        private synchronized boolean isAbandoned() {
+            return abandoned;
+        }
 
-        return previousMovies;
+        private void abandon() {
+            synchronized (this) {
+                abandoned = true;
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
     }
 }
@@ -50,7 +50,7 @@ public class GapsController {
     public ModelAndView getIndexOnClick() {
         LOGGER.info("getIndexOnClick()");
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
 
         ModelAndView modelAndView = new ModelAndView("index");
         modelAndView.addObject("plexProperties", plexProperties);
@@ -61,7 +61,7 @@ public class GapsController {
     public ModelAndView getIndex() {
         LOGGER.info("getIndex()");
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
 
         //If configuration is filled in, jump to libraries page
         if (StringUtils.isNotEmpty(plexProperties.getMovieDbApiKey()) && CollectionUtils.isNotEmpty(plexProperties.getPlexServers())) {
@@ -50,7 +50,7 @@ public class LibraryController {
     public ModelAndView getLibraries() {
         LOGGER.info("getLibraries()");
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
         boolean plexServersFound;
         PlexServer plexServer;
         PlexLibrary plexLibrary;
@@ -63,7 +63,7 @@ public class MislabeledController {
         StopWatch watch = new StopWatch();
         watch.start();
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
 
         String url = generatePlexUrl(plexProperties, machineIdentifier, key);
         MediaContainer mediaContainer = plexQuery.findAllPlexVideos(url);
@@ -105,7 +105,7 @@ public class MislabeledController {
         StopWatch watch = new StopWatch();
         watch.start();
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
         String url = generatePlexUrl(plexProperties, machineIdentifier, key);
         MediaContainer mediaContainer = plexQuery.findAllPlexVideos(url);
         List<Mislabeled> mislabeled = mislabeledService.findMatchPercentage(mediaContainer, percentage);
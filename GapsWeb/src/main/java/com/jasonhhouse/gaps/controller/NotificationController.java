@@ -73,7 +73,7 @@ public class NotificationController {
         LOGGER.info("getEmail()");
 
         try {
-            return ResponseEntity.ok().body(Payload.EMAIL_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getEmailProperties()));
+            return ResponseEntity.ok().body(Payload.EMAIL_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getEmailProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.EMAIL_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.EMAIL_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
@@ -106,7 +106,7 @@ public class NotificationController {
         LOGGER.info("getDiscord()");
 
         try {
-            return ResponseEntity.ok().body(Payload.DISCORD_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getDiscordProperties()));
+            return ResponseEntity.ok().body(Payload.DISCORD_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getDiscordProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.DISCORD_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.DISCORD_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
@@ -139,7 +139,7 @@ public class NotificationController {
         LOGGER.info("getGotify()");
 
         try {
-            return ResponseEntity.ok().body(Payload.GOTIFY_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getGotifyProperties()));
+            return ResponseEntity.ok().body(Payload.GOTIFY_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getGotifyProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.GOTIFY_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.GOTIFY_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
@@ -172,7 +172,7 @@ public class NotificationController {
         LOGGER.info("getPushBullet()");
 
         try {
-            return ResponseEntity.ok().body(Payload.PUSH_BULLET_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getPushBulletProperties()));
+            return ResponseEntity.ok().body(Payload.PUSH_BULLET_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getPushBulletProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.PUSH_BULLET_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.PUSH_BULLET_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
@@ -205,7 +205,7 @@ public class NotificationController {
         LOGGER.info("getSlack()");
 
         try {
-            return ResponseEntity.ok().body(Payload.SLACK_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getSlackProperties()));
+            return ResponseEntity.ok().body(Payload.SLACK_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getSlackProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.SLACK_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.SLACK_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
@@ -238,7 +238,7 @@ public class NotificationController {
         LOGGER.info("getTelegram()");
 
         try {
-            return ResponseEntity.ok().body(Payload.TELEGRAM_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getTelegramProperties()));
+            return ResponseEntity.ok().body(Payload.TELEGRAM_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getTelegramProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.TELEGRAM_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.TELEGRAM_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
@@ -271,7 +271,7 @@ public class NotificationController {
         LOGGER.info("getPushOver()");
 
         try {
-            return ResponseEntity.ok().body(Payload.PUSH_OVER_NOTIFICATION_FOUND.setExtras(fileIoService.readProperties().getPushOverProperties()));
+            return ResponseEntity.ok().body(Payload.PUSH_OVER_NOTIFICATION_FOUND.setExtras(fileIoService.getProperties().getPushOverProperties()));
         } catch (Exception e) {
             LOGGER.error(Payload.PUSH_OVER_NOTIFICATION_NOT_FOUND.getReason(), e);
             return ResponseEntity.ok().body(Payload.PUSH_OVER_NOTIFICATION_NOT_FOUND.setExtras(e.getMessage()));
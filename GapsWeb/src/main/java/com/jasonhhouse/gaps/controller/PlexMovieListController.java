@@ -10,18 +10,15 @@
 
 package com.jasonhhouse.gaps.controller;
 
-import com.jasonhhouse.gaps.GapsUrlGenerator;
 import com.jasonhhouse.gaps.BasicMovie;
-import com.jasonhhouse.gaps.Pair;
-import com.jasonhhouse.gaps.service.PlexQuery;
+import com.jasonhhouse.gaps.GapsUrlGenerator;
 import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.PreviousMovieIndex;
 import com.jasonhhouse.gaps.properties.PlexProperties;
 import com.jasonhhouse.gaps.service.FileIoService;
+import com.jasonhhouse.gaps.service.PlexQuery;
 import com.jasonhhouse.plex.libs.PlexLibrary;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import okhttp3.HttpUrl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,9 +53,8 @@ public class PlexMovieListController {
     public ResponseEntity<List<BasicMovie>> getPlexMovies(@PathVariable("machineIdentifier") final String machineIdentifier, @PathVariable("key") final Integer key) {
         LOGGER.info("getPlexMovies( {}, {} )", machineIdentifier, key);
 
-        PlexProperties plexProperties = fileIoService.readProperties();
-        Set<BasicMovie> everyBasicMovie = fileIoService.readMovieIdsFromFile();
-        Map<Pair<String, Integer>, BasicMovie> previousMovies = generateOwnedMovieMap(plexProperties, everyBasicMovie);
+        PlexProperties plexProperties = fileIoService.getProperties();
+        PreviousMovieIndex previousMovies = PreviousMovieIndex.lazy(fileIoService::readMovieIdsFromFile);
         PlexServer plexServer = plexQuery.getPlexServerFromMachineIdentifier(plexProperties, machineIdentifier);
         PlexLibrary plexLibrary = plexQuery.getPlexLibraryFromKey(plexServer, key);
         HttpUrl url = gapsUrlGenerator.generatePlexLibraryUrl(plexServer, plexLibrary);
@@ -70,16 +66,4 @@ public class PlexMovieListController {
         return ResponseEntity.ok().body(ownedBasicMovies);
     }
 
-    private Map<Pair<String, Integer>, BasicMovie> generateOwnedMovieMap(PlexProperties plexProperties, Set<BasicMovie> everyBasicMovie) {
-        Map<Pair<String, Integer>, BasicMovie> previousMovies = new HashMap<>();
-
-        plexProperties
-                .getPlexServers()
-                .forEach(plexServer -> plexServer
-                        .getPlexLibraries()
-                        .forEach(plexLibrary -> everyBasicMovie.forEach(movie -> previousMovies.put(new Pair<>(movie.getName(), movie.getYear()), movie))));
-
-        return previousMovies;
-    }
-
 }
@@ -66,7 +66,7 @@ public class RSSController {
     public ModelAndView getRssCheck() {
         LOGGER.info("getRssCheck()");
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
         ModelAndView modelAndView = new ModelAndView("rssCheck");
         Map<PlexLibrary, PlexServer> map = rssService.foundAnyRssFeeds();
         modelAndView.addObject("plexServers", plexProperties.getPlexServers());
@@ -13,6 +13,8 @@ import com.jasonhhouse.gaps.service.GapsSearch;
 import com.jasonhhouse.gaps.BasicMovie;
 import com.jasonhhouse.gaps.Payload;
 import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.SearchJob;
+import com.jasonhhouse.gaps.SearchJobStatus;
 import com.jasonhhouse.gaps.properties.PlexProperties;
 import com.jasonhhouse.gaps.service.FileIoService;
 import com.jasonhhouse.plex.libs.PlexLibrary;
@@ -24,7 +26,6 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
@@ -34,7 +35,6 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -57,7 +57,7 @@ public class RecommendedController {
     public ModelAndView getRecommended() {
         LOGGER.info("getRecommended()");
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
         PlexServer plexServer;
         PlexLibrary plexLibrary;
 
@@ -107,18 +107,19 @@ public class RecommendedController {
     }
 
     /**
-     * Start Gaps searching for missing movies
+     * Start Gaps searching for missing movies. Answers right away, progress is sent over the websocket and can be
+     * polled from /searches/{id}.
      *
      * @param machineIdentifier plex server id
      * @param key               plex library key
      */
     @PutMapping(value = "/find/{machineIdentifier}/{key}",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    @ResponseStatus(value = HttpStatus.OK)
-    public void putFindRecommencedMovies(@PathVariable("machineIdentifier") final String machineIdentifier, @PathVariable("key") final Integer key) {
+    public ResponseEntity<SearchJobStatus> putFindRecommencedMovies(@PathVariable("machineIdentifier") final String machineIdentifier, @PathVariable("key") final Integer key) {
         LOGGER.info("putFindRecommencedMovies( {}, {} )", machineIdentifier, key);
 
-        gapsSearch.run(machineIdentifier, key);
+        SearchJob searchJob = gapsSearch.start(machineIdentifier, key);
+        return ResponseEntity.accepted().body(SearchJobStatus.of(searchJob));
     }
 
     /**
@@ -130,7 +131,7 @@ public class RecommendedController {
     @MessageMapping("/cancel/{machineIdentifier}/{key}")
     public void cancelSearching(@DestinationVariable final String machineIdentifier, @DestinationVariable final Integer key) {
         LOGGER.info("cancelSearching( {}, {} )", machineIdentifier, key);
-        gapsSearch.cancelSearch();
+        gapsSearch.cancelSearch(machineIdentifier, key);
     }
 
 
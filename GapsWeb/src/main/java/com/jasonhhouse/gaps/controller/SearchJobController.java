@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.controller;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.SearchJob;
+import com.jasonhhouse.gaps.SearchJobStatus;
+import com.jasonhhouse.gaps.service.GapsSearch;
+import com.jasonhhouse.gaps.service.SearchJobRegistry;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Starts searches in the background and reports on them. A search is started with a POST, which answers right away
+ * with the search's id. Clients then poll its status and results, or cancel it, by that id.
+ */
+@RestController
+@RequestMapping("/searches")
+public class SearchJobController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchJobController.class);
+
+    private final GapsSearch gapsSearch;
+    private final SearchJobRegistry searchJobRegistry;
+
+    @Autowired
+    public SearchJobController(GapsSearch gapsSearch, SearchJobRegistry searchJobRegistry) {
+        this.gapsSearch = gapsSearch;
+        this.searchJobRegistry = searchJobRegistry;
+    }
+
+    /**
+     * Queues a search of the library, or hands back the one already under way
+     *
+     * @param machineIdentifier plex server id
+     * @param key               plex library key
+     */
+    @PostMapping(value = "/{machineIdentifier}/{key}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SearchJobStatus> postSearch(@PathVariable("machineIdentifier") final String machineIdentifier, @PathVariable("key") final Integer key) {
+        LOGGER.info("postSearch( {}, {} )", machineIdentifier, key);
+
+        SearchJob searchJob = gapsSearch.start(machineIdentifier, key);
+        return ResponseEntity.accepted().body(SearchJobStatus.of(searchJob));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<SearchJobStatus>> getSearches() {
+        LOGGER.info("getSearches()");
+
+        List<SearchJobStatus> searchJobStatuses = searchJobRegistry.getSearchJobs()
+                .stream()
+                .map(SearchJobStatus::of)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok().body(searchJobStatuses);
+    }
+
+    @GetMapping(value = "/{id}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SearchJobStatus> getSearch(@PathVariable("id") final String id) {
+        LOGGER.info("getSearch( {} )", id);
+
+        return ResponseEntity.ok().body(SearchJobStatus.of(findSearchJob(id)));
+    }
+
+    /**
+     * @return The movies recommended so far, all of them once the search has finished
+     */
+    @GetMapping(value = "/{id}/recommended",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BasicMovie>> getRecommended(@PathVariable("id") final String id) {
+        LOGGER.info("getRecommended( {} )", id);
+
+        return ResponseEntity.ok().body(findSearchJob(id).getRecommendedSoFar());
+    }
+
+    @DeleteMapping(value = "/{id}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SearchJobStatus> deleteSearch(@PathVariable("id") final String id) {
+        LOGGER.info("deleteSearch( {} )", id);
+
+        SearchJob searchJob = findSearchJob(id);
+        gapsSearch.cancelSearch(searchJob.getMachineIdentifier(), searchJob.getKey());
+        return ResponseEntity.ok().body(SearchJobStatus.of(searchJob));
+    }
+
+    private SearchJob findSearchJob(String id) {
+        return searchJobRegistry.getById(id).orElseThrow(() -> {
+            String reason = "No search found with id " + id;
+            LOGGER.warn(reason);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, reason);
+        });
+    }
+}
@@ -25,7 +25,6 @@ public abstract class AbstractNotificationAgent<T extends NotificationProperties
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractNotificationAgent.class);
 
     protected final IO ioService;
-    protected T t;
 
     protected AbstractNotificationAgent(@NotNull IO ioService) {
         this.ioService = ioService;
@@ -37,12 +36,13 @@ public abstract class AbstractNotificationAgent<T extends NotificationProperties
         return notificationProperties.getEnabled();
     }
 
-    protected @NotNull Boolean sendPrepMessage(@NotNull NotificationType notificationType) {
+    /**
+     * @param notificationProperties Read by the caller for this message alone, agents send several messages at once
+     */
+    protected @NotNull Boolean sendPrepMessage(@NotNull T notificationProperties, @NotNull NotificationType notificationType) {
         LOGGER.info("sendPrepMessage()");
 
-        t = getNotificationProperties();
-
-        if (!notificationType.equals(NotificationType.TEST) && !t.getNotificationTypes().contains(notificationType)) {
+        if (!notificationType.equals(NotificationType.TEST) && !notificationProperties.getNotificationTypes().contains(notificationType)) {
             LOGGER.info(AGENT_NOT_ENABLED_FOR_NOTIFICATION_TYPE, getName(), notificationType);
             return true;
         }
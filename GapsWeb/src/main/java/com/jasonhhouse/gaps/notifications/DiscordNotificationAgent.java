@@ -45,13 +45,17 @@ public final class DiscordNotificationAgent extends AbstractNotificationAgent<Di
     private final OkHttpClient client;
 
     public DiscordNotificationAgent(@NotNull IO ioService) {
-        super(ioService);
-
-        client = new OkHttpClient.Builder()
+        this(ioService, new OkHttpClient.Builder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+                .callTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    public DiscordNotificationAgent(@NotNull IO ioService, @NotNull OkHttpClient client) {
+        super(ioService);
+        this.client = client;
     }
 
     @Override
@@ -68,11 +72,12 @@ public final class DiscordNotificationAgent extends AbstractNotificationAgent<Di
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info("sendMessage( {}, {}, {} )", level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        DiscordProperties discordProperties = getNotificationProperties();
+        if (sendPrepMessage(discordProperties, notificationType)) {
             return false;
         }
 
-        HttpUrl url = HttpUrl.get(t.getWebHookUrl());
+        HttpUrl url = HttpUrl.get(discordProperties.getWebHookUrl());
 
         Headers headers = new Headers.Builder()
                 .add("Content-Type", org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
@@ -114,7 +119,7 @@ public final class DiscordNotificationAgent extends AbstractNotificationAgent<Di
 
     @Override
     public @NotNull DiscordProperties getNotificationProperties() {
-        return ioService.readProperties().getDiscordProperties();
+        return ioService.getProperties().getDiscordProperties();
     }
 
     private static final class Discord {
@@ -24,6 +24,7 @@ import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
 
 import static com.jasonhhouse.gaps.notifications.NotificationStatus.SEND_MESSAGE;
+import static com.jasonhhouse.gaps.notifications.NotificationStatus.TIMEOUT;
 
 public final class EmailNotificationAgent extends AbstractNotificationAgent<EmailProperties> {
 
@@ -49,16 +50,17 @@ public final class EmailNotificationAgent extends AbstractNotificationAgent<Emai
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info(SEND_MESSAGE, level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        EmailProperties emailProperties = getNotificationProperties();
+        if (sendPrepMessage(emailProperties, notificationType)) {
             return false;
         }
 
-        JavaMailSenderImpl mailSender = getJavaMailSender();
+        JavaMailSenderImpl mailSender = getJavaMailSender(emailProperties);
 
         try {
             SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
-            simpleMailMessage.setFrom(t.getMailFrom());
-            simpleMailMessage.setTo(t.getMailTo());
+            simpleMailMessage.setFrom(emailProperties.getMailFrom());
+            simpleMailMessage.setTo(emailProperties.getMailTo());
             simpleMailMessage.setSubject(title);
             simpleMailMessage.setText(message);
             mailSender.send(simpleMailMessage);
@@ -71,22 +73,27 @@ public final class EmailNotificationAgent extends AbstractNotificationAgent<Emai
 
     @Override
     public @NotNull EmailProperties getNotificationProperties() {
-        return ioService.readProperties().getEmailProperties();
+        return ioService.getProperties().getEmailProperties();
     }
 
-    private JavaMailSenderImpl getJavaMailSender() {
+    private JavaMailSenderImpl getJavaMailSender(@NotNull EmailProperties emailProperties) {
         JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
-        mailSender.setHost(t.getMailServer());
-        mailSender.setPort(t.getMailPort());
+        mailSender.setHost(emailProperties.getMailServer());
+        mailSender.setPort(emailProperties.getMailPort());
 
-        mailSender.setUsername(t.getUsername());
-        mailSender.setPassword(t.getPassword());
+        mailSender.setUsername(emailProperties.getUsername());
+        mailSender.setPassword(emailProperties.getPassword());
 
         Properties props = mailSender.getJavaMailProperties();
-        props.put("mail.transport.protocol", t.getMailTransportProtocol());
-        props.put("mail.smtp.auth", t.getMailSmtpAuth());
-        props.put("mail.smtp.starttls.enable", t.getMailSmtpTlsEnabled());
+        props.put("mail.transport.protocol", emailProperties.getMailTransportProtocol());
+        props.put("mail.smtp.auth", emailProperties.getMailSmtpAuth());
+        props.put("mail.smtp.starttls.enable", emailProperties.getMailSmtpTlsEnabled());
         props.put("mail.debug", "false");
+        //Without these a hung mail server blocks the sender thread forever
+        String protocol = "mail." + emailProperties.getMailTransportProtocol();
+        props.put(protocol + ".connectiontimeout", String.valueOf(TIMEOUT));
+        props.put(protocol + ".timeout", String.valueOf(TIMEOUT));
+        props.put(protocol + ".writetimeout", String.valueOf(TIMEOUT));
 
         return mailSender;
     }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.notifications;
+
+import com.jasonhhouse.gaps.NotificationType;
+import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.plex.libs.PlexLibrary;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Something that happened in Gaps that notification agents may want to hear about. Producers build one of these with
+ * the matching factory method and publish it once, every agent subscribed to its {@link NotificationType} is sent the
+ * same title and message. The server and library it happened to are kept so events can be summarised together.
+ */
+public final class GapsEvent {
+
+    private static final String SEARCH_TITLE = "Gaps Search";
+
+    @NotNull
+    private final Kind kind;
+
+    @NotNull
+    private final String title;
+
+    @NotNull
+    private final String message;
+
+    @Nullable
+    private final String serverName;
+
+    @Nullable
+    private final String libraryName;
+
+    private GapsEvent(@NotNull Kind kind, @NotNull String title, @NotNull String message, @Nullable String serverName, @Nullable String libraryName) {
+        this.kind = kind;
+        this.title = title;
+        this.message = message;
+        this.serverName = serverName;
+        this.libraryName = libraryName;
+    }
+
+    public static @NotNull GapsEvent plexServerConnectFailed(@NotNull PlexServer plexServer, @NotNull String error) {
+        return new GapsEvent(Kind.PLEX_SERVER_CONNECT_FAILED, SEARCH_TITLE, String.format("Connection to Plex Server %s Failed. %s", plexServer.getFriendlyName(), error), plexServer.getFriendlyName(), null);
+    }
+
+    public static @NotNull GapsEvent plexServerConnectSuccessful(@NotNull PlexServer plexServer) {
+        return new GapsEvent(Kind.PLEX_SERVER_CONNECT_SUCCESSFUL, SEARCH_TITLE, String.format("Connection to Plex Server %s Successful", plexServer.getFriendlyName()), plexServer.getFriendlyName(), null);
+    }
+
+    public static @NotNull GapsEvent plexLibraryScanFailed(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary, @NotNull String error) {
+        return new GapsEvent(Kind.PLEX_LIBRARY_SCAN_FAILED, SEARCH_TITLE, String.format("Scanning Plex Server %s in %s Library Failed. %s", plexServer.getFriendlyName(), plexLibrary.getTitle(), error), plexServer.getFriendlyName(), plexLibrary.getTitle());
+    }
+
+    public static @NotNull GapsEvent plexLibraryScanSuccessful(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
+        return new GapsEvent(Kind.PLEX_LIBRARY_SCAN_SUCCESSFUL, SEARCH_TITLE, String.format("Scanning Plex Server %s in %s Library Successful", plexServer.getFriendlyName(), plexLibrary.getTitle()), plexServer.getFriendlyName(), plexLibrary.getTitle());
+    }
+
+    public static @NotNull GapsEvent tmdbConnectionFailed(@NotNull String error) {
+        return new GapsEvent(Kind.TMDB_CONNECTION_FAILED, SEARCH_TITLE, String.format("TMDB Connection Failed. %s", error), null, null);
+    }
+
+    public static @NotNull GapsEvent tmdbConnectionSuccessful() {
+        return new GapsEvent(Kind.TMDB_CONNECTION_SUCCESSFUL, SEARCH_TITLE, "TMDB Connection Successful", null, null);
+    }
+
+    public static @NotNull GapsEvent recommendedMoviesSearchStarted(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
+        return new GapsEvent(Kind.RECOMMENDED_MOVIES_SEARCH_STARTED, SEARCH_TITLE, String.format("Scanning Plex Server %s on Library %s Started", plexServer.getFriendlyName(), plexLibrary.getTitle()), plexServer.getFriendlyName(), plexLibrary.getTitle());
+    }
+
+    public static @NotNull GapsEvent recommendedMoviesSearchFailed(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary, @NotNull String error) {
+        return new GapsEvent(Kind.RECOMMENDED_MOVIES_SEARCH_FAILED, SEARCH_TITLE, String.format("Scanning Plex Server %s on Library %s Failed %s", plexServer.getFriendlyName(), plexLibrary.getTitle(), error), plexServer.getFriendlyName(), plexLibrary.getTitle());
+    }
+
+    public static @NotNull GapsEvent recommendedMoviesSearchFinished(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
+        return new GapsEvent(Kind.RECOMMENDED_MOVIES_SEARCH_FINISHED, SEARCH_TITLE, String.format("Scanning Plex Server %s on Library %s Successfully Finished", plexServer.getFriendlyName(), plexLibrary.getTitle()), plexServer.getFriendlyName(), plexLibrary.getTitle());
+    }
+
+    public static @NotNull GapsEvent test() {
+        return new GapsEvent(Kind.TEST, "Gaps Test", "Test Successful", null, null);
+    }
+
+    public @NotNull Kind getKind() {
+        return kind;
+    }
+
+    public @NotNull NotificationType getNotificationType() {
+        return kind.getNotificationType();
+    }
+
+    public @NotNull String getLevel() {
+        return kind.getLevel();
+    }
+
+    public @NotNull String getTitle() {
+        return title;
+    }
+
+    public @NotNull String getMessage() {
+        return message;
+    }
+
+    public @Nullable String getServerName() {
+        return serverName;
+    }
+
+    public @Nullable String getLibraryName() {
+        return libraryName;
+    }
+
+    @Override
+    public String toString() {
+        return "GapsEvent{" +
+                "kind=" + kind +
+                ", title='" + title + '\'' +
+                ", message='" + message + '\'' +
+                ", serverName='" + serverName + '\'' +
+                ", libraryName='" + libraryName + '\'' +
+                '}';
+    }
+
+    public enum Kind {
+        PLEX_SERVER_CONNECT_FAILED(NotificationType.PLEX_SERVER_CONNECTION, "ERROR", "connection failed", true),
+        PLEX_SERVER_CONNECT_SUCCESSFUL(NotificationType.PLEX_SERVER_CONNECTION, "INFO", "connected", false),
+        PLEX_LIBRARY_SCAN_FAILED(NotificationType.PLEX_METADATA_UPDATE, "INFO", "scan failed", true),
+        PLEX_LIBRARY_SCAN_SUCCESSFUL(NotificationType.PLEX_METADATA_UPDATE, "INFO", "scanned", false),
+        TMDB_CONNECTION_FAILED(NotificationType.TMDB_API_CONNECTION, "INFO", "connection failed", true),
+        TMDB_CONNECTION_SUCCESSFUL(NotificationType.TMDB_API_CONNECTION, "INFO", "connected", false),
+        RECOMMENDED_MOVIES_SEARCH_STARTED(NotificationType.GAPS_MISSING_COLLECTIONS, "INFO", "search started", false),
+        RECOMMENDED_MOVIES_SEARCH_FAILED(NotificationType.GAPS_MISSING_COLLECTIONS, "INFO", "search failed", true),
+        RECOMMENDED_MOVIES_SEARCH_FINISHED(NotificationType.GAPS_MISSING_COLLECTIONS, "INFO", "search finished", false),
+        TEST(NotificationType.TEST, "DEBUG", "test", false);
+
+        @NotNull
+        private final NotificationType notificationType;
+
+        @NotNull
+        private final String level;
+
+        /**
+         * Short outcome used when the event is summarised with others
+         */
+        @NotNull
+        private final String outcome;
+
+        private final boolean failure;
+
+        Kind(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String outcome, boolean failure) {
+            this.notificationType = notificationType;
+            this.level = level;
+            this.outcome = outcome;
+            this.failure = failure;
+        }
+
+        public @NotNull NotificationType getNotificationType() {
+            return notificationType;
+        }
+
+        public @NotNull String getLevel() {
+            return level;
+        }
+
+        public @NotNull String getOutcome() {
+            return outcome;
+        }
+
+        public boolean isFailure() {
+            return failure;
+        }
+    }
+}
@@ -44,14 +44,17 @@ public final class GotifyNotificationAgent extends AbstractNotificationAgent<Got
     private final OkHttpClient client;
 
     public GotifyNotificationAgent(@NotNull IO ioService) {
-        super(ioService);
-
-        client = new OkHttpClient.Builder()
+        this(ioService, new OkHttpClient.Builder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+                .callTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build());
+    }
 
+    public GotifyNotificationAgent(@NotNull IO ioService, @NotNull OkHttpClient client) {
+        super(ioService);
+        this.client = client;
     }
 
     @Override
@@ -68,11 +71,12 @@ public final class GotifyNotificationAgent extends AbstractNotificationAgent<Got
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info(SEND_MESSAGE, level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        GotifyProperties gotifyProperties = getNotificationProperties();
+        if (sendPrepMessage(gotifyProperties, notificationType)) {
             return false;
         }
 
-        HttpUrl url = HttpUrl.parse(String.format("%s/message?token=%s", t.getAddress(), t.getToken()));
+        HttpUrl url = HttpUrl.parse(String.format("%s/message?token=%s", gotifyProperties.getAddress(), gotifyProperties.getToken()));
 
         Gotify gotify = new Gotify(title, message);
 
@@ -109,7 +113,7 @@ public final class GotifyNotificationAgent extends AbstractNotificationAgent<Got
 
     @Override
     public @NotNull GotifyProperties getNotificationProperties() {
-        return ioService.readProperties().getGotifyProperties();
+        return ioService.getProperties().getGotifyProperties();
     }
 
     public static final class Gotify {
@@ -45,13 +45,17 @@ public final class PushBulletNotificationAgent extends AbstractNotificationAgent
     private final OkHttpClient client;
 
     public PushBulletNotificationAgent(@NotNull IO ioService) {
-        super(ioService);
-
-        client = new OkHttpClient.Builder()
+        this(ioService, new OkHttpClient.Builder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+                .callTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    public PushBulletNotificationAgent(@NotNull IO ioService, @NotNull OkHttpClient client) {
+        super(ioService);
+        this.client = client;
     }
 
     @Override
@@ -68,7 +72,8 @@ public final class PushBulletNotificationAgent extends AbstractNotificationAgent
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info(SEND_MESSAGE, level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        PushBulletProperties pushBulletProperties = getNotificationProperties();
+        if (sendPrepMessage(pushBulletProperties, notificationType)) {
             return false;
         }
 
@@ -81,10 +86,10 @@ public final class PushBulletNotificationAgent extends AbstractNotificationAgent
 
         Headers headers = new Headers.Builder()
                 .add("Content-Type", org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
-                .add("Access-Token", t.getAccessToken())
+                .add("Access-Token", pushBulletProperties.getAccessToken())
                 .build();
 
-        PushBullet pushBullet = new PushBullet(t.getChannel_tag(), title, message);
+        PushBullet pushBullet = new PushBullet(pushBulletProperties.getChannel_tag(), title, message);
 
         String pushBulletMessage = "";
         try {
@@ -120,7 +125,7 @@ public final class PushBulletNotificationAgent extends AbstractNotificationAgent
 
     @Override
     public @NotNull PushBulletProperties getNotificationProperties() {
-        return ioService.readProperties().getPushBulletProperties();
+        return ioService.getProperties().getPushBulletProperties();
     }
 
     public static final class PushBullet {
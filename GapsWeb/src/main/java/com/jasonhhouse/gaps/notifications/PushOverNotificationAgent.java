@@ -42,13 +42,17 @@ public final class PushOverNotificationAgent extends AbstractNotificationAgent<P
     private final OkHttpClient client;
 
     public PushOverNotificationAgent(@NotNull IO ioService) {
-        super(ioService);
-
-        client = new OkHttpClient.Builder()
+        this(ioService, new OkHttpClient.Builder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+                .callTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    public PushOverNotificationAgent(@NotNull IO ioService, @NotNull OkHttpClient client) {
+        super(ioService);
+        this.client = client;
     }
 
     @Override
@@ -65,7 +69,8 @@ public final class PushOverNotificationAgent extends AbstractNotificationAgent<P
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info(SEND_MESSAGE, level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        PushOverProperties pushOverProperties = getNotificationProperties();
+        if (sendPrepMessage(pushOverProperties, notificationType)) {
             return false;
         }
 
@@ -76,7 +81,7 @@ public final class PushOverNotificationAgent extends AbstractNotificationAgent<P
                 .addPathSegment("messages.json")
                 .build();
 
-        PushOver pushOver = new PushOver(t.getToken(), t.getUser(), t.getPriority(), t.getSound(), title, message, t.getRetry(), t.getExpire());
+        PushOver pushOver = new PushOver(pushOverProperties.getToken(), pushOverProperties.getUser(), pushOverProperties.getPriority(), pushOverProperties.getSound(), title, message, pushOverProperties.getRetry(), pushOverProperties.getExpire());
 
         String pushOverMessage;
         try {
@@ -111,7 +116,7 @@ public final class PushOverNotificationAgent extends AbstractNotificationAgent<P
 
     @Override
     public @NotNull PushOverProperties getNotificationProperties() {
-        return ioService.readProperties().getPushOverProperties();
+        return ioService.getProperties().getPushOverProperties();
     }
 
     private static final class PushOver {
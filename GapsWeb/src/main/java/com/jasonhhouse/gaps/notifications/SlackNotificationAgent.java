@@ -41,13 +41,17 @@ public final class SlackNotificationAgent extends AbstractNotificationAgent<Slac
     private final OkHttpClient client;
 
     public SlackNotificationAgent(@NotNull IO ioService) {
-        super(ioService);
-
-        client = new OkHttpClient.Builder()
+        this(ioService, new OkHttpClient.Builder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+                .callTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    public SlackNotificationAgent(@NotNull IO ioService, @NotNull OkHttpClient client) {
+        super(ioService);
+        this.client = client;
     }
 
     @Override
@@ -64,11 +68,12 @@ public final class SlackNotificationAgent extends AbstractNotificationAgent<Slac
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info("sendMessage( {}, {}, {} )", level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        SlackProperties slackProperties = getNotificationProperties();
+        if (sendPrepMessage(slackProperties, notificationType)) {
             return false;
         }
 
-        HttpUrl url = HttpUrl.get(t.getWebHookUrl());
+        HttpUrl url = HttpUrl.get(slackProperties.getWebHookUrl());
 
         Headers headers = new Headers.Builder()
                 .add("Content-Type", org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
@@ -110,7 +115,7 @@ public final class SlackNotificationAgent extends AbstractNotificationAgent<Slac
 
     @Override
     public @NotNull SlackProperties getNotificationProperties() {
-        return ioService.readProperties().getSlackProperties();
+        return ioService.getProperties().getSlackProperties();
     }
 
     private static final class Slack {
@@ -40,13 +40,17 @@ public final class TelegramNotificationAgent extends AbstractNotificationAgent<T
     private final OkHttpClient client;
 
     public TelegramNotificationAgent(@NotNull IO ioService) {
-        super(ioService);
-
-        client = new OkHttpClient.Builder()
+        this(ioService, new OkHttpClient.Builder()
                 .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+                .callTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    public TelegramNotificationAgent(@NotNull IO ioService, @NotNull OkHttpClient client) {
+        super(ioService);
+        this.client = client;
     }
 
     @Override
@@ -63,18 +67,19 @@ public final class TelegramNotificationAgent extends AbstractNotificationAgent<T
     public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
         LOGGER.info(SEND_MESSAGE, level, title, message);
 
-        if (sendPrepMessage(notificationType)) {
+        TelegramProperties telegramProperties = getNotificationProperties();
+        if (sendPrepMessage(telegramProperties, notificationType)) {
             return false;
         }
 
         HttpUrl url = new HttpUrl.Builder()
                 .scheme("https")
                 .host("api.telegram.org")
-                .addPathSegment(String.format("bot%s", t.getBotId()))
+                .addPathSegment(String.format("bot%s", telegramProperties.getBotId()))
                 .addPathSegment("sendMessage")
                 .build();
 
-        Telegram telegram = new Telegram(t.getChatId(), String.format("<strong>%s</strong>%n%s", title, message), "HTML");
+        Telegram telegram = new Telegram(telegramProperties.getChatId(), String.format("<strong>%s</strong>%n%s", title, message), "HTML");
 
         String telegramMessage;
         try {
@@ -109,7 +114,7 @@ public final class TelegramNotificationAgent extends AbstractNotificationAgent<T
 
     @Override
     public @NotNull TelegramProperties getNotificationProperties() {
-        return ioService.readProperties().getTelegramProperties();
+        return ioService.getProperties().getTelegramProperties();
     }
 
     public static final class Telegram {
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes files by filling a temp file next to the target and moving it over the target in one step. Readers see either
+ * the old file or the new one, never an empty or half written file. With fsync on, the data is always flushed to disk
+ * before the move, so a crash can't leave the target pointing at data that never reached the disk. The folder, which
+ * holds the rename, is flushed on every write or together every few milliseconds when batching. How long each write
+ * takes is timed by file name.
+ */
+@Service
+public class AtomicFileWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AtomicFileWriter.class);
+
+    /**
+     * Time spent reading and writing Gaps' JSON files, tagged by operation and file name
+     */
+    public static final String FILE_IO_METRIC = "gaps.file.io";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final boolean fsync;
+
+    private final Set<Path> pendingFolders;
+
+    private final MeterRegistry meterRegistry;
+
+    @Nullable
+    private final ScheduledExecutorService fsyncExecutor;
+
+    @Autowired
+    public AtomicFileWriter(GapsConfiguration gapsConfiguration, MeterRegistry meterRegistry) {
+        this(gapsConfiguration.getStorage().getFsync(), gapsConfiguration.getStorage().getFsyncBatchMillis(), meterRegistry);
+    }
+
+    public AtomicFileWriter(boolean fsync, long fsyncBatchMillis) {
+        this(fsync, fsyncBatchMillis, Metrics.globalRegistry);
+    }
+
+    public AtomicFileWriter(boolean fsync, long fsyncBatchMillis, MeterRegistry meterRegistry) {
+        this.fsync = fsync;
+        this.pendingFolders = new LinkedHashSet<>();
+        this.meterRegistry = meterRegistry;
+        if (fsync && fsyncBatchMillis > 0) {
+            fsyncExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("Gaps-Fsync-"));
+            fsyncExecutor.scheduleWithFixedDelay(this::flush, fsyncBatchMillis, fsyncBatchMillis, TimeUnit.MILLISECONDS);
+        } else {
+            fsyncExecutor = null;
+        }
+    }
+
+    public void write(@NotNull Path target, @NotNull byte[] bytes) throws IOException {
+        write(target, outputStream -> outputStream.write(bytes));
+    }
+
+    /**
+     * Streams the contents into the temp file, so large files never have to be held in memory as a whole
+     */
+    public void write(@NotNull Path target, @NotNull Contents contents) throws IOException {
+        long start = System.nanoTime();
+        try {
+            writeAtomically(target, contents);
+        } finally {
+            Timer.builder(FILE_IO_METRIC)
+                    .description("Time spent reading and writing JSON files")
+                    .tags("operation", "write", "file", target.getFileName().toString())
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void writeAtomically(@NotNull Path target, @NotNull Contents contents) throws IOException {
+        Path folder = target.toAbsolutePath().getParent();
+        Files.createDirectories(folder);
+
+        Path temp = Files.createTempFile(folder, "." + target.getFileName(), TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                contents.writeTo(outputStream);
+                outputStream.flush();
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+
+            move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (!fsync) {
+            return;
+        }
+
+        if (fsyncExecutor == null) {
+            forceFolder(folder);
+        } else {
+            synchronized (pendingFolders) {
+                pendingFolders.add(folder);
+            }
+        }
+    }
+
+    /**
+     * Flushes the folders written to since the last batch, making their renames durable
+     */
+    public void flush() {
+        List<Path> folders;
+        synchronized (pendingFolders) {
+            if (pendingFolders.isEmpty()) {
+                return;
+            }
+            folders = new ArrayList<>(pendingFolders);
+            pendingFolders.clear();
+        }
+
+        folders.forEach(AtomicFileWriter::forceFolder);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (fsyncExecutor != null) {
+            fsyncExecutor.shutdown();
+        }
+        flush();
+    }
+
+    private static void move(@NotNull Path temp, @NotNull Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOGGER.warn("Atomic move not supported for {}, replacing it directly", target);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Makes the rename itself durable. Not every platform can open a folder to flush it, Windows for one.
+     */
+    private static void forceFolder(@NotNull Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Can't flush folder {}", folder, e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Contents {
+        /**
+         * Writes the file contents, the stream is flushed and closed by the caller
+         */
+        void writeTo(@NotNull OutputStream outputStream) throws IOException;
+    }
+}
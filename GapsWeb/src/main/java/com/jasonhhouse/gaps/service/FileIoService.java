@@ -10,30 +10,53 @@
 
 package com.jasonhhouse.gaps.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsConfiguration;
 import com.jasonhhouse.gaps.Payload;
 import com.jasonhhouse.gaps.Rss;
-import com.jasonhhouse.gaps.GapsConfiguration;
 import com.jasonhhouse.gaps.properties.PlexProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,11 +67,105 @@ public class FileIoService implements IO {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileIoService.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectWriter movieWriter = objectMapper.writerFor(BasicMovie.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private static final int BUFFER_SIZE = 64 * 1024;
     private final GapsConfiguration gapsConfiguration;
+    private final AtomicFileWriter atomicFileWriter;
+    private final MovieStore movieStore;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Properties as last read from or written to disk. Replaced as a whole, never changed in place.
+     */
+    private final AtomicReference<PropertiesSnapshot> propertiesSnapshot;
+
+    /**
+     * Held while writing or reloading the properties file so the snapshot always matches what is on disk
+     */
+    private final Object propertiesLock;
+
+    @Nullable
+    private WatchService propertiesWatchService;
 
     @Autowired
-    public FileIoService(GapsConfiguration gapsConfiguration) {
+    public FileIoService(GapsConfiguration gapsConfiguration, AtomicFileWriter atomicFileWriter, MovieStore movieStore, MeterRegistry meterRegistry) {
         this.gapsConfiguration = gapsConfiguration;
+        this.atomicFileWriter = atomicFileWriter;
+        this.movieStore = movieStore;
+        this.meterRegistry = meterRegistry;
+        this.propertiesSnapshot = new AtomicReference<>();
+        this.propertiesLock = new Object();
+    }
+
+    /**
+     * Reloads the properties when gaps.properties is edited outside of Gaps
+     */
+    @PostConstruct
+    public void watchProperties() {
+        Path folder = Paths.get(gapsConfiguration.getStorageFolder());
+        if (!Files.isDirectory(folder)) {
+            LOGGER.warn("Can't watch {} for changes to {}, folder doesn't exist", folder, gapsConfiguration.getProperties().getGapsProperties());
+            return;
+        }
+
+        try {
+            WatchService watchService = folder.getFileSystem().newWatchService();
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            propertiesWatchService = watchService;
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't watch %s for changes", folder), e);
+            return;
+        }
+
+        Thread watcher = new Thread(this::watchPropertiesFile, "Gaps-Properties-Watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void stopWatchingProperties() {
+        if (propertiesWatchService == null) {
+            return;
+        }
+
+        try {
+            propertiesWatchService.close();
+        } catch (IOException e) {
+            LOGGER.warn("Can't close properties watcher", e);
+        }
+    }
+
+    private void watchPropertiesFile() {
+        WatchService watchService = propertiesWatchService;
+        if (watchService == null) {
+            return;
+        }
+
+        Path propertiesFileName = Paths.get(gapsConfiguration.getProperties().getGapsProperties()).getFileName();
+        try {
+            while (true) {
+                WatchKey watchKey = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (propertiesFileName.equals(event.context()) || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed = true;
+                    }
+                }
+
+                if (changed) {
+                    reloadProperties();
+                }
+
+                if (!watchKey.reset()) {
+                    LOGGER.warn("Stopped watching for changes to {}", propertiesFileName);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.debug("Properties watcher closed");
+        }
     }
 
     @Override
@@ -62,17 +179,8 @@ public class FileIoService implements IO {
             return Collections.emptyList();
         }
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(ownedMovieFile), StandardCharsets.UTF_8))) {
-            StringBuilder fullFile = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                fullFile.append(line);
-            }
-
-            return objectMapper.readValue(fullFile.toString(), new TypeReference<>() {
-            });
-        } catch (FileNotFoundException e) {
-            LOGGER.error(String.format("Can't find file %s", ownedMovieFile), e);
+        try {
+            return readMovies(ownedMovieFile.toPath());
         } catch (IOException e) {
             LOGGER.error(String.format("Can't read the file %s", ownedMovieFile), e);
         }
@@ -98,36 +206,14 @@ public class FileIoService implements IO {
 
     @Override
     public void writeRssFile(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Set<BasicMovie> recommended) {
-        File file = Paths.get(gapsConfiguration.getStorageFolder(), machineIdentifier, key.toString(), gapsConfiguration.getProperties().getRssFeed()).toFile();
-
-        if (file.exists()) {
-            boolean deleted = file.delete();
-            if (!deleted) {
-                LOGGER.error("Can't delete existing file {}", file.getPath());
-                return;
-            }
-        }
+        Path file = Paths.get(gapsConfiguration.getStorageFolder(), machineIdentifier, key.toString(), gapsConfiguration.getProperties().getRssFeed());
 
         try {
-            boolean created = file.createNewFile();
-            if (!created) {
-                LOGGER.error("Can't create file {}", file.getPath());
-                return;
-            }
-        } catch (IOException e) {
-            LOGGER.error(String.format("Can't create file %s", file.getPath()), e);
-            return;
-        }
-
-        // Create writer that java will close for us.
-        try (FileOutputStream outputStream = new FileOutputStream(file)) {
             List<Rss> rssList = recommended.stream().map(movie -> new Rss(movie.getImdbId(), movie.getYear(), movie.getTmdbId(), movie.getName(), movie.getPosterUrl())).collect(Collectors.toList());
             byte[] output = objectMapper.writeValueAsBytes(rssList);
-            outputStream.write(output);
-        } catch (FileNotFoundException e) {
-            LOGGER.error(String.format("Can't find file %s", gapsConfiguration.getProperties().getRecommendedMovies()), e);
+            atomicFileWriter.write(file, output);
         } catch (IOException e) {
-            LOGGER.error(String.format("Can't write to file %s", gapsConfiguration.getProperties().getRecommendedMovies()), e);
+            LOGGER.error(String.format("Can't write to file %s", file), e);
         }
     }
 
@@ -171,17 +257,8 @@ public class FileIoService implements IO {
             return Collections.emptyList();
         }
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(ownedMovieFile), StandardCharsets.UTF_8))) {
-            StringBuilder fullFile = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                fullFile.append(line);
-            }
-
-            return objectMapper.readValue(fullFile.toString(), new TypeReference<>() {
-            });
-        } catch (FileNotFoundException e) {
-            LOGGER.error(String.format("Can't find file %s", ownedMovieFile), e);
+        try {
+            return readMovies(ownedMovieFile.toPath());
         } catch (IOException e) {
             LOGGER.error(String.format("Can't read the file %s", ownedMovieFile), e);
         }
@@ -192,114 +269,209 @@ public class FileIoService implements IO {
     @Override
     public void writeMovieIdsToFile(@NotNull Set<BasicMovie> everyBasicMovie) {
         LOGGER.info("writeMovieIdsToFile()");
-        File file = Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getMovieIds()).toFile();
-        writeMovieIdsToFile(everyBasicMovie, file);
+        movieStore.replaceAll(everyBasicMovie);
     }
 
     @Override
     public void writeMovieIdsToFile(@NotNull Set<BasicMovie> everyBasicMovie, @NotNull File file) {
-        if (file.exists()) {
-            boolean deleted = file.delete();
-            if (!deleted) {
-                LOGGER.error("Can't delete existing file {}", file.getName());
-                return;
-            }
+        try {
+            writeMovies(file.toPath(), everyBasicMovie);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't write to file %s", file.getAbsolutePath()), e);
         }
+    }
 
-        try {
-            boolean created = file.createNewFile();
-            if (!created) {
-                LOGGER.error("Can't create file {}", file.getAbsolutePath());
-                return;
+    /**
+     * Reads a json array of movies one movie at a time, so the file is never held in memory as a whole. Gzipped files
+     * are recognized by their header and read the same way.
+     */
+    static <T extends Collection<BasicMovie>> T readMovies(@NotNull Path file, @NotNull T movies) throws IOException {
+        try (InputStream inputStream = openMovieFile(file);
+             JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of movies");
+            }
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                movies.add(objectMapper.readValue(parser, BasicMovie.class));
+            }
+
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Expected a movie");
             }
-        } catch (IOException e) {
-            LOGGER.error(String.format("Can't create file %s", file.getAbsolutePath()), e);
-            return;
         }
+        return movies;
+    }
 
-        try (FileOutputStream outputStream = new FileOutputStream(file)) {
-            byte[] output = objectMapper.writeValueAsBytes(everyBasicMovie);
-            outputStream.write(output);
-        } catch (FileNotFoundException e) {
-            LOGGER.error(String.format("Can't find file %s", file.getAbsolutePath()), e);
-        } catch (IOException e) {
-            LOGGER.error(String.format("Can't write to file %s", file.getAbsolutePath()), e);
+    private static InputStream openMovieFile(@NotNull Path file) throws IOException {
+        InputStream inputStream = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        inputStream.mark(2);
+        int first = inputStream.read();
+        int second = inputStream.read();
+        inputStream.reset();
+
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
         }
+        return inputStream;
+    }
+
+    /**
+     * Writes movies as a json array one movie at a time, gzipped when storage.gzip is on
+     */
+    private void writeMovies(@NotNull Path file, @NotNull Collection<BasicMovie> movies) throws IOException {
+        boolean gzip = gapsConfiguration.getStorage().getGzip();
+        atomicFileWriter.write(file, outputStream -> {
+            GZIPOutputStream gzipOutputStream = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : null;
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(gzip ? gzipOutputStream : outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                for (BasicMovie movie : movies) {
+                    movieWriter.writeValue(generator, movie);
+                }
+                generator.writeEndArray();
+            }
+
+            if (gzipOutputStream != null) {
+                gzipOutputStream.finish();
+            }
+        });
     }
 
     @Override
     @NotNull
     public Set<BasicMovie> readMovieIdsFromFile() {
-        Set<BasicMovie> everyBasicMovie = Collections.emptySet();
-        final File file = Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getMovieIds()).toFile();
-        if (!file.exists()) {
-            LOGGER.warn("Can't find json file '{}'. Most likely first run.", file);
-            return everyBasicMovie;
+        Set<BasicMovie> everyBasicMovie = new HashSet<>(movieStore.readAll());
+        LOGGER.info("everyMovie.size():{}", everyBasicMovie.size());
+        return everyBasicMovie;
+    }
+
+    @Override
+    public void writeProperties(@NotNull PlexProperties plexProperties) {
+        LOGGER.info("writeProperties( {} )", plexProperties);
+
+        byte[] output;
+        try {
+            output = objectMapper.writeValueAsBytes(plexProperties);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't convert properties to json %s", plexProperties), e);
+            return;
         }
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            StringBuilder fullFile = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                fullFile.append(line);
+
+        synchronized (propertiesLock) {
+            if (writePropertiesFile(output)) {
+                updatePropertiesSnapshot(output);
             }
+        }
+    }
 
-            everyBasicMovie = objectMapper.readValue(fullFile.toString(), new TypeReference<>() {
-            });
-            LOGGER.info("everyMovie.size():{}", everyBasicMovie.size());
-        } catch (FileNotFoundException e) {
-            LOGGER.error(String.format("Can't find file %s", file), e);
+    private boolean writePropertiesFile(byte[] output) {
+        final Path propertiesFile = Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getGapsProperties());
+        try {
+            atomicFileWriter.write(propertiesFile, output);
+            return true;
         } catch (IOException e) {
-            LOGGER.error(String.format("Can't write to file %s", file), e);
+            LOGGER.error(String.format("Can't write to file %s", propertiesFile.toAbsolutePath()), e);
+            return false;
         }
+    }
 
-        return everyBasicMovie;
+    @Override
+    @NotNull
+    public PlexProperties readProperties() {
+        LOGGER.debug("readProperties()");
+
+        try {
+            return objectMapper.readValue(getPropertiesSnapshot().json, PlexProperties.class);
+        } catch (IOException e) {
+            LOGGER.error("Can't copy properties", e);
+            return new PlexProperties();
+        }
     }
 
     @Override
-    public void writeProperties(@NotNull PlexProperties plexProperties) {
-        LOGGER.info("writeProperties( {} )", plexProperties);
+    @NotNull
+    public PlexProperties getProperties() {
+        return getPropertiesSnapshot().plexProperties;
+    }
+
+    private @NotNull PropertiesSnapshot getPropertiesSnapshot() {
+        PropertiesSnapshot snapshot = propertiesSnapshot.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        synchronized (propertiesLock) {
+            snapshot = propertiesSnapshot.get();
+            if (snapshot == null) {
+                PlexProperties plexProperties = readPropertiesFile();
+                snapshot = PropertiesSnapshot.of(0, plexProperties == null ? new PlexProperties() : plexProperties);
+                propertiesSnapshot.set(snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    private void reloadProperties() {
+        synchronized (propertiesLock) {
+            PropertiesSnapshot current = propertiesSnapshot.get();
+            PlexProperties plexProperties = readPropertiesFile();
+            if (plexProperties == null) {
+                //Most likely caught half way through being written, the next change event will have the rest
+                return;
+            }
 
-        final File propertiesFile = Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getGapsProperties()).toFile();
-        if (propertiesFile.exists()) {
             try {
-                Files.delete(propertiesFile.toPath());
+                byte[] json = objectMapper.writeValueAsBytes(plexProperties);
+                if (current != null && Arrays.equals(current.json, json)) {
+                    return;
+                }
+                PropertiesSnapshot snapshot = PropertiesSnapshot.of(current == null ? 0 : current.version + 1, plexProperties);
+                propertiesSnapshot.set(snapshot);
+                LOGGER.info("Reloaded {} after it changed on disk, version {}", gapsConfiguration.getProperties().getGapsProperties(), snapshot.version);
             } catch (IOException e) {
-                LOGGER.error(String.format("Can't delete existing file %s", propertiesFile.getName()), e);
-                return;
+                LOGGER.error("Can't convert reloaded properties to json", e);
             }
         }
+    }
 
+    private void updatePropertiesSnapshot(byte[] json) {
+        PropertiesSnapshot current = propertiesSnapshot.get();
         try {
-            boolean created = propertiesFile.createNewFile();
-            if (!created) {
-                LOGGER.error("Can't create file {}", propertiesFile.getAbsolutePath());
-                return;
-            }
+            propertiesSnapshot.set(new PropertiesSnapshot(current == null ? 0 : current.version + 1, json, objectMapper.readValue(json, PlexProperties.class)));
         } catch (IOException e) {
-            LOGGER.error(String.format("Can't create file %s", propertiesFile.getAbsolutePath()), e);
-            return;
+            LOGGER.error("Can't read back written properties", e);
+            propertiesSnapshot.set(null);
         }
+    }
 
-        try (FileOutputStream outputStream = new FileOutputStream(propertiesFile)) {
-            byte[] output = objectMapper.writeValueAsBytes(plexProperties);
-            outputStream.write(output);
-        } catch (FileNotFoundException e) {
-            LOGGER.error(String.format("Can't find file %s", propertiesFile.getAbsolutePath()), e);
-        } catch (IOException e) {
-            LOGGER.error(String.format("Can't write to file %s", propertiesFile.getAbsolutePath()), e);
+    private @NotNull List<BasicMovie> readMovies(@NotNull Path file) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return readMovies(file, new ArrayList<>());
+        } finally {
+            recordRead(file, start);
         }
     }
 
-    @Override
-    @NotNull
-    public PlexProperties readProperties() {
-        LOGGER.debug("readProperties()");
+    private void recordRead(@NotNull Path file, long start) {
+        Timer.builder(AtomicFileWriter.FILE_IO_METRIC)
+                .description("Time spent reading and writing JSON files")
+                .tags("operation", "read", "file", file.getFileName().toString())
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
 
+    /**
+     * @return Null when the file exists but can't be read
+     */
+    private @Nullable PlexProperties readPropertiesFile() {
         final File file = Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getGapsProperties()).toFile();
         if (!file.exists()) {
             LOGGER.warn("Can't find json file '{}'. Most likely first run.", file);
             return new PlexProperties();
         }
+        long start = System.nanoTime();
         try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             StringBuilder fullFile = new StringBuilder();
             String line;
@@ -313,7 +485,9 @@ public class FileIoService implements IO {
             return new PlexProperties();
         } catch (IOException e) {
             LOGGER.error(String.format("Can't read file %s", file), e);
-            return new PlexProperties();
+            return null;
+        } finally {
+            recordRead(file.toPath(), start);
         }
     }
 
@@ -323,7 +497,9 @@ public class FileIoService implements IO {
         LOGGER.info("nuke()");
         File folder = new File(gapsConfiguration.getStorageFolder());
         try {
+            movieStore.close();
             nuke(folder);
+            propertiesSnapshot.set(null);
             return Payload.NUKE_SUCCESSFUL;
         } catch (Exception e) {
             LOGGER.error(Payload.NUKE_UNSUCCESSFUL.getReason(), e);
@@ -350,4 +526,28 @@ public class FileIoService implements IO {
             }
         }
     }
+
+    /**
+     * Properties along with the json they were read from. The json is used to hand out copies and to tell whether a
+     * change on disk is new. The properties are handed to every caller, so they are kept as a copy that can't be changed.
+     */
+    private static final class PropertiesSnapshot {
+        private final long version;
+        private final byte[] json;
+        private final PlexProperties plexProperties;
+
+        private PropertiesSnapshot(long version, byte[] json, PlexProperties plexProperties) {
+            this.version = version;
+            this.json = json;
+            this.plexProperties = plexProperties.toUnmodifiable();
+        }
+
+        private static @NotNull PropertiesSnapshot of(long version, @NotNull PlexProperties plexProperties) {
+            try {
+                return new PropertiesSnapshot(version, objectMapper.writeValueAsBytes(plexProperties), plexProperties);
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't convert properties to json", e);
+            }
+        }
+    }
 }
@@ -16,16 +16,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
 import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsConfiguration;
 import com.jasonhhouse.gaps.MovieFromCollection;
+import com.jasonhhouse.gaps.MovieIndex;
 import com.jasonhhouse.gaps.Payload;
 import com.jasonhhouse.gaps.PlexServer;
 import com.jasonhhouse.gaps.SearchCancelledException;
-import com.jasonhhouse.gaps.SearchResults;
+import com.jasonhhouse.gaps.SearchCheckpoint;
+import com.jasonhhouse.gaps.SearchJob;
 import com.jasonhhouse.gaps.UrlGenerator;
+import com.jasonhhouse.gaps.notifications.GapsEvent;
 import com.jasonhhouse.gaps.properties.PlexProperties;
 import com.jasonhhouse.plex.libs.PlexLibrary;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
@@ -36,18 +43,26 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -56,14 +71,15 @@ import okhttp3.ResponseBody;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 @Service
@@ -80,37 +96,128 @@ public class GapsSearchService implements GapsSearch {
     private static final Logger LOGGER = LoggerFactory.getLogger(GapsSearchService.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
-    private final AtomicBoolean cancelSearch;
-
     private final UrlGenerator urlGenerator;
 
     private final SimpMessagingTemplate template;
 
-    private final AtomicInteger tempTvdbCounter;
-
     private final FileIoService fileIoService;
 
     private final TmdbService tmdbService;
 
     private final NotificationService notificationService;
 
+    private final TmdbRateLimiter tmdbRateLimiter;
+
+    private final GapsConfiguration gapsConfiguration;
+
+    private final TmdbCache tmdbCache;
+
+    private final HttpClientFactory httpClientFactory;
+    private final MovieStore movieStore;
+    private final RssFeedWriter rssFeedWriter;
+    private final SearchJobRegistry searchJobRegistry;
+    private final SearchCheckpointService searchCheckpointService;
+    private final SearchProgressPublisher searchProgressPublisher;
+    private final MeterRegistry meterRegistry;
+
     @Autowired
-    public GapsSearchService(@Qualifier("real") UrlGenerator urlGenerator, SimpMessagingTemplate template, FileIoService fileIoService, TmdbService tmdbService, NotificationService notificationService) {
+    public GapsSearchService(@Qualifier("real") UrlGenerator urlGenerator, SimpMessagingTemplate template, FileIoService fileIoService, TmdbService tmdbService, NotificationService notificationService,
+                             TmdbRateLimiter tmdbRateLimiter, GapsConfiguration gapsConfiguration, TmdbCache tmdbCache, HttpClientFactory httpClientFactory, MovieStore movieStore,
+                             RssFeedWriter rssFeedWriter, SearchJobRegistry searchJobRegistry, SearchCheckpointService searchCheckpointService,
+                             SearchProgressPublisher searchProgressPublisher, MeterRegistry meterRegistry) {
         this.template = template;
         this.tmdbService = tmdbService;
         this.urlGenerator = urlGenerator;
         this.fileIoService = fileIoService;
         this.notificationService = notificationService;
-
-        tempTvdbCounter = new AtomicInteger();
-        cancelSearch = new AtomicBoolean(true);
+        this.tmdbRateLimiter = tmdbRateLimiter;
+        this.gapsConfiguration = gapsConfiguration;
+        this.tmdbCache = tmdbCache;
+        this.httpClientFactory = httpClientFactory;
+        this.movieStore = movieStore;
+        this.rssFeedWriter = rssFeedWriter;
+        this.searchJobRegistry = searchJobRegistry;
+        this.searchCheckpointService = searchCheckpointService;
+        this.searchProgressPublisher = searchProgressPublisher;
+        this.meterRegistry = meterRegistry;
     }
 
     @Override
     public void run(@NotNull String machineIdentifier,@NotNull  Integer key) {
         LOGGER.info("run( {}, {} )", machineIdentifier, key);
+        await(start(machineIdentifier, key));
+    }
+
+    @Override
+    public void run(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies) {
+        LOGGER.info("run( {}, {}, {} changed )", machineIdentifier, key, changedMovies.size());
+        await(start(machineIdentifier, key, changedMovies));
+    }
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+    @Override
+    public @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return start(machineIdentifier, key, (NotificationDigest) null);
+    }
+
+    @Override
+    public @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies) {
+        return start(machineIdentifier, key, changedMovies, null);
+    }
+
+    /**
+     * Queues a search for all missing movies without waiting for it, publishing its events with the digest
+     *
+     * @param notificationDigest The digest of the run that asked for the search, or null to send the events on their own
+     * @return The new search, or the one already queued or running for the library. A search already under way keeps
+     * publishing its events the way it started.
+     */
+    public @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key, @Nullable NotificationDigest notificationDigest) {
+        LOGGER.info("start( {}, {} )", machineIdentifier, key);
+        return searchJobRegistry.submit(machineIdentifier, key, searchJob -> search(searchJob, null, notificationDigest));
+    }
+
+    /**
+     * Queues a search of the added or changed owned movies without waiting for it, publishing its events with the
+     * digest
+     *
+     * @param notificationDigest The digest of the run that asked for the search, or null to send the events on their own
+     * @return The new search, or the one already queued or running for the library
+     */
+    public @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies,
+                                    @Nullable NotificationDigest notificationDigest) {
+        LOGGER.info("start( {}, {}, {} changed )", machineIdentifier, key, changedMovies.size());
+        return searchJobRegistry.submit(machineIdentifier, key, searchJob -> search(searchJob, changedMovies, notificationDigest));
+    }
+
+    /**
+     * @return Topic the outcome of the library's searches is sent to
+     */
+    public static @NotNull String getFinishedDestination(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return FINISHED_SEARCHING_URL + "/" + machineIdentifier + "/" + key;
+    }
+
+    /**
+     * Waits for the search to end, passing on the error if it failed
+     */
+    private static void await(@NotNull SearchJob searchJob) {
+        try {
+            searchJob.getCompletion().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param changedMovies      Owned movies added or changed since the last search, or null to search every owned movie
+     * @param notificationDigest Digest the search's events are held in, or null to send them on their own
+     */
+    private void search(@NotNull SearchJob searchJob, @Nullable Collection<BasicMovie> changedMovies, @Nullable NotificationDigest notificationDigest) {
+        String machineIdentifier = searchJob.getMachineIdentifier();
+        Integer key = searchJob.getKey();
+        PlexProperties plexProperties = fileIoService.getProperties();
         Optional<PlexServer> optionalPlexServer = plexProperties.getPlexServers().stream().filter(tempPlexServer -> tempPlexServer.getMachineIdentifier().equals(machineIdentifier)).findFirst();
         PlexServer plexServer;
         if (optionalPlexServer.isPresent()) {
@@ -130,76 +237,165 @@ public class GapsSearchService implements GapsSearch {
             return;
         }
 
-        notificationService.recommendedMoviesSearchStarted(plexServer, plexLibrary);
+        notificationService.publish(GapsEvent.recommendedMoviesSearchStarted(plexServer, plexLibrary), notificationDigest);
 
         if (StringUtils.isEmpty(plexProperties.getMovieDbApiKey())) {
             Payload payload = tmdbService.testTmdbKey(plexProperties.getMovieDbApiKey());
             if (payload != Payload.TMDB_KEY_VALID) {
                 LOGGER.error(payload.getReason());
-                template.convertAndSend(FINISHED_SEARCHING_URL, payload);
+                template.convertAndSend(getFinishedDestination(machineIdentifier, key), payload);
                 return;
             }
         }
 
-        cancelSearch.set(false);
-
-        final Set<BasicMovie> recommended = new LinkedHashSet<>();
-        final List<BasicMovie> searched = new ArrayList<>();
-        final List<BasicMovie> everyBasicMovie = new ArrayList<>(fileIoService.readMovieIdsFromFile());
-        final List<BasicMovie> ownedBasicMovies = new ArrayList<>(fileIoService.readOwnedMovies(machineIdentifier, key));
-        final AtomicInteger searchedMovieCount = new AtomicInteger(0);
+        final Set<BasicMovie> recommended = searchJob.getRecommended();
+        final MovieIndex searched = new MovieIndex();
+        final MovieIndex ownedBasicMovies = new MovieIndex(fileIoService.readOwnedMovies(machineIdentifier, key));
+        final AtomicInteger searchedMovieCount = searchJob.getSearchedMovieCount();
+        final TmdbResponses tmdbResponses = new TmdbResponses();
 
-        if (CollectionUtils.isEmpty(ownedBasicMovies)) {
+        if (ownedBasicMovies.isEmpty()) {
             String reason = "Owned movies cannot be empty";
             LOGGER.error(reason);
-            template.convertAndSend(FINISHED_SEARCHING_URL, Payload.OWNED_MOVIES_CANNOT_BE_EMPTY);
+            template.convertAndSend(getFinishedDestination(machineIdentifier, key), Payload.OWNED_MOVIES_CANNOT_BE_EMPTY);
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
         }
 
+        final Collection<BasicMovie> moviesToSearch;
+        if (changedMovies == null) {
+            moviesToSearch = ownedBasicMovies.toList();
+        } else {
+            //Keep earlier recommendations unless they've since been added to Plex
+            fileIoService.readRecommendedMovies(machineIdentifier, key)
+                    .stream()
+                    .filter(recommendedMovie -> !ownedBasicMovies.contains(recommendedMovie))
+                    .forEach(recommended::add);
+
+            //Search the owned copies, they hold the ids found during the last scan
+            moviesToSearch = changedMovies
+                    .stream()
+                    .map(ownedBasicMovies::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            LOGGER.info("Incremental search of {} movies, keeping {} earlier recommendations", moviesToSearch.size(), recommended.size());
+        }
+        final MovieIndex processed = new MovieIndex();
+        final List<BasicMovie> remainingMovies = resume(machineIdentifier, key, moviesToSearch, ownedBasicMovies, processed, searched, recommended);
+        searchJob.getTotalMovieCount().set(moviesToSearch.size());
+        searchedMovieCount.set(moviesToSearch.size() - remainingMovies.size());
+
+        rssFeedWriter.start(machineIdentifier, key, recommended);
+        searchProgressPublisher.start(searchJob);
+        movieStore.startSearch();
+        boolean finished = false;
         try {
+            long cacheHits = tmdbCache.getHits();
+            long cacheMisses = tmdbCache.getMisses();
             StopWatch watch = new StopWatch();
             watch.start();
-            searchForMovies(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, searchedMovieCount);
+            searchForMovies(searchJob, plexProperties, machineIdentifier, key, remainingMovies, ownedBasicMovies, movieStore, recommended, searched, processed, searchedMovieCount, tmdbResponses);
+            finished = true;
             watch.stop();
-            LOGGER.info("Time Elapsed: {} seconds.", TimeUnit.MILLISECONDS.toSeconds(watch.getTime()));
-            LOGGER.info("Times used TVDB ID: {}", tempTvdbCounter);
+            LOGGER.info("Time Elapsed: {} seconds. Saved {} TMDB calls by reusing collections and movie details.", TimeUnit.MILLISECONDS.toSeconds(watch.getTime()), tmdbResponses.savedCalls);
+            LOGGER.info("Times used TVDB ID: {}", searchJob.getTvdbLookups());
+            LOGGER.info("TMDB cache hits: {}, misses: {}", tmdbCache.getHits() - cacheHits, tmdbCache.getMisses() - cacheMisses);
         } catch (SearchCancelledException e) {
             String reason = "Search cancelled";
             LOGGER.error(reason);
-            template.convertAndSend(FINISHED_SEARCHING_URL, Payload.OWNED_MOVIES_CANNOT_BE_EMPTY);
-            notificationService.recommendedMoviesSearchFailed(plexServer, plexLibrary, reason);
+            template.convertAndSend(getFinishedDestination(machineIdentifier, key), Payload.OWNED_MOVIES_CANNOT_BE_EMPTY);
+            notificationService.publish(GapsEvent.recommendedMoviesSearchFailed(plexServer, plexLibrary, reason), notificationDigest);
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason, e);
         } catch (IOException e) {
             String reason = "Search failed";
             LOGGER.error(reason);
-            template.convertAndSend(FINISHED_SEARCHING_URL, Payload.SEARCH_FAILED);
-            notificationService.recommendedMoviesSearchFailed(plexServer, plexLibrary, e.getMessage());
+            template.convertAndSend(getFinishedDestination(machineIdentifier, key), Payload.SEARCH_FAILED);
+            notificationService.publish(GapsEvent.recommendedMoviesSearchFailed(plexServer, plexLibrary, e.getMessage()), notificationDigest);
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason, e);
         } finally {
-            cancelSearch.set(true);
+            //Earlier recommendations may have been dropped, or none found, without the feed being written during the search
+            rssFeedWriter.finish(machineIdentifier, key);
+            searchProgressPublisher.finish(machineIdentifier, key);
+            movieStore.finishSearch();
+            if (!finished && isCheckpointing()) {
+                checkpoint(machineIdentifier, key, processed, searched, recommended);
+            }
         }
 
-        notificationService.recommendedMoviesSearchFinished(plexServer, plexLibrary);
+        notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, plexLibrary), notificationDigest);
 
         //Always write to log
         fileIoService.writeRecommendedToFile(recommended, machineIdentifier, key);
-        fileIoService.writeMovieIdsToFile(new TreeSet<>(everyBasicMovie));
+        searchCheckpointService.delete(machineIdentifier, key);
 
-        template.convertAndSend(FINISHED_SEARCHING_URL, Payload.SEARCH_SUCCESSFUL);
+        template.convertAndSend(getFinishedDestination(machineIdentifier, key), Payload.SEARCH_SUCCESSFUL);
 
         LOGGER.info("Recommending {} movies.", recommended.size());
     }
 
+    private boolean isCheckpointing() {
+        return gapsConfiguration.getSearch().getCheckpointSeconds() > 0;
+    }
+
+    /**
+     * Picks up from the library's last checkpoint. Owned movies it had finished are skipped, and what it had searched
+     * and recommended is kept, less any recommendations since added to Plex.
+     *
+     * @return The movies still to search
+     */
+    private @NotNull List<BasicMovie> resume(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> moviesToSearch, @NotNull MovieIndex ownedBasicMovies,
+                                             @NotNull MovieIndex processed, @NotNull MovieIndex searched, @NotNull Set<BasicMovie> recommended) {
+        Optional<SearchCheckpoint> optionalSearchCheckpoint = isCheckpointing() ? searchCheckpointService.read(machineIdentifier, key) : Optional.empty();
+        if (optionalSearchCheckpoint.isEmpty()) {
+            return new ArrayList<>(moviesToSearch);
+        }
+
+        SearchCheckpoint searchCheckpoint = optionalSearchCheckpoint.get();
+        searchCheckpoint.getProcessed().forEach(processed::addIfAbsent);
+        searchCheckpoint.getSearched().forEach(searched::addIfAbsent);
+        searchCheckpoint.getRecommended()
+                .stream()
+                .filter(recommendedMovie -> !ownedBasicMovies.contains(recommendedMovie))
+                .forEach(recommended::add);
+
+        List<BasicMovie> remainingMovies = moviesToSearch
+                .stream()
+                .filter(basicMovie -> !processed.contains(basicMovie))
+                .collect(Collectors.toList());
+        LOGGER.info("Resuming search of {} {} from checkpoint saved {}, {} of {} movies left", machineIdentifier, key, new Date(searchCheckpoint.getSavedAt()),
+                remainingMovies.size(), moviesToSearch.size());
+        return remainingMovies;
+    }
+
+    private void checkpoint(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull MovieIndex processed, @NotNull MovieIndex searched, @NotNull Set<BasicMovie> recommended) {
+        List<BasicMovie> recommendedSoFar;
+        synchronized (recommended) {
+            recommendedSoFar = new ArrayList<>(recommended);
+        }
+        searchCheckpointService.write(new SearchCheckpoint(machineIdentifier, key, System.currentTimeMillis(), processed.toList(), searched.toList(), recommendedSoFar));
+    }
+
     @Override
     public void cancelSearch() {
         LOGGER.info("cancelSearch()");
-        cancelSearch.set(true);
+        searchJobRegistry.cancelAll();
+    }
+
+    @Override
+    public void cancelSearch(@NotNull String machineIdentifier, @NotNull Integer key) {
+        LOGGER.info("cancelSearch( {}, {} )", machineIdentifier, key);
+        searchJobRegistry.cancel(machineIdentifier, key);
     }
 
     @Override
     public boolean isSearching() {
-        LOGGER.info("isSearching() {}", !cancelSearch.get());
-        return !cancelSearch.get();
+        boolean searching = searchJobRegistry.isSearching();
+        LOGGER.info("isSearching() {}", searching);
+        return searching;
+    }
+
+    @Override
+    public boolean isSearching(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return searchJobRegistry.isSearching(machineIdentifier, key);
     }
 
     /**
@@ -208,16 +404,18 @@ public class GapsSearchService implements GapsSearch {
      * full properties that contains the collection id, we can search that collection id for it's list of movies. We
      * compare the full collection list to the movies found in plex, any missing we add to the recommended list. To
      * optimize some network calls, we add movies found in a collection and in plex to our already searched list, so we
-     * don't re-query collections again and again.
+     * don't re-query collections again and again. Owned movies are looked up concurrently, with every call to MovieDB
+     * going through the shared {@link TmdbRateLimiter}. Every so often the progress is saved, so a search stopped part
+     * way through can pick up from there.
      */
     @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
-    private void searchForMovies(PlexProperties plexProperties, String machineIdentifier, Integer key, List<BasicMovie> ownedBasicMovies, List<BasicMovie> everyBasicMovie, Set<BasicMovie> recommended, List<BasicMovie> searched,
-                                 AtomicInteger searchedMovieCount) throws SearchCancelledException, IOException {
+    private void searchForMovies(SearchJob searchJob, PlexProperties plexProperties, String machineIdentifier, Integer key, List<BasicMovie> moviesToSearch, MovieIndex ownedBasicMovies, MovieStore everyBasicMovie, Set<BasicMovie> recommended, MovieIndex searched,
+                                 MovieIndex processed, AtomicInteger searchedMovieCount, TmdbResponses tmdbResponses) throws SearchCancelledException, IOException {
         LOGGER.debug("searchForMovies()");
-        OkHttpClient client = new OkHttpClient();
+        OkHttpClient client = httpClientFactory.getClient(HttpClientFactory.Target.TMDB);
 
         if (StringUtils.isEmpty(plexProperties.getMovieDbApiKey())) {
-            plexProperties = fileIoService.readProperties();
+            plexProperties = fileIoService.getProperties();
 
             if (StringUtils.isEmpty(plexProperties.getMovieDbApiKey())) {
                 final String error = "No MovieDb Key found. Need to configure key first.";
@@ -226,155 +424,255 @@ public class GapsSearchService implements GapsSearch {
             }
         }
 
-        for (BasicMovie basicMovie : ownedBasicMovies) {
-            String languageCode = "en-US";
-
-            //Cancel search if needed
-            if (cancelSearch.get()) {
-                throw new SearchCancelledException("Search cancelled");
+        int maxConcurrentRequests = Math.max(1, gapsConfiguration.getTmdb().getMaxConcurrentRequests());
+        ExecutorService executorService = Executors.newFixedThreadPool(maxConcurrentRequests, new CustomizableThreadFactory("Gaps-Tmdb-"));
+        try {
+            final PlexProperties finalPlexProperties = plexProperties;
+            List<Future<Void>> futures = new ArrayList<>(moviesToSearch.size());
+            for (BasicMovie basicMovie : moviesToSearch) {
+                futures.add(executorService.submit(() -> {
+                    searchForMovie(searchJob, finalPlexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, searchedMovieCount, searchJob.getTotalMovieCount().get(), tmdbResponses, basicMovie, client);
+                    return null;
+                }));
             }
 
-            //Print the count first to handle the continue if block or the regular searching case
-            if (searchedMovieCount.get() % 10 == 0) {
-                LOGGER.info("{}% Complete. Processed {} files of {}.", ((int) ((searchedMovieCount.get()) / ((double) (ownedBasicMovies.size())) * 100)), searchedMovieCount.get(), ownedBasicMovies.size());
-            }
-            searchedMovieCount.incrementAndGet();
+            long checkpointMillis = TimeUnit.SECONDS.toMillis(gapsConfiguration.getSearch().getCheckpointSeconds());
+            long lastCheckpoint = System.currentTimeMillis();
+            for (int i = 0; i < futures.size(); i++) {
+                if (searchJob.isCancelled()) {
+                    throw new SearchCancelledException("Search cancelled");
+                }
 
-            if (searched.contains(basicMovie)) {
-                continue;
-            }
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SearchCancelledException) {
+                        throw (SearchCancelledException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
 
-            HttpUrl searchMovieUrl;
-            try {
-                //If TMDB is available, skip the search
-                //If IMDB is available use find
-                //Otherwise, fall back to movie title and year search
-                LOGGER.info(basicMovie.toString());
-                if (basicMovie.getTmdbId() != -1 && basicMovie.getCollectionId() != -1) {
-                    LOGGER.info("Used Collection ID to get {}", basicMovie.getName());
-                    tempTvdbCounter.incrementAndGet();
-                    handleCollection(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, searchedMovieCount, basicMovie, client, languageCode);
-                    continue;
-                } else if (basicMovie.getTmdbId() != -1) {
-                    LOGGER.info("Used TVDB ID to get {}", basicMovie.getName());
-                    tempTvdbCounter.incrementAndGet();
-                    searchMovieDetails(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, searchedMovieCount, basicMovie, client, languageCode);
-                    continue;
-                } else if (StringUtils.isNotBlank(basicMovie.getImdbId())) {
-                    LOGGER.info("Used 'find' to search for {}", basicMovie.getName());
-                    String imdbId = URLEncoder.encode(basicMovie.getImdbId(), StandardCharsets.UTF_8);
-                    searchMovieUrl = urlGenerator.generateFindMovieUrl(plexProperties.getMovieDbApiKey(), imdbId, languageCode);
-                } else {
-                    LOGGER.info("Used 'search' to search for {}", basicMovie.getName());
-                    String name = URLEncoder.encode(basicMovie.getName(), StandardCharsets.UTF_8);
-                    searchMovieUrl = urlGenerator.generateSearchMovieUrl(plexProperties.getMovieDbApiKey(), name, String.valueOf(basicMovie.getYear()), languageCode);
+                processed.add(moviesToSearch.get(i));
+                if (checkpointMillis > 0 && System.currentTimeMillis() - lastCheckpoint >= checkpointMillis) {
+                    checkpoint(machineIdentifier, key, processed, searched, recommended);
+                    lastCheckpoint = System.currentTimeMillis();
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchCancelledException("Search interrupted", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
 
-                Request request = new Request.Builder()
-                        .url(searchMovieUrl)
-                        .build();
+    private void searchForMovie(SearchJob searchJob, PlexProperties plexProperties, String machineIdentifier, Integer key, MovieIndex ownedBasicMovies, MovieStore everyBasicMovie, Set<BasicMovie> recommended, MovieIndex searched,
+                                AtomicInteger searchedMovieCount, int totalMovieCount, TmdbResponses tmdbResponses, BasicMovie basicMovie, OkHttpClient client) throws SearchCancelledException {
+        String languageCode = "en-US";
 
-                String json = "";
-                try (Response response = client.newCall(request).execute()) {
+        //Cancel search if needed
+        if (searchJob.isCancelled()) {
+            throw new SearchCancelledException("Search cancelled");
+        }
 
-                    ResponseBody responseBody = response.body();
-                    if (responseBody != null) {
-                        json = responseBody.string();
-                    }
+        //Print the count first to handle the return if block or the regular searching case
+        int count = searchedMovieCount.getAndIncrement();
+        meterRegistry.counter("gaps.search.movies", "machineIdentifier", machineIdentifier, "key", key.toString()).increment();
+        if (count % 10 == 0) {
+            LOGGER.info("{}% Complete. Processed {} files of {}.", ((int) (count / ((double) totalMovieCount) * 100)), count, totalMovieCount);
+        }
 
-                    if (StringUtils.isEmpty(json)) {
-                        LOGGER.error("Body returned null from TheMovieDB for: {}", basicMovie);
-                        continue;
-                    }
+        if (searched.contains(basicMovie)) {
+            return;
+        }
 
-                    JsonNode foundMovies = objectMapper.readTree(json);
-                    ArrayNode results;
+        HttpUrl searchMovieUrl;
+        TmdbCache.Type searchType;
+        String searchId;
+        //If TMDB is available, skip the search
+        //If IMDB is available use find
+        //Otherwise, fall back to movie title and year search
+        LOGGER.info(basicMovie.toString());
+        if (basicMovie.getTmdbId() != -1 && basicMovie.getCollectionId() != -1) {
+            LOGGER.info("Used Collection ID to get {}", basicMovie.getName());
+            searchJob.getTvdbLookups().incrementAndGet();
+            handleCollection(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, tmdbResponses, basicMovie, client, languageCode);
+            return;
+        } else if (basicMovie.getTmdbId() != -1) {
+            LOGGER.info("Used TVDB ID to get {}", basicMovie.getName());
+            searchJob.getTvdbLookups().incrementAndGet();
+            searchMovieDetails(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, tmdbResponses, basicMovie, client, languageCode);
+            return;
+        } else if (StringUtils.isNotBlank(basicMovie.getImdbId())) {
+            LOGGER.info("Used 'find' to search for {}", basicMovie.getName());
+            String imdbId = URLEncoder.encode(basicMovie.getImdbId(), StandardCharsets.UTF_8);
+            searchMovieUrl = urlGenerator.generateFindMovieUrl(plexProperties.getMovieDbApiKey(), imdbId, languageCode);
+            searchType = TmdbCache.Type.FIND;
+            searchId = basicMovie.getImdbId() + "_" + languageCode;
+        } else {
+            LOGGER.info("Used 'search' to search for {}", basicMovie.getName());
+            String name = URLEncoder.encode(basicMovie.getName(), StandardCharsets.UTF_8);
+            searchMovieUrl = urlGenerator.generateSearchMovieUrl(plexProperties.getMovieDbApiKey(), name, String.valueOf(basicMovie.getYear()), languageCode);
+            searchType = TmdbCache.Type.SEARCH;
+            searchId = basicMovie.getName() + "_" + basicMovie.getYear() + "_" + languageCode;
+        }
 
-                    if (foundMovies.has(MOVIE_RESULTS) &&
-                            foundMovies.get(MOVIE_RESULTS).getNodeType().equals(JsonNodeType.ARRAY)) {
-                        //Results from 'find'
-                        results = (ArrayNode) foundMovies.get(MOVIE_RESULTS);
-                    } else {
-                        //Results from 'search'
-                        results = (ArrayNode) foundMovies.get("results");
-                    }
+        try {
+            String json = requestTmdb(client, searchMovieUrl, searchType, searchId);
 
-                    if (results == null) {
-                        LOGGER.error("Results returned null from TheMovieDB for: {}", basicMovie);
-                        continue;
-                    }
+            if (StringUtils.isEmpty(json)) {
+                LOGGER.error("Body returned null from TheMovieDB for: {}", basicMovie);
+                return;
+            }
 
-                    if (results.size() == 0) {
-                        LOGGER.error("Results not found for {}", basicMovie);
-                        LOGGER.error("URL: {}", searchMovieUrl);
-                        continue;
-                    }
+            JsonNode foundMovies = objectMapper.readTree(json);
+            ArrayNode results;
 
-                    if (results.size() > 1) {
-                        LOGGER.info("Results for {} came back with {}} results. Using first result.", basicMovie, results.size());
-                        LOGGER.info("{} URL: {}", basicMovie, searchMovieUrl);
-                    }
+            if (foundMovies.has(MOVIE_RESULTS) &&
+                    foundMovies.get(MOVIE_RESULTS).getNodeType().equals(JsonNodeType.ARRAY)) {
+                //Results from 'find'
+                results = (ArrayNode) foundMovies.get(MOVIE_RESULTS);
+            } else {
+                //Results from 'search'
+                results = (ArrayNode) foundMovies.get("results");
+            }
 
-                    JsonNode result = results.get(0);
-                    int id = result.get(ID).intValue();
-                    basicMovie.setTmdbId(id);
+            if (results == null) {
+                LOGGER.error("Results returned null from TheMovieDB for: {}", basicMovie);
+                return;
+            }
 
-                    int indexOfMovie = everyBasicMovie.indexOf(basicMovie);
-                    if (indexOfMovie != -1) {
-                        LOGGER.info("Merging movie data");
-                        everyBasicMovie.get(indexOfMovie).setTmdbId(basicMovie.getTmdbId());
-                    } else {
-                        BasicMovie newBasicMovie = new BasicMovie.Builder(basicMovie.getName(), basicMovie.getYear())
-                                .setTmdbId(basicMovie.getTmdbId())
-                                .setImdbId(basicMovie.getImdbId())
-                                .setCollectionTitle(basicMovie.getCollectionTitle())
-                                .setCollectionId(basicMovie.getCollectionId())
-                                .build();
-                        everyBasicMovie.add(newBasicMovie);
-                    }
+            if (results.size() == 0) {
+                LOGGER.error("Results not found for {}", basicMovie);
+                LOGGER.error("URL: {}", searchMovieUrl);
+                return;
+            }
 
-                    searchMovieDetails(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, searchedMovieCount, basicMovie, client, languageCode);
-                } catch (JsonProcessingException e) {
-                    LOGGER.error(String.format("Error parsing movie %s.", basicMovie), e);
-                    LOGGER.error("URL: {}", searchMovieUrl);
-                } catch (IOException e) {
-                    LOGGER.error(String.format("Error searching for movie %s.", basicMovie), e);
-                    LOGGER.error("URL: {}", searchMovieUrl);
-                } finally {
-                    try {
-                        //can't have too many connections to the movie database in a specific time, have to wait
-                        Thread.sleep(700);
-                    } catch (InterruptedException e) {
-                        LOGGER.error("Error sleeping", e);
-                    }
-                }
-            } finally {
-                try {
-                    //can't have too many connections to the movie database in a specific time, have to wait
-                    Thread.sleep(350);
-                } catch (InterruptedException e) {
-                    LOGGER.error("Error sleeping", e);
+            if (results.size() > 1) {
+                LOGGER.info("Results for {} came back with {}} results. Using first result.", basicMovie, results.size());
+                LOGGER.info("{} URL: {}", basicMovie, searchMovieUrl);
+            }
+
+            JsonNode result = results.get(0);
+            int id = result.get(ID).intValue();
+            basicMovie.setTmdbId(id);
+            ownedBasicMovies.reindex(basicMovie);
+
+            synchronized (everyBasicMovie) {
+                BasicMovie everyMovie = everyBasicMovie.get(basicMovie);
+                if (everyMovie != null) {
+                    LOGGER.info("Merging movie data");
+                    everyMovie.setTmdbId(basicMovie.getTmdbId());
+                    everyBasicMovie.upsert(everyMovie);
+                } else {
+                    BasicMovie newBasicMovie = new BasicMovie.Builder(basicMovie.getName(), basicMovie.getYear())
+                            .setTmdbId(basicMovie.getTmdbId())
+                            .setImdbId(basicMovie.getImdbId())
+                            .setCollectionTitle(basicMovie.getCollectionTitle())
+                            .setCollectionId(basicMovie.getCollectionId())
+                            .build();
+                    everyBasicMovie.add(newBasicMovie);
                 }
             }
+
+            searchMovieDetails(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, tmdbResponses, basicMovie, client, languageCode);
+        } catch (JsonProcessingException e) {
+            LOGGER.error(String.format("Error parsing movie %s.", basicMovie), e);
+            LOGGER.error("URL: {}", searchMovieUrl);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Error searching for movie %s.", basicMovie), e);
+            LOGGER.error("URL: {}", searchMovieUrl);
         }
     }
 
-    private void searchMovieDetails(PlexProperties plexProperties, String machineIdentifier, Integer key, List<BasicMovie> ownedBasicMovies, List<BasicMovie> everyBasicMovie, Set<BasicMovie> recommended, List<BasicMovie> searched,
-                                    AtomicInteger searchedMovieCount, BasicMovie basicMovie, OkHttpClient client, String languageCode) {
-        LOGGER.debug("searchMovieDetails()");
-        HttpUrl movieDetailUrl = urlGenerator.generateMovieDetailUrl(plexProperties.getMovieDbApiKey(), String.valueOf(basicMovie.getTmdbId()), languageCode);
+    /**
+     * Answers from the TMDB cache when possible. Every call that does go to MovieDB waits on the shared rate limiter
+     * instead of sleeping between movies, and only successful responses are cached.
+     */
+    @NotNull
+    private String requestTmdb(@NotNull OkHttpClient client, @NotNull HttpUrl url, @NotNull TmdbCache.Type type, @NotNull String id) throws IOException {
+        String cached = tmdbCache.get(type, id);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            tmdbRateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to call TheMovieDB");
+        }
 
         Request request = new Request.Builder()
-                .url(movieDetailUrl)
+                .url(url)
                 .build();
 
-        try (Response movieDetailResponse = client.newCall(request).execute()) {
-            String movieDetailJson = "";
-            ResponseBody responseBody = movieDetailResponse.body();
-            if (responseBody != null) {
-                movieDetailJson = responseBody.string();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String status = "error";
+        try (Response response = client.newCall(request).execute()) {
+            status = String.valueOf(response.code());
+            ResponseBody responseBody = response.body();
+            if (responseBody == null) {
+                return "";
             }
 
+            String json = responseBody.string();
+            if (response.isSuccessful() && StringUtils.isNotEmpty(json)) {
+                tmdbCache.put(type, id, json);
+            }
+            return json;
+        } finally {
+            sample.stop(Timer.builder("gaps.tmdb.requests")
+                    .description("Calls made to TheMovieDB")
+                    .tags("endpoint", type.getFolder(), "status", status)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Collections and the details of movies missing from them are requested at most once per run. Any later lookup of
+     * the same collection or movie, even one already in flight on another thread, waits for and reuses the first parsed
+     * response. Owned movie details are only needed once, so they don't go through here.
+     */
+    @Nullable
+    private JsonNode requestTmdbOnce(@NotNull OkHttpClient client, @NotNull HttpUrl url, @NotNull TmdbCache.Type type, @NotNull String id, @NotNull TmdbResponses tmdbResponses) throws IOException {
+        CompletableFuture<JsonNode> response = new CompletableFuture<>();
+        CompletableFuture<JsonNode> existing = tmdbResponses.responses.putIfAbsent(type.getFolder() + "/" + id, response);
+
+        if (existing != null) {
+            tmdbResponses.savedCalls.incrementAndGet();
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting on TheMovieDB");
+            } catch (ExecutionException e) {
+                throw new IOException(String.format("Earlier request for %s %s failed", type, id), e.getCause());
+            }
+        }
+
+        try {
+            String json = requestTmdb(client, url, type, id);
+            JsonNode jsonNode = StringUtils.isEmpty(json) ? null : objectMapper.readTree(json);
+            response.complete(jsonNode);
+            return jsonNode;
+        } catch (IOException | RuntimeException e) {
+            response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void searchMovieDetails(PlexProperties plexProperties, String machineIdentifier, Integer key, MovieIndex ownedBasicMovies, MovieStore everyBasicMovie, Set<BasicMovie> recommended, MovieIndex searched,
+                                    TmdbResponses tmdbResponses, BasicMovie basicMovie, OkHttpClient client, String languageCode) {
+        LOGGER.debug("searchMovieDetails()");
+        HttpUrl movieDetailUrl = urlGenerator.generateMovieDetailUrl(plexProperties.getMovieDbApiKey(), String.valueOf(basicMovie.getTmdbId()), languageCode);
+
+        try {
+            String movieDetailJson = requestTmdb(client, movieDetailUrl, TmdbCache.Type.MOVIE, basicMovie.getTmdbId() + "_" + languageCode);
+
             if (StringUtils.isEmpty(movieDetailJson)) {
                 LOGGER.error("Body returned null from TheMovieDB for details on {}", basicMovie.getName());
                 return;
@@ -394,59 +692,50 @@ public class GapsSearchService implements GapsSearch {
             basicMovie.setCollectionId(collectionId);
             basicMovie.setCollectionTitle(collectionName);
 
-            int indexOfMovie = everyBasicMovie.indexOf(basicMovie);
-            if (indexOfMovie != -1) {
-                LOGGER.info("Merging movie data");
-                everyBasicMovie.get(indexOfMovie).setTmdbId(basicMovie.getTmdbId());
-                everyBasicMovie.get(indexOfMovie).setCollectionId(basicMovie.getCollectionId());
-                everyBasicMovie.get(indexOfMovie).setCollectionTitle(basicMovie.getCollectionTitle());
-            } else {
-                BasicMovie newBasicMovie = new BasicMovie.Builder(basicMovie.getName(), basicMovie.getYear())
-                        .setTmdbId(basicMovie.getTmdbId())
-                        .setImdbId(basicMovie.getImdbId())
-                        .setCollectionTitle(basicMovie.getCollectionTitle())
-                        .setCollectionId(basicMovie.getCollectionId())
-                        .build();
-                everyBasicMovie.add(newBasicMovie);
+            synchronized (everyBasicMovie) {
+                BasicMovie everyMovie = everyBasicMovie.get(basicMovie);
+                if (everyMovie != null) {
+                    LOGGER.info("Merging movie data");
+                    everyMovie.setTmdbId(basicMovie.getTmdbId());
+                    everyMovie.setCollectionId(basicMovie.getCollectionId());
+                    everyMovie.setCollectionTitle(basicMovie.getCollectionTitle());
+                    everyBasicMovie.upsert(everyMovie);
+                } else {
+                    BasicMovie newBasicMovie = new BasicMovie.Builder(basicMovie.getName(), basicMovie.getYear())
+                            .setTmdbId(basicMovie.getTmdbId())
+                            .setImdbId(basicMovie.getImdbId())
+                            .setCollectionTitle(basicMovie.getCollectionTitle())
+                            .setCollectionId(basicMovie.getCollectionId())
+                            .build();
+                    everyBasicMovie.add(newBasicMovie);
+                }
             }
 
-            handleCollection(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, searchedMovieCount, basicMovie, client, languageCode);
+            handleCollection(plexProperties, machineIdentifier, key, ownedBasicMovies, everyBasicMovie, recommended, searched, tmdbResponses, basicMovie, client, languageCode);
 
         } catch (IOException e) {
             LOGGER.error(String.format("Error getting movie details %s", basicMovie), e);
         }
     }
 
-    private void handleCollection(PlexProperties plexProperties, String machineIdentifier, Integer key, List<BasicMovie> ownedBasicMovies, List<BasicMovie> everyBasicMovie, Set<BasicMovie> recommended, List<BasicMovie> searched,
-                                  AtomicInteger searchedMovieCount, BasicMovie basicMovie, OkHttpClient client, String languageCode) {
+    private void handleCollection(PlexProperties plexProperties, String machineIdentifier, Integer key, MovieIndex ownedBasicMovies, MovieStore everyBasicMovie, Set<BasicMovie> recommended, MovieIndex searched,
+                                  TmdbResponses tmdbResponses, BasicMovie basicMovie, OkHttpClient client, String languageCode) {
         LOGGER.debug("handleCollection()");
         HttpUrl collectionUrl = urlGenerator.generateCollectionUrl(plexProperties.getMovieDbApiKey(), String.valueOf(basicMovie.getCollectionId()), languageCode);
 
-        Request request = new Request.Builder()
-                .url(collectionUrl)
-                .build();
-
-        try (Response collectionResponse = client.newCall(request).execute()) {
-            String collectionJson = "";
-            ResponseBody responseBody = collectionResponse.body();
-            if (responseBody != null) {
-                collectionJson = responseBody.string();
-            }
+        try {
+            JsonNode collection = requestTmdbOnce(client, collectionUrl, TmdbCache.Type.COLLECTION, basicMovie.getCollectionId() + "_" + languageCode, tmdbResponses);
 
-            if (StringUtils.isEmpty(collectionJson)) {
+            if (collection == null) {
                 LOGGER.error("Body returned null from TheMovieDB for collection information about {}", basicMovie.getName());
                 return;
             }
 
-            JsonNode collection = objectMapper.readTree(collectionJson);
-
             if (collection.has("status_code") && collection.get("status_code").intValue() == 34) {
                 LOGGER.warn(collection.get("status_message").textValue());
                 return;
             }
 
-            int indexOfMovie = everyBasicMovie.indexOf(basicMovie);
-
             List<MovieFromCollection> moviesInCollection = new ArrayList<>();
             if (collection.has(PARTS)) {
                 JsonNode parts = collection.get(PARTS);
@@ -477,33 +766,37 @@ public class GapsSearchService implements GapsSearch {
 
             LOGGER.info("MoviesInCollection: {}", Arrays.toString(moviesInCollection.toArray()));
 
-            if (indexOfMovie != -1) {
-                LOGGER.info("Movie found: {}", basicMovie);
-                int id = collection.get(ID).intValue();
-                String name = collection.get(NAME).textValue();
-                everyBasicMovie.get(indexOfMovie).setCollectionId(id);
-                everyBasicMovie.get(indexOfMovie).setCollectionTitle(name);
-                basicMovie.setCollectionTitle(name);
-                basicMovie.setCollectionId(id);
-                basicMovie.getMoviesInCollection().addAll(moviesInCollection);
-            } else {
-                LOGGER.info("Movie not found: {}", basicMovie);
-                int collectionId = collection.get(ID).intValue();
-                String collectionName = collection.get(NAME).textValue();
-                BasicMovie newBasicMovie = new BasicMovie.Builder(basicMovie.getName(), basicMovie.getYear())
-                        .setTmdbId(basicMovie.getTmdbId())
-                        .setImdbId(basicMovie.getImdbId())
-                        .setCollectionTitle(collectionName)
-                        .setCollectionId(collectionId)
-                        .setMoviesInCollection(moviesInCollection)
-                        .setLanguage(basicMovie.getLanguage())
-                        .setOverview(basicMovie.getOverview())
-                        .setPosterUrl(basicMovie.getPosterUrl())
-                        .build();
-                everyBasicMovie.add(newBasicMovie);
+            synchronized (everyBasicMovie) {
+                BasicMovie everyMovie = everyBasicMovie.get(basicMovie);
+                if (everyMovie != null) {
+                    LOGGER.info("Movie found: {}", basicMovie);
+                    int id = collection.get(ID).intValue();
+                    String name = collection.get(NAME).textValue();
+                    everyMovie.setCollectionId(id);
+                    everyMovie.setCollectionTitle(name);
+                    everyBasicMovie.upsert(everyMovie);
+                    basicMovie.setCollectionTitle(name);
+                    basicMovie.setCollectionId(id);
+                    basicMovie.getMoviesInCollection().addAll(moviesInCollection);
+                } else {
+                    LOGGER.info("Movie not found: {}", basicMovie);
+                    int collectionId = collection.get(ID).intValue();
+                    String collectionName = collection.get(NAME).textValue();
+                    BasicMovie newBasicMovie = new BasicMovie.Builder(basicMovie.getName(), basicMovie.getYear())
+                            .setTmdbId(basicMovie.getTmdbId())
+                            .setImdbId(basicMovie.getImdbId())
+                            .setCollectionTitle(collectionName)
+                            .setCollectionId(collectionId)
+                            .setMoviesInCollection(moviesInCollection)
+                            .setLanguage(basicMovie.getLanguage())
+                            .setOverview(basicMovie.getOverview())
+                            .setPosterUrl(basicMovie.getPosterUrl())
+                            .build();
+                    everyBasicMovie.add(newBasicMovie);
 
-                basicMovie.setCollectionTitle(collectionName);
-                basicMovie.setCollectionId(collectionId);
+                    basicMovie.setCollectionTitle(collectionName);
+                    basicMovie.setCollectionId(collectionId);
+                }
             }
 
             ArrayNode parts = (ArrayNode) collection.get(PARTS);
@@ -546,44 +839,37 @@ public class GapsSearchService implements GapsSearch {
                     continue;
                 }
 
-                indexOfMovie = everyBasicMovie.indexOf(basicMovieFromCollection);
-                if (indexOfMovie == -1) {
-                    LOGGER.info("Adding collection movie");
-                    everyBasicMovie.add(basicMovieFromCollection);
-                } else {
-                    LOGGER.info("Merging collection movie");
-                    everyBasicMovie.get(indexOfMovie).setTmdbId(tmdbId);
+                synchronized (everyBasicMovie) {
+                    BasicMovie everyMovie = everyBasicMovie.get(basicMovieFromCollection);
+                    if (everyMovie == null) {
+                        LOGGER.info("Adding collection movie");
+                        everyBasicMovie.add(basicMovieFromCollection);
+                    } else {
+                        LOGGER.info("Merging collection movie");
+                        everyMovie.setTmdbId(tmdbId);
+                        everyBasicMovie.upsert(everyMovie);
+                    }
                 }
 
                 if (ownedBasicMovies.contains(basicMovieFromCollection)) {
                     LOGGER.info("Owned movie found: {}", basicMovieFromCollection);
                     searched.add(basicMovieFromCollection);
-                    sendEmptySearchUpdate(ownedBasicMovies.size(), searchedMovieCount);
+                    searchProgressPublisher.updated(machineIdentifier, key);
                 } else if (!searched.contains(basicMovieFromCollection) && year != 0 && year < Year.now().getValue()) {
                     LOGGER.info("Missing movie found: {}", basicMovieFromCollection);
 
                     // Get recommended Movie details from MovieDB API
                     HttpUrl movieDetailUrl = urlGenerator.generateMovieDetailUrl(plexProperties.getMovieDbApiKey(), String.valueOf(basicMovieFromCollection.getTmdbId()), languageCode);
 
-                    Request newReq = new Request.Builder()
-                            .url(movieDetailUrl)
-                            .build();
-
-                    try (Response movieDetailResponse = client.newCall(newReq).execute()) {
-                        String movieDetailJson = "";
-                        ResponseBody movieDetailResponseBody = movieDetailResponse.body();
-                        if (movieDetailResponseBody != null) {
-                            movieDetailJson = movieDetailResponseBody.string();
-                        }
-
-                        LOGGER.info(movieDetailJson);
+                    try {
+                        JsonNode movieDet = requestTmdbOnce(client, movieDetailUrl, TmdbCache.Type.MOVIE, basicMovieFromCollection.getTmdbId() + "_" + languageCode, tmdbResponses);
 
-                        if (StringUtils.isEmpty(movieDetailJson)) {
+                        if (movieDet == null) {
                             LOGGER.error("Body returned null from TheMovieDB for details on {}", basicMovie.getName());
                             return;
                         }
 
-                        JsonNode movieDet = objectMapper.readTree(movieDetailJson);
+                        LOGGER.info(movieDet.toString());
 
                         // Get the release year from movie release date
                         if (movieDet.has(RELEASE_DATE)) {
@@ -616,15 +902,20 @@ public class GapsSearchService implements GapsSearch {
                             continue;
                         }
 
-                        if (recommended.add(recommendedBasicMovie)) {
-                            // Write current list of recommended movies to file.
-                            fileIoService.writeRssFile(machineIdentifier, key, new HashSet<>(recommended));
+                        boolean added;
+                        synchronized (recommended) {
+                            added = recommended.add(recommendedBasicMovie);
+                            if (added) {
+                                // Write current list of recommended movies to file once enough have been found.
+                                rssFeedWriter.added(machineIdentifier, key);
+                            }
+                        }
 
+                        if (added) {
                             LOGGER.info("/newMovieFound:{}", recommendedBasicMovie);
 
-                            //Send message over websocket
-                            SearchResults searchResults = new SearchResults(searchedMovieCount.get(), ownedBasicMovies.size(), recommendedBasicMovie);
-                            template.convertAndSend("/newMovieFound", objectMapper.writeValueAsString(searchResults));
+                            //Sent over websocket with the next progress update
+                            searchProgressPublisher.recommended(machineIdentifier, key, recommendedBasicMovie);
                         }
                     } catch (RuntimeException e) {
                         throw e;
@@ -633,7 +924,7 @@ public class GapsSearchService implements GapsSearch {
                     }
 
                 } else {
-                    sendEmptySearchUpdate(ownedBasicMovies.size(), searchedMovieCount);
+                    searchProgressPublisher.updated(machineIdentifier, key);
                 }
             }
 
@@ -644,11 +935,11 @@ public class GapsSearchService implements GapsSearch {
         searched.add(basicMovie);
     }
 
-    private void sendEmptySearchUpdate(int totalMovieCount, AtomicInteger searchedMovieCount) throws JsonProcessingException {
-        //Send message over websocket
-        //No new movie, just updated counts
-        SearchResults searchResults = new SearchResults(searchedMovieCount.get(), totalMovieCount, null);
-        template.convertAndSend("/newMovieFound", objectMapper.writeValueAsString(searchResults));
+    /**
+     * Parsed TMDB responses shared by every owned movie in a single search
+     */
+    private static final class TmdbResponses {
+        private final ConcurrentMap<String, CompletableFuture<JsonNode>> responses = new ConcurrentHashMap<>();
+        private final AtomicInteger savedCalls = new AtomicInteger();
     }
-
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds one {@link OkHttpClient} for each kind of server Gaps talks to. Every client has its own connection pool, so
+ * connections and TLS sessions are reused across calls instead of being set up again by a new client each time.
+ * HTTP/2 is used wherever the server offers it.
+ */
+@Service
+public class HttpClientFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientFactory.class);
+
+    public enum Target {
+        PLEX,
+        TMDB,
+        RADARR,
+        NOTIFICATIONS
+    }
+
+    private final Map<Target, OkHttpClient> clients;
+
+    @Autowired
+    public HttpClientFactory(GapsConfiguration gapsConfiguration) {
+        this(gapsConfiguration.getHttp(), gapsConfiguration.getPlex().getMaxConcurrentRequests(), gapsConfiguration.getTmdb().getMaxConcurrentRequests());
+    }
+
+    /**
+     * @param plexConnections Requests sent to a Plex server at the same time
+     * @param tmdbConnections Requests sent to TMDB at the same time
+     */
+    public HttpClientFactory(@NotNull GapsConfiguration.Http http, int plexConnections, int tmdbConnections) {
+        Map<Target, OkHttpClient> map = new EnumMap<>(Target.class);
+        map.put(Target.PLEX, buildClient(http.getPlexTimeoutMillis(), Math.max(http.getMaxIdleConnections(), plexConnections), http.getKeepAliveSeconds()));
+        map.put(Target.TMDB, buildClient(http.getTmdbTimeoutMillis(), Math.max(http.getMaxIdleConnections(), tmdbConnections), http.getKeepAliveSeconds()));
+        map.put(Target.RADARR, buildClient(http.getRadarrTimeoutMillis(), http.getMaxIdleConnections(), http.getKeepAliveSeconds()));
+        map.put(Target.NOTIFICATIONS, buildClient(http.getNotificationTimeoutMillis(), http.getMaxIdleConnections(), http.getKeepAliveSeconds()));
+        this.clients = Collections.unmodifiableMap(map);
+        LOGGER.info("HTTP clients configured with {}", http);
+    }
+
+    public @NotNull OkHttpClient getClient(@NotNull Target target) {
+        return clients.get(target);
+    }
+
+    public @NotNull Map<Target, PoolStats> getPoolStats() {
+        Map<Target, PoolStats> poolStats = new EnumMap<>(Target.class);
+        clients.forEach((target, client) -> poolStats.put(target, new PoolStats(client)));
+        return poolStats;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (OkHttpClient client : clients.values()) {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    private static @NotNull OkHttpClient buildClient(long timeoutMillis, int maxIdleConnections, long keepAliveSeconds) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(), maxIdleConnections));
+
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static final class PoolStats {
+        private final int connections;
+        private final int idleConnections;
+        private final int runningCalls;
+        private final int queuedCalls;
+
+        PoolStats(@NotNull OkHttpClient client) {
+            this.connections = client.connectionPool().connectionCount();
+            this.idleConnections = client.connectionPool().idleConnectionCount();
+            this.runningCalls = client.dispatcher().runningCallsCount();
+            this.queuedCalls = client.dispatcher().queuedCallsCount();
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        public int getRunningCalls() {
+            return runningCalls;
+        }
+
+        public int getQueuedCalls() {
+            return queuedCalls;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats{" +
+                    "connections=" + connections +
+                    ", idleConnections=" + idleConnections +
+                    ", runningCalls=" + runningCalls +
+                    ", queuedCalls=" + queuedCalls +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Builds the JAXB contexts for the Plex models once at startup. Creating a context reflects over the whole model, so
+ * doing it for every Plex call was far more expensive than the unmarshalling itself. Contexts are thread safe but
+ * unmarshallers aren't, so a few unmarshallers per type are kept and handed out one caller at a time.
+ */
+@Service
+public class JaxbContextRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JaxbContextRegistry.class);
+
+    private static final int MAX_POOLED_UNMARSHALLERS = 8;
+
+    private final Map<Class<?>, JAXBContext> contexts;
+
+    private final Map<Class<?>, BlockingQueue<Unmarshaller>> unmarshallers;
+
+    @Autowired
+    public JaxbContextRegistry() throws JAXBException {
+        this(com.jasonhhouse.plex.libs.MediaContainer.class, com.jasonhhouse.plex.video.MediaContainer.class);
+    }
+
+    public JaxbContextRegistry(@NotNull Class<?>... types) throws JAXBException {
+        Map<Class<?>, JAXBContext> contextMap = new HashMap<>();
+        Map<Class<?>, BlockingQueue<Unmarshaller>> unmarshallerMap = new HashMap<>();
+        for (Class<?> type : types) {
+            long start = System.nanoTime();
+            contextMap.put(type, JAXBContext.newInstance(type));
+            unmarshallerMap.put(type, new ArrayBlockingQueue<>(MAX_POOLED_UNMARSHALLERS));
+            LOGGER.info("JAXBContext for {} created in {} ms", type.getName(), (System.nanoTime() - start) / 1_000_000);
+        }
+        this.contexts = Collections.unmodifiableMap(contextMap);
+        this.unmarshallers = Collections.unmodifiableMap(unmarshallerMap);
+    }
+
+    public @NotNull <T> T unmarshal(@NotNull Class<T> type, @NotNull InputStream inputStream) throws JAXBException {
+        BlockingQueue<Unmarshaller> pool = unmarshallers.get(type);
+        if (pool == null) {
+            throw new IllegalArgumentException(String.format("No JAXBContext registered for %s", type.getName()));
+        }
+
+        Unmarshaller unmarshaller = pool.poll();
+        if (unmarshaller == null) {
+            unmarshaller = contexts.get(type).createUnmarshaller();
+        }
+
+        try {
+            return type.cast(unmarshaller.unmarshal(inputStream));
+        } finally {
+            //Dropped when the pool is already full
+            pool.offer(unmarshaller);
+        }
+    }
+
+    /**
+     * @return Unmarshallers of the type waiting in the pool
+     */
+    int pooled(@NotNull Class<?> type) {
+        return unmarshallers.get(type).size();
+    }
+}
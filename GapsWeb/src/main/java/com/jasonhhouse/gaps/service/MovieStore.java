@@ -0,0 +1,580 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.Pair;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Every movie Gaps knows about, kept in an append only log instead of one json file rewritten after each search. Each
+ * line holds a record id, a tab and the movie as json. Saving a movie appends a new line for its record, so a search
+ * only writes the movies it changed. The last line for a record wins, older ones are dropped when the log is compacted.
+ * <p>
+ * Only the ids, title and year of each record are kept in memory to find it again. A movie is read from the log the
+ * first time it's asked for, then kept until a {@link #flush()} while no search is running. Lookups follow the same
+ * precedence as {@link com.jasonhhouse.gaps.MovieIndex}: TMDB id first, then IMDB id, then title and year.
+ * <p>
+ * Searches call {@link #startSearch()} and {@link #finishSearch()} around their work. Movies handed out stay tied to
+ * their records, and the log is only compacted, until the last running search finishes.
+ * <p>
+ * The log is opened on first use. If it doesn't exist yet, the movies in the old movieIds.json are moved into it once
+ * and the old file is renamed so it isn't read again. All methods are synchronized on the store, so callers can lock on
+ * it to make a lookup and a save atomic.
+ */
+@Service
+public class MovieStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MovieStore.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectReader movieReader = objectMapper.readerFor(BasicMovie.class);
+    private static final ObjectWriter movieWriter = objectMapper.writerFor(BasicMovie.class);
+
+    private static final String MIGRATED_SUFFIX = ".migrated";
+    private static final byte SEPARATOR = '\t';
+    private static final byte NEW_LINE = '\n';
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Stale lines to allow before compacting, as long as they also outnumber the live records
+     */
+    private static final int COMPACT_MIN_STALE = 1000;
+
+    @NotNull
+    private final Path file;
+    @NotNull
+    private final Path legacyFile;
+    @NotNull
+    private final AtomicFileWriter atomicFileWriter;
+    private final boolean fsync;
+
+    @NotNull
+    private final Map<Long, Location> locations;
+    @NotNull
+    private final Map<Integer, Long> byTmdbId;
+    @NotNull
+    private final Map<String, Long> byImdbId;
+    @NotNull
+    private final Map<Pair<String, Integer>, Long> byNameAndYear;
+    @NotNull
+    private final Map<Long, BasicMovie> loaded;
+    @NotNull
+    private final Map<BasicMovie, Long> loadedIds;
+
+    @Nullable
+    private FileChannel channel;
+    private long end;
+    private long nextId;
+    private long staleRecords;
+    private int runningSearches;
+
+    @Autowired
+    public MovieStore(GapsConfiguration gapsConfiguration, AtomicFileWriter atomicFileWriter) {
+        this(Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getMovieStore()),
+                Paths.get(gapsConfiguration.getStorageFolder(), gapsConfiguration.getProperties().getMovieIds()),
+                atomicFileWriter, gapsConfiguration.getStorage().getFsync());
+    }
+
+    public MovieStore(@NotNull Path file, @NotNull Path legacyFile, @NotNull AtomicFileWriter atomicFileWriter, boolean fsync) {
+        this.file = file;
+        this.legacyFile = legacyFile;
+        this.atomicFileWriter = atomicFileWriter;
+        this.fsync = fsync;
+        this.locations = new TreeMap<>();
+        this.byTmdbId = new HashMap<>();
+        this.byImdbId = new HashMap<>();
+        this.byNameAndYear = new HashMap<>();
+        this.loaded = new HashMap<>();
+        this.loadedIds = new IdentityHashMap<>();
+    }
+
+    /**
+     * @return The movie matching the given movie, or null if none do
+     */
+    public synchronized @Nullable BasicMovie get(@NotNull BasicMovie basicMovie) {
+        Long id = find(basicMovie);
+        return id == null ? null : load(id);
+    }
+
+    public synchronized @Nullable BasicMovie getByTmdbId(int tmdbId) {
+        open();
+        Long id = byTmdbId.get(tmdbId);
+        return id == null ? null : load(id);
+    }
+
+    public synchronized @Nullable BasicMovie getByImdbId(@NotNull String imdbId) {
+        open();
+        Long id = byImdbId.get(imdbId);
+        return id == null ? null : load(id);
+    }
+
+    public synchronized @Nullable BasicMovie getByNameAndYear(@NotNull String name, int year) {
+        open();
+        Long id = byNameAndYear.get(nameAndYear(new BasicMovie.Builder(name, year).build()));
+        return id == null ? null : load(id);
+    }
+
+    public synchronized boolean contains(@NotNull BasicMovie basicMovie) {
+        return find(basicMovie) != null;
+    }
+
+    /**
+     * Adds the movie as a new record even if a matching one is already present. Lookups keep finding the first match.
+     */
+    public synchronized void add(@NotNull BasicMovie basicMovie) {
+        open();
+        long id = nextId++;
+        if (append(id, basicMovie)) {
+            remember(id, basicMovie);
+        }
+    }
+
+    /**
+     * Saves changes to a movie handed out by the store. Any other movie replaces the record it matches, or is added if
+     * none do.
+     */
+    public synchronized void upsert(@NotNull BasicMovie basicMovie) {
+        open();
+        Long id = loadedIds.get(basicMovie);
+        if (id == null) {
+            id = find(basicMovie);
+        }
+
+        if (id == null) {
+            add(basicMovie);
+            return;
+        }
+
+        if (append(id, basicMovie)) {
+            staleRecords++;
+            BasicMovie previous = loaded.put(id, basicMovie);
+            if (previous != null && previous != basicMovie) {
+                loadedIds.remove(previous);
+            }
+            loadedIds.put(basicMovie, id);
+            index(id, basicMovie);
+        }
+    }
+
+    public synchronized int size() {
+        open();
+        return locations.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Reads every movie in the order they were added. Movies already handed out are returned as is.
+     */
+    public synchronized @NotNull List<BasicMovie> readAll() {
+        open();
+        List<BasicMovie> basicMovies = new ArrayList<>(locations.size());
+        try {
+            scan((id, offset, json) -> {
+                Location location = locations.get(id);
+                if (location == null || location.offset != offset) {
+                    return;
+                }
+
+                BasicMovie basicMovie = loaded.get(id);
+                basicMovies.add(basicMovie == null ? movieReader.readValue(json) : basicMovie);
+            });
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't read movies from %s", file), e);
+        }
+        return basicMovies;
+    }
+
+    /**
+     * Replaces every record with the given movies
+     */
+    public synchronized void replaceAll(@NotNull Collection<BasicMovie> basicMovies) {
+        closeChannel();
+        try {
+            writeLog(basicMovies);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't write movies to %s", file), e);
+        }
+        reset();
+    }
+
+    /**
+     * Marks a search as running, so movies it's handed keep being tied to their records until it finishes
+     */
+    public synchronized void startSearch() {
+        runningSearches++;
+    }
+
+    /**
+     * Marks a search as finished and flushes the log
+     */
+    public synchronized void finishSearch() {
+        if (runningSearches > 0) {
+            runningSearches--;
+        }
+        flush();
+    }
+
+    /**
+     * Forces appended records to disk. Once no search is running, also compacts the log when most of it is stale and
+     * forgets the movies read so far.
+     */
+    public synchronized void flush() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't flush %s", file), e);
+        }
+
+        //Other searches still hold movies they were handed, they have to keep finding their records
+        if (runningSearches > 0) {
+            return;
+        }
+
+        if (staleRecords > COMPACT_MIN_STALE && staleRecords > locations.size()) {
+            compact();
+        }
+
+        loaded.clear();
+        loadedIds.clear();
+    }
+
+    /**
+     * Flushes and closes the log, the next call opens it again
+     */
+    @PreDestroy
+    public synchronized void close() {
+        flush();
+        closeChannel();
+        reset();
+    }
+
+    private @Nullable Long find(@NotNull BasicMovie basicMovie) {
+        open();
+        if (basicMovie.getTmdbId() != -1) {
+            Long id = byTmdbId.get(basicMovie.getTmdbId());
+            if (id != null) {
+                return id;
+            }
+        }
+
+        if (StringUtils.isNotEmpty(basicMovie.getImdbId())) {
+            Long id = byImdbId.get(basicMovie.getImdbId());
+            if (id != null) {
+                return id;
+            }
+        }
+
+        return byNameAndYear.get(nameAndYear(basicMovie));
+    }
+
+    private @Nullable BasicMovie load(long id) {
+        BasicMovie basicMovie = loaded.get(id);
+        if (basicMovie != null) {
+            return basicMovie;
+        }
+
+        Location location = locations.get(id);
+        if (location == null || channel == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+            }
+            basicMovie = movieReader.readValue(buffer.array());
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't read movie %d from %s", id, file), e);
+            return null;
+        }
+
+        loaded.put(id, basicMovie);
+        loadedIds.put(basicMovie, id);
+        return basicMovie;
+    }
+
+    private void remember(long id, @NotNull BasicMovie basicMovie) {
+        loaded.put(id, basicMovie);
+        loadedIds.put(basicMovie, id);
+        index(id, basicMovie);
+    }
+
+    private void index(long id, @NotNull BasicMovie basicMovie) {
+        if (basicMovie.getTmdbId() != -1) {
+            byTmdbId.putIfAbsent(basicMovie.getTmdbId(), id);
+        }
+
+        if (StringUtils.isNotEmpty(basicMovie.getImdbId())) {
+            byImdbId.putIfAbsent(basicMovie.getImdbId(), id);
+        }
+
+        byNameAndYear.putIfAbsent(nameAndYear(basicMovie), id);
+    }
+
+    private boolean append(long id, @NotNull BasicMovie basicMovie) {
+        if (channel == null) {
+            LOGGER.error("Can't save {}, {} isn't open", basicMovie, file);
+            return false;
+        }
+
+        try {
+            byte[] json = movieWriter.writeValueAsBytes(basicMovie);
+            byte[] prefix = (id + "\t").getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer buffer = ByteBuffer.allocate(prefix.length + json.length + 1);
+            buffer.put(prefix).put(json).put(NEW_LINE).flip();
+            long offset = end;
+            while (buffer.hasRemaining()) {
+                end += channel.write(buffer, end);
+            }
+            locations.put(id, new Location(offset + prefix.length, json.length));
+            return true;
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't save %s to %s", basicMovie, file), e);
+            return false;
+        }
+    }
+
+    private void open() {
+        if (channel != null) {
+            return;
+        }
+
+        try {
+            if (Files.notExists(file)) {
+                migrate();
+            }
+
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            end = scan((id, offset, json) -> {
+                BasicMovie basicMovie = movieReader.readValue(json);
+                if (locations.put(id, new Location(offset, json.length)) != null) {
+                    staleRecords++;
+                }
+                index(id, basicMovie);
+                nextId = Math.max(nextId, id + 1);
+            });
+
+            if (end < channel.size()) {
+                LOGGER.warn("Dropping half written record at the end of {}", file);
+                channel.truncate(end);
+            }
+            LOGGER.info("Opened {} with {} movies", file, locations.size());
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't open %s", file), e);
+            closeChannel();
+            reset();
+        }
+    }
+
+    /**
+     * Moves the movies from the old movieIds.json into a new log
+     */
+    private void migrate() {
+        if (Files.notExists(legacyFile)) {
+            return;
+        }
+
+        try {
+            List<BasicMovie> basicMovies = FileIoService.readMovies(legacyFile, new ArrayList<>());
+            writeLog(basicMovies);
+            Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + MIGRATED_SUFFIX));
+            LOGGER.info("Moved {} movies from {} to {}", basicMovies.size(), legacyFile, file);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't move movies from %s to %s, starting empty", legacyFile, file), e);
+        }
+    }
+
+    private void writeLog(@NotNull Collection<BasicMovie> basicMovies) throws IOException {
+        atomicFileWriter.write(file, outputStream -> {
+            long id = 0;
+            for (BasicMovie basicMovie : basicMovies) {
+                writeRecord(outputStream, id++, movieWriter.writeValueAsBytes(basicMovie));
+            }
+        });
+    }
+
+    /**
+     * Rewrites the log with only the latest line of each record
+     */
+    private void compact() {
+        try {
+            atomicFileWriter.write(file, outputStream -> scan((id, offset, json) -> {
+                Location location = locations.get(id);
+                if (location != null && location.offset == offset) {
+                    writeRecord(outputStream, id, json);
+                }
+            }));
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't compact %s", file), e);
+            return;
+        }
+
+        LOGGER.info("Compacted {}, dropped {} stale records", file, staleRecords);
+        closeChannel();
+        reset();
+    }
+
+    private static void writeRecord(@NotNull OutputStream outputStream, long id, @NotNull byte[] json) throws IOException {
+        outputStream.write((id + "\t").getBytes(StandardCharsets.US_ASCII));
+        outputStream.write(json);
+        outputStream.write(NEW_LINE);
+    }
+
+    /**
+     * Reads the log line by line from the start
+     *
+     * @return Offset just past the last whole line
+     */
+    private long scan(@NotNull RecordConsumer recordConsumer) throws IOException {
+        if (Files.notExists(file)) {
+            return 0;
+        }
+
+        long offset = 0;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            //Only used for lines running past the end of the buffer
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != NEW_LINE) {
+                        continue;
+                    }
+
+                    byte[] bytes;
+                    if (line.size() == 0) {
+                        bytes = Arrays.copyOfRange(buffer, start, i);
+                    } else {
+                        line.write(buffer, start, i - start);
+                        bytes = line.toByteArray();
+                        line.reset();
+                    }
+                    readRecord(bytes, offset, recordConsumer);
+                    offset += bytes.length + 1;
+                    start = i + 1;
+                }
+                line.write(buffer, start, read - start);
+            }
+        }
+        return offset;
+    }
+
+    private void readRecord(@NotNull byte[] bytes, long offset, @NotNull RecordConsumer recordConsumer) {
+        int separator = indexOf(bytes, SEPARATOR);
+        try {
+            long id = Long.parseLong(new String(bytes, 0, Math.max(separator, 0), StandardCharsets.US_ASCII));
+            byte[] json = Arrays.copyOfRange(bytes, separator + 1, bytes.length);
+            recordConsumer.accept(id, offset + separator + 1, json);
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Skipping broken record at {} in {}", offset, file);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Can't close %s", file), e);
+        }
+        channel = null;
+    }
+
+    private void reset() {
+        locations.clear();
+        byTmdbId.clear();
+        byImdbId.clear();
+        byNameAndYear.clear();
+        loaded.clear();
+        loadedIds.clear();
+        end = 0;
+        nextId = 0;
+        staleRecords = 0;
+    }
+
+    private static int indexOf(@NotNull byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static @NotNull Pair<String, Integer> nameAndYear(@NotNull BasicMovie basicMovie) {
+        return new Pair<>(basicMovie.getNameWithoutBadCharacters(), basicMovie.getYear());
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(long id, long offset, @NotNull byte[] json) throws IOException;
+    }
+
+    private static final class Location {
+        private final long offset;
+        private final int length;
+
+        private Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -1,28 +1,31 @@
 package com.jasonhhouse.gaps.service;
 
-import com.jasonhhouse.gaps.PlexServer;
-import com.jasonhhouse.plex.libs.PlexLibrary;
+import com.jasonhhouse.gaps.notifications.GapsEvent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public interface Notification {
 
-    @NotNull Boolean plexServerConnectFailed(@NotNull PlexServer plexServer, @NotNull String error);
-
-    @NotNull Boolean plexServerConnectSuccessful(@NotNull PlexServer plexServer);
-
-    @NotNull Boolean plexLibraryScanFailed(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary, @NotNull String error);
-
-    @NotNull Boolean plexLibraryScanSuccessful(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary);
-
-    @NotNull Boolean tmdbConnectionFailed(@NotNull String error);
-
-    @NotNull Boolean tmdbConnectionSuccessful();
-
-    @NotNull Boolean recommendedMoviesSearchStarted(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary);
-
-    @NotNull Boolean recommendedMoviesSearchFailed(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary,@NotNull  String error);
-
-    @NotNull Boolean recommendedMoviesSearchFinished(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary);
+    /**
+     * Sends the event to every enabled agent subscribed to its type
+     *
+     * @return True when the event was queued for all of them
+     */
+    @NotNull Boolean publish(@NotNull GapsEvent gapsEvent);
+
+    /**
+     * Holds the event in the digest while it's open, otherwise sends it like {@link #publish(GapsEvent)}
+     *
+     * @param notificationDigest The digest of the run the event belongs to, or null to send it straight away
+     * @return True when the event was held or queued for every agent
+     */
+    @NotNull Boolean publish(@NotNull GapsEvent gapsEvent, @Nullable NotificationDigest notificationDigest);
+
+    /**
+     * Starts a digest for one run. Only events published with it are held back, when it's closed each agent is sent one
+     * summary of them. Events from anywhere else, such as a search started from the page, are sent as usual.
+     */
+    @NotNull NotificationDigest startDigest();
 
     @NotNull Boolean test();
 
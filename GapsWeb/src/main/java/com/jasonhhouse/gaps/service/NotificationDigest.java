@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.NotificationType;
+import com.jasonhhouse.gaps.notifications.GapsEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Holds the events published during one scheduled run so each agent is sent a single summary of the run, instead of a
+ * message for every server and library. Closing the digest sends the summaries.
+ */
+public final class NotificationDigest implements AutoCloseable {
+
+    static final String TITLE = "Gaps Search Summary";
+
+    private final List<GapsEvent> gapsEvents;
+
+    private final Consumer<NotificationDigest> onClose;
+
+    private boolean open;
+
+    NotificationDigest(@NotNull Consumer<NotificationDigest> onClose) {
+        this.gapsEvents = new ArrayList<>();
+        this.onClose = onClose;
+        this.open = true;
+    }
+
+    /**
+     * @return False once the digest is closed, the event should then be sent on its own
+     */
+    synchronized boolean add(@NotNull GapsEvent gapsEvent) {
+        if (!open) {
+            return false;
+        }
+        gapsEvents.add(gapsEvent);
+        return true;
+    }
+
+    synchronized @NotNull List<GapsEvent> getEvents() {
+        return new ArrayList<>(gapsEvents);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        onClose.accept(this);
+    }
+
+    /**
+     * @return Error when anything in the run failed
+     */
+    static @NotNull String getLevel(@NotNull List<GapsEvent> gapsEvents) {
+        return gapsEvents.stream().anyMatch(gapsEvent -> gapsEvent.getKind().isFailure()) ? "ERROR" : "INFO";
+    }
+
+    /**
+     * Totals first, then one line for TMDB, each server and each library with everything that happened to it, then the
+     * full message of every failure. A search that started is left out once it is known how the search ended.
+     */
+    static @NotNull String summarize(@NotNull List<GapsEvent> gapsEvents) {
+        Map<String, List<GapsEvent>> eventsBySubject = new LinkedHashMap<>();
+        for (GapsEvent gapsEvent : gapsEvents) {
+            eventsBySubject.computeIfAbsent(getSubject(gapsEvent), subject -> new ArrayList<>()).add(gapsEvent);
+        }
+
+        int succeeded = 0;
+        List<String> lines = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, List<GapsEvent>> entry : eventsBySubject.entrySet()) {
+            boolean searchEnded = entry.getValue().stream()
+                    .anyMatch(gapsEvent -> gapsEvent.getNotificationType() == NotificationType.GAPS_MISSING_COLLECTIONS && gapsEvent.getKind() != GapsEvent.Kind.RECOMMENDED_MOVIES_SEARCH_STARTED);
+
+            List<String> outcomes = new ArrayList<>();
+            for (GapsEvent gapsEvent : entry.getValue()) {
+                if (searchEnded && gapsEvent.getKind() == GapsEvent.Kind.RECOMMENDED_MOVIES_SEARCH_STARTED) {
+                    continue;
+                }
+                outcomes.add(gapsEvent.getKind().getOutcome());
+                if (gapsEvent.getKind().isFailure()) {
+                    failures.add(gapsEvent.getMessage());
+                } else {
+                    succeeded++;
+                }
+            }
+            lines.add(entry.getKey() + ": " + String.join(", ", outcomes));
+        }
+
+        StringBuilder summary = new StringBuilder(String.format("%d succeeded, %d failed", succeeded, failures.size()));
+        for (String line : lines) {
+            summary.append('\n').append(line);
+        }
+        if (!failures.isEmpty()) {
+            summary.append("\n\nFailures:");
+            for (String failure : failures) {
+                summary.append('\n').append(failure);
+            }
+        }
+        return summary.toString();
+    }
+
+    private static @NotNull String getSubject(@NotNull GapsEvent gapsEvent) {
+        if (gapsEvent.getServerName() == null) {
+            return gapsEvent.getNotificationType() == NotificationType.TMDB_API_CONNECTION ? "TMDB" : "Gaps";
+        }
+        if (gapsEvent.getLibraryName() == null) {
+            return gapsEvent.getServerName();
+        }
+        return gapsEvent.getServerName() + " / " + gapsEvent.getLibraryName();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends notifications off the thread that raised them. Messages to different agents go out at the same time on a small
+ * pool, and an agent that hasn't answered by the deadline is given up on for that attempt. Queued messages that fail or
+ * run late are retried with a doubling backoff, so a slow mail server or a hanging webhook never holds up a search. A
+ * late attempt is only retried once it has returned, and not at all if the agent accepted it in the end.
+ * The outbox is only kept in memory, anything still waiting when Gaps stops is lost.
+ */
+@Service
+public class NotificationDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final ThreadPoolExecutor senders;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long deadlineMillis;
+
+    private final int maxAttempts;
+
+    private final long retryBackoffMillis;
+
+    private final int outboxSize;
+
+    /**
+     * Queued messages not yet sent or given up on, including those waiting to be retried
+     */
+    private final AtomicInteger outbox;
+
+    @Autowired
+    public NotificationDispatcher(GapsConfiguration gapsConfiguration, MeterRegistry meterRegistry) {
+        this(gapsConfiguration.getNotifications().getThreads(), gapsConfiguration.getNotifications().getDeadlineMillis(), gapsConfiguration.getNotifications().getMaxAttempts(),
+                gapsConfiguration.getNotifications().getRetryBackoffMillis(), gapsConfiguration.getNotifications().getOutboxSize(), meterRegistry);
+    }
+
+    public NotificationDispatcher(int threads, long deadlineMillis, int maxAttempts, long retryBackoffMillis, int outboxSize) {
+        this(threads, deadlineMillis, maxAttempts, retryBackoffMillis, outboxSize, Metrics.globalRegistry);
+    }
+
+    public NotificationDispatcher(int threads, long deadlineMillis, int maxAttempts, long retryBackoffMillis, int outboxSize, @NotNull MeterRegistry meterRegistry) {
+        int poolSize = Math.max(1, threads);
+        this.senders = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("Gaps-Notification-"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("Gaps-Notification-Retry-"));
+        this.deadlineMillis = Math.max(1, deadlineMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+        this.outboxSize = Math.max(1, outboxSize);
+        this.outbox = new AtomicInteger();
+
+        Gauge.builder("gaps.notifications.outbox", outbox, AtomicInteger::get)
+                .description("Notifications waiting to be sent or retried")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Puts the message in the outbox and returns straight away. It is tried up to the configured number of times.
+     *
+     * @param name Agent the message is for, used in logging
+     * @param send Sends the message once, returning whether the agent accepted it
+     * @return False when the outbox is full and the message was dropped
+     */
+    public boolean enqueue(@NotNull String name, @NotNull Callable<Boolean> send) {
+        if (outbox.incrementAndGet() > outboxSize) {
+            outbox.decrementAndGet();
+            LOGGER.warn("Notification outbox is full, dropping message to {}", name);
+            return false;
+        }
+
+        CompletableFuture<Boolean> delivered = new CompletableFuture<>();
+        delivered.whenComplete((sent, e) -> outbox.decrementAndGet());
+        deliver(name, send, 1, delivered);
+        return true;
+    }
+
+    /**
+     * Tries the message once, for callers that need the answer. Several of these can be waited on together. The deadline
+     * starts once a sender thread picks the message up, so time spent waiting behind other messages doesn't count.
+     *
+     * @return Completes with whether the agent accepted the message, false if it failed or missed the deadline
+     */
+    public @NotNull CompletableFuture<Boolean> send(@NotNull String name, @NotNull Callable<Boolean> send) {
+        CompletableFuture<Boolean> answered = new CompletableFuture<>();
+        submit(name, send, answered);
+        return answered;
+    }
+
+    public int getOutboxCount() {
+        return outbox.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        int waiting = outbox.get();
+        if (waiting > 0) {
+            LOGGER.warn("Dropping {} notifications still waiting to be sent", waiting);
+        }
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * @param answered Completes with whether the agent accepted the message, or with false once the deadline passes
+     * @return Completes with whether the agent accepted the message once the send has returned, however late
+     */
+    private @NotNull CompletableFuture<Boolean> submit(@NotNull String name, @NotNull Callable<Boolean> send, @NotNull CompletableFuture<Boolean> answered) {
+        CompletableFuture<Boolean> returned = new CompletableFuture<>();
+        try {
+            senders.execute(() -> returned.complete(attempt(name, send, answered)));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Not sending message to {}, notifications are shutting down", name);
+            answered.complete(false);
+            returned.complete(false);
+        }
+        return returned;
+    }
+
+    private boolean attempt(@NotNull String name, @NotNull Callable<Boolean> send, @NotNull CompletableFuture<Boolean> answered) {
+        Sending sending = new Sending(Thread.currentThread());
+        ScheduledFuture<?> deadline = null;
+        try {
+            deadline = scheduler.schedule(() -> {
+                if (answered.complete(false)) {
+                    //Agents bound their own calls, the interrupt only helps those blocked somewhere interruptible
+                    LOGGER.warn("{} did not answer within {}ms", name, deadlineMillis);
+                    sending.interrupt();
+                }
+            }, deadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("No deadline for message to {}, notifications are shutting down", name);
+        }
+
+        boolean sent = false;
+        try {
+            sent = Boolean.TRUE.equals(send.call());
+        } catch (Exception e) {
+            if (!answered.isDone()) {
+                LOGGER.error(String.format("Failed to send message to %s", name), e);
+            }
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            sending.finish();
+        }
+
+        answered.complete(sent);
+        return sent;
+    }
+
+    private void deliver(@NotNull String name, @NotNull Callable<Boolean> send, int attempt, @NotNull CompletableFuture<Boolean> delivered) {
+        submit(name, send, new CompletableFuture<>()).thenAccept(sent -> {
+            if (sent) {
+                delivered.complete(true);
+                return;
+            }
+
+            if (attempt >= maxAttempts) {
+                LOGGER.warn("Giving up on message to {} after {} attempts", name, attempt);
+                delivered.complete(false);
+                return;
+            }
+
+            long backoffMillis = retryBackoffMillis << Math.min(attempt - 1, 16);
+            LOGGER.info("Retrying message to {} in {}ms", name, backoffMillis);
+            try {
+                scheduler.schedule(() -> deliver(name, send, attempt + 1, delivered), backoffMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                delivered.complete(false);
+            }
+        });
+    }
+
+    /**
+     * Lets a deadline interrupt the send only while it is still running. Once finished the sender thread moves on to the
+     * next message, so a deadline firing at the same moment mustn't reach it.
+     */
+    private static final class Sending {
+
+        private final Thread sender;
+
+        private boolean finished;
+
+        Sending(@NotNull Thread sender) {
+            this.sender = sender;
+        }
+
+        synchronized void interrupt() {
+            if (!finished) {
+                sender.interrupt();
+            }
+        }
+
+        /**
+         * Called on the sender thread, clears any interrupt the deadline left behind
+         */
+        synchronized void finish() {
+            finished = true;
+            Thread.interrupted();
+        }
+    }
+}
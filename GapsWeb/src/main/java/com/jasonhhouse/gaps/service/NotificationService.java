@@ -11,16 +11,38 @@
 package com.jasonhhouse.gaps.service;
 
 import com.jasonhhouse.gaps.NotificationType;
-import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.notifications.GapsEvent;
 import com.jasonhhouse.gaps.notifications.NotificationAgent;
 import com.jasonhhouse.gaps.properties.NotificationProperties;
-import com.jasonhhouse.plex.libs.PlexLibrary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+/**
+ * Event bus for notifications. Producers publish a {@link GapsEvent} once and it is handed to the
+ * {@link NotificationDispatcher} outbox of every agent subscribed to its type, so searches and scans carry on without
+ * waiting. Which agents are enabled and what they subscribe to is worked out once per change to their properties
+ * rather than on every event. Events published with an open {@link NotificationDigest} are held and each agent is sent
+ * one summary when it closes. Each digest belongs to the run that started it, so runs don't pick up each other's
+ * events. Tests from the settings page wait for their answer but send to all agents at once.
+ */
 @Service
 public class NotificationService implements Notification {
 
@@ -28,215 +50,211 @@ public class NotificationService implements Notification {
 
     private final List<NotificationAgent<? extends NotificationProperties>> notificationAgents;
 
+    private final MeterRegistry meterRegistry;
+
+    private final NotificationDispatcher notificationDispatcher;
+
+    private final Map<GapsEvent.Kind, Counter> publishedEvents;
+
+    private volatile Subscriptions subscriptions;
+
     public NotificationService(List<NotificationAgent<? extends NotificationProperties>> notificationAgents) {
-        this.notificationAgents = notificationAgents;
+        this(notificationAgents, Metrics.globalRegistry, new NotificationDispatcher(4, 10000L, 3, 2000L, 500));
     }
 
-    @Override
-    public @NotNull Boolean plexServerConnectFailed(@NotNull PlexServer plexServer, @NotNull String error) {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.PLEX_SERVER_CONNECTION, "ERROR", "Gaps Search", String.format("Connection to Plex Server %s Failed. %s", plexServer.getFriendlyName(), error));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when plex server connection failed to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
-            }
+    @Autowired
+    public NotificationService(List<NotificationAgent<? extends NotificationProperties>> notificationAgents, MeterRegistry meterRegistry, NotificationDispatcher notificationDispatcher) {
+        this.notificationAgents = notificationAgents;
+        this.meterRegistry = meterRegistry;
+        this.notificationDispatcher = notificationDispatcher;
+        this.publishedEvents = new EnumMap<>(GapsEvent.Kind.class);
+        for (GapsEvent.Kind kind : GapsEvent.Kind.values()) {
+            publishedEvents.put(kind, Counter.builder("gaps.events")
+                    .description("Events published to notification agents")
+                    .tag("event", kind.name().toLowerCase(Locale.ENGLISH))
+                    .register(meterRegistry));
         }
-        return sentAllNotifications;
     }
 
     @Override
-    public @NotNull Boolean plexServerConnectSuccessful(@NotNull PlexServer plexServer) {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.PLEX_SERVER_CONNECTION, "INFO", "Gaps Search", String.format("Connection to Plex Server %s Successful", plexServer.getFriendlyName()));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when plex server connection successful to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
-            }
-        }
-        return sentAllNotifications;
+    public @NotNull Boolean publish(@NotNull GapsEvent gapsEvent) {
+        return publish(gapsEvent, null);
     }
 
     @Override
-    public @NotNull Boolean plexLibraryScanFailed(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary, @NotNull String error) {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.PLEX_METADATA_UPDATE, "INFO", "Gaps Search", String.format("Scanning Plex Server %s in %s Library Failed. %s", plexServer.getFriendlyName(), plexLibrary.getTitle(), error));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when plex library scan failed to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
+    public @NotNull Boolean publish(@NotNull GapsEvent gapsEvent, @Nullable NotificationDigest notificationDigest) {
+        LOGGER.debug("publish( {} )", gapsEvent);
+        publishedEvents.get(gapsEvent.getKind()).increment();
+
+        if (notificationDigest != null && notificationDigest.add(gapsEvent)) {
+            return true;
+        }
+
+        boolean queuedAllNotifications = true;
+        for (NotificationAgent<? extends NotificationProperties> notificationAgent : getSubscriptions().getSubscribers(gapsEvent.getNotificationType())) {
+            if (!notificationDispatcher.enqueue(notificationAgent.getName(), () -> sendMessage(notificationAgent, gapsEvent))) {
+                queuedAllNotifications = false;
             }
         }
-        return sentAllNotifications;
+        return queuedAllNotifications;
     }
 
     @Override
-    public @NotNull Boolean plexLibraryScanSuccessful(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.PLEX_METADATA_UPDATE, "INFO", "Gaps Search", String.format("Scanning Plex Server %s in %s Library Successful", plexServer.getFriendlyName(), plexLibrary.getTitle()));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when plex library scan succeeded to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
-            }
-        }
-        return sentAllNotifications;
+    public @NotNull NotificationDigest startDigest() {
+        return new NotificationDigest(this::sendDigest);
     }
 
     @Override
-    public @NotNull Boolean tmdbConnectionFailed(@NotNull String error) {
+    public @NotNull Boolean test() {
+        GapsEvent gapsEvent = GapsEvent.test();
+        List<CompletableFuture<Boolean>> results = notificationAgents.stream()
+                .map(notificationAgent -> notificationDispatcher.send(notificationAgent.getName(), () -> sendMessage(notificationAgent, gapsEvent)))
+                .collect(Collectors.toList());
+
         boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.TMDB_API_CONNECTION, "INFO", "Gaps Search", String.format("TMDB Connection Failed. %s", error));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when TMDB connection test failed to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
+        for (CompletableFuture<Boolean> result : results) {
+            if (!result.join()) {
+                sentAllNotifications = false;
             }
         }
         return sentAllNotifications;
     }
 
     @Override
-    public @NotNull Boolean tmdbConnectionSuccessful() {
-        boolean sentAllNotifications = true;
+    public @NotNull Boolean test(@NotNull Integer id) throws IllegalArgumentException {
         for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.TMDB_API_CONNECTION, "INFO", "Gaps Search", "TMDB Connection Successful");
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when TMDB connection test succeeded to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
+            if (notificationAgent.getId().equals(id)) {
+                return notificationDispatcher.send(notificationAgent.getName(), () -> sendMessage(notificationAgent, GapsEvent.test())).join();
             }
         }
-        return sentAllNotifications;
+        throw new IllegalArgumentException("Invalid Id for Notification Agent");
     }
 
     @Override
-    public @NotNull Boolean recommendedMoviesSearchStarted(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
-        boolean sentAllNotifications = true;
+    public @NotNull Boolean isAnyNotificationAgentEnabled() {
+        return getSubscriptions().isAnyEnabled();
+    }
+
+    /**
+     * Agents hand back the properties object Gaps last read, so the same objects mean nothing has changed since the
+     * subscriptions were worked out
+     */
+    private @NotNull Subscriptions getSubscriptions() {
+        List<NotificationProperties> notificationProperties = new ArrayList<>(notificationAgents.size());
         for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.GAPS_MISSING_COLLECTIONS, "INFO", "Gaps Search", String.format("Scanning Plex Server %s on Library %s Started", plexServer.getFriendlyName(), plexLibrary.getTitle()));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when recommending movies started to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
-            }
+            notificationProperties.add(notificationAgent.getNotificationProperties());
         }
-        return sentAllNotifications;
+
+        Subscriptions current = subscriptions;
+        if (current != null && current.isFor(notificationProperties)) {
+            return current;
+        }
+
+        current = new Subscriptions(notificationAgents, notificationProperties);
+        subscriptions = current;
+        return current;
     }
 
-    @Override
-    public @NotNull Boolean recommendedMoviesSearchFailed(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary, @NotNull String error) {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.GAPS_MISSING_COLLECTIONS, "INFO", "Gaps Search", String.format("Scanning Plex Server %s on Library %s Failed %s", plexServer.getFriendlyName(), plexLibrary.getTitle(), error));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when recommending movies failed to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
+    /**
+     * Each agent is sent the events it subscribes to as one message. The message goes out under the type of its first
+     * event, which the agent is known to accept.
+     */
+    private void sendDigest(@NotNull NotificationDigest notificationDigest) {
+        List<GapsEvent> gapsEvents = notificationDigest.getEvents();
+        if (gapsEvents.isEmpty()) {
+            return;
+        }
+
+        Subscriptions current = getSubscriptions();
+        Map<NotificationAgent<? extends NotificationProperties>, List<GapsEvent>> eventsByAgent = new LinkedHashMap<>();
+        for (GapsEvent gapsEvent : gapsEvents) {
+            for (NotificationAgent<? extends NotificationProperties> notificationAgent : current.getSubscribers(gapsEvent.getNotificationType())) {
+                eventsByAgent.computeIfAbsent(notificationAgent, agent -> new ArrayList<>()).add(gapsEvent);
             }
         }
-        return sentAllNotifications;
+
+        eventsByAgent.forEach((notificationAgent, agentEvents) -> {
+            NotificationType notificationType = agentEvents.get(0).getNotificationType();
+            String level = NotificationDigest.getLevel(agentEvents);
+            String message = NotificationDigest.summarize(agentEvents);
+            notificationDispatcher.enqueue(notificationAgent.getName(), () -> sendMessage(notificationAgent, notificationType, level, NotificationDigest.TITLE, message));
+        });
+        LOGGER.info("Summarised {} events in one message to each of {} agents", gapsEvents.size(), eventsByAgent.size());
     }
 
-    @Override
-    public @NotNull Boolean recommendedMoviesSearchFinished(@NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.isEnabled()) {
-                try {
-                    Boolean result = notificationAgent.sendMessage(NotificationType.GAPS_MISSING_COLLECTIONS, "INFO", "Gaps Search", String.format("Scanning Plex Server %s on Library %s Successfully Finished", plexServer.getFriendlyName(), plexLibrary.getTitle()));
-                    if (!result) {
-                        sentAllNotifications = false;
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send message when recommending movies finished to %s", notificationAgent.getName()), e);
-                    sentAllNotifications = false;
-                }
-            }
+    private @NotNull Boolean sendMessage(@NotNull NotificationAgent<? extends NotificationProperties> notificationAgent, @NotNull GapsEvent gapsEvent) {
+        return sendMessage(notificationAgent, gapsEvent.getNotificationType(), gapsEvent.getLevel(), gapsEvent.getTitle(), gapsEvent.getMessage());
+    }
+
+    /**
+     * Sends through the agent, timing how long it took by agent, type and outcome
+     */
+    private @NotNull Boolean sendMessage(@NotNull NotificationAgent<? extends NotificationProperties> notificationAgent, @NotNull NotificationType notificationType, @NotNull String level,
+                                         @NotNull String title, @NotNull String message) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            Boolean result = notificationAgent.sendMessage(notificationType, level, title, message);
+            outcome = Boolean.TRUE.equals(result) ? "sent" : "failed";
+            return result;
+        } finally {
+            Timer.builder("gaps.notifications")
+                    .description("Time spent sending notifications")
+                    .tags("agent", notificationAgent.getName(), "type", notificationType.name(), "outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        return sentAllNotifications;
     }
 
-    @Override
-    public @NotNull Boolean test() {
-        boolean sentAllNotifications = true;
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            try {
-                Boolean result = notificationAgent.sendMessage(NotificationType.TEST, "DEBUG", "Gaps Test", "Test Successful");
-                if (!result) {
-                    sentAllNotifications = false;
+    /**
+     * The enabled agents subscribed to each notification type, for one set of agent properties
+     */
+    private static final class Subscriptions {
+        private final List<NotificationProperties> notificationProperties;
+        private final Map<NotificationType, List<NotificationAgent<? extends NotificationProperties>>> subscribers;
+        private final boolean anyEnabled;
+
+        private Subscriptions(@NotNull List<NotificationAgent<? extends NotificationProperties>> notificationAgents, @NotNull List<NotificationProperties> notificationProperties) {
+            this.notificationProperties = notificationProperties;
+            this.subscribers = new EnumMap<>(NotificationType.class);
+            for (NotificationType notificationType : NotificationType.values()) {
+                subscribers.put(notificationType, new ArrayList<>());
+            }
+
+            boolean enabled = false;
+            for (int i = 0; i < notificationAgents.size(); i++) {
+                NotificationProperties properties = notificationProperties.get(i);
+                if (!properties.getEnabled()) {
+                    continue;
+                }
+
+                enabled = true;
+                subscribers.get(NotificationType.TEST).add(notificationAgents.get(i));
+                for (NotificationType notificationType : properties.getNotificationTypes()) {
+                    if (notificationType != NotificationType.TEST) {
+                        subscribers.get(notificationType).add(notificationAgents.get(i));
+                    }
                 }
-            } catch (Exception e) {
-                LOGGER.error(String.format("Failed to send test all message to %s", notificationAgent.getName()), e);
-                sentAllNotifications = false;
             }
+            this.anyEnabled = enabled;
+            LOGGER.debug("Notification subscriptions {}", subscribers);
         }
-        return sentAllNotifications;
-    }
 
-    @Override
-    public @NotNull Boolean test(@NotNull Integer id) throws IllegalArgumentException {
-        for (NotificationAgent<? extends NotificationProperties> notificationAgent : notificationAgents) {
-            if (notificationAgent.getId().equals(id)) {
-                try {
-                    return notificationAgent.sendMessage(NotificationType.TEST, "DEBUG", "Gaps Test", "Test Successful");
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Failed to send test message to %s", notificationAgent.getName()), e);
+        private boolean isFor(@NotNull List<NotificationProperties> notificationProperties) {
+            for (int i = 0; i < notificationProperties.size(); i++) {
+                if (this.notificationProperties.get(i) != notificationProperties.get(i)) {
                     return false;
                 }
             }
+            return true;
         }
-        throw new IllegalArgumentException("Invalid Id for Notification Agent");
-    }
 
-    @Override
-    public @NotNull Boolean isAnyNotificationAgentEnabled() {
-        return notificationAgents.stream().anyMatch(NotificationAgent::isEnabled);
+        private @NotNull List<NotificationAgent<? extends NotificationProperties>> getSubscribers(@NotNull NotificationType notificationType) {
+            return Collections.unmodifiableList(subscribers.get(notificationType));
+        }
+
+        private boolean isAnyEnabled() {
+            return anyEnabled;
+        }
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.IdSource;
+import com.jasonhhouse.gaps.PreviousMovieIndex;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the Video elements of a Plex library listing one at a time with StAX. Each movie is handed off as soon as its
+ * element is read, so memory doesn't grow with the size of the response like it does when building a DOM.
+ */
+public final class PlexMovieListParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlexMovieListParser.class);
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private static final String MEDIA_CONTAINER = "MediaContainer";
+
+    private static final String VIDEO = "Video";
+
+    private static final String GUID = "Guid";
+
+    private static final Pattern AGENT_PREFIX = Pattern.compile("[A-Za-z\\.]+://");
+
+    private static final Pattern GUID_PREFIX = Pattern.compile("[A-Za-z]+://");
+
+    @NotNull
+    private final PreviousMovieIndex previousMovies;
+
+    /**
+     * @param previousMovies Movies found earlier, looked up by title and year, whose TMDB details are carried over
+     */
+    public PlexMovieListParser(@NotNull PreviousMovieIndex previousMovies) {
+        this.previousMovies = previousMovies;
+    }
+
+    /**
+     * @return The number of movies handed to the consumer
+     */
+    public int parse(@NotNull InputStream inputStream, @NotNull Consumer<BasicMovie> consumer) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            int count = 0;
+            int depth = 0;
+            boolean inMediaContainer = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1 && MEDIA_CONTAINER.equals(reader.getLocalName())) {
+                        inMediaContainer = true;
+                    } else if (depth == 2 && inMediaContainer && VIDEO.equals(reader.getLocalName())) {
+                        BasicMovie basicMovie = readVideo(reader);
+                        readVideoChildren(reader, basicMovie);
+                        depth--;
+                        if (basicMovie != null) {
+                            consumer.accept(basicMovie);
+                            count++;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the Guid elements of a single movie's metadata and copies the IMDB and TMDB ids found onto the movie
+     *
+     * @return The number of Guid elements found
+     */
+    public static int parseGuids(@NotNull InputStream inputStream, @NotNull BasicMovie basicMovie) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            int count = 0;
+            int depth = 0;
+            boolean inVideo = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2) {
+                        inVideo = VIDEO.equals(reader.getLocalName());
+                    } else if (depth == 3 && inVideo && GUID.equals(reader.getLocalName())) {
+                        readGuid(reader, basicMovie);
+                        count++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads up to the end of the current Video element. Plex includes Guid children when the listing is requested with
+     * includeGuids, their ids win over the legacy guid attribute and anything carried over from an earlier scan.
+     */
+    private static void readVideoChildren(@NotNull XMLStreamReader reader, @Nullable BasicMovie basicMovie) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (depth == 2 && basicMovie != null && GUID.equals(reader.getLocalName())) {
+                    readGuid(reader, basicMovie);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static void readGuid(@NotNull XMLStreamReader reader, @NotNull BasicMovie basicMovie) {
+        String urlId = reader.getAttributeValue(null, "id");
+
+        if (urlId == null) {
+            LOGGER.error("Missing id from Guid element in Plex");
+            return;
+        }
+
+        String id = GUID_PREFIX.matcher(urlId).replaceAll("");
+        if (urlId.contains("imdb")) {
+            basicMovie.setImdbId(id, IdSource.PLEX_GUID);
+        } else if (urlId.contains("tmdb")) {
+            try {
+                basicMovie.setTmdbId(Integer.parseInt(id), IdSource.PLEX_GUID);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid tmdb id {} for {}", urlId, basicMovie.getName());
+            }
+        } else {
+            LOGGER.warn("Can't find ID to match {}", urlId);
+        }
+    }
+
+    private @Nullable BasicMovie readVideo(@NotNull XMLStreamReader reader) {
+        String nodeTitle = reader.getAttributeValue(null, "title");
+
+        if (nodeTitle == null) {
+            String reason = "Missing title from Video element in Plex";
+            LOGGER.error(reason);
+            throw new NullPointerException(reason);
+        }
+
+        //Files can't have : so need to remove to find matches correctly
+        String title = nodeTitle.replace(":", "");
+        String yearValue = reader.getAttributeValue(null, "year");
+        if (yearValue == null) {
+            LOGGER.warn("Year not found for {}", title);
+            return null;
+        }
+        int year = Integer.parseInt(yearValue);
+
+        Integer tmdbId = -1;
+        String imdbId = "";
+        String guid = reader.getAttributeValue(null, "guid");
+        if (guid != null) {
+            if (guid.contains("com.plexapp.agents.themoviedb")) {
+                guid = AGENT_PREFIX.matcher(guid).replaceAll("");
+                tmdbId = Integer.valueOf(guid.substring(0, guid.indexOf('?')));
+            } else if (guid.contains("com.plexapp.agents.imdb")) {
+                guid = AGENT_PREFIX.matcher(guid).replaceAll("");
+                imdbId = guid.substring(0, guid.indexOf('?'));
+            }
+        }
+
+        String thumbnail = attributeOrEmpty(reader, "thumb");
+        String summary = attributeOrEmpty(reader, "summary");
+        String key = attributeOrEmpty(reader, "key");
+
+        Integer ratingKey = -1;
+        String ratingKeyValue = reader.getAttributeValue(null, "ratingKey");
+        if (ratingKeyValue != null) {
+            ratingKey = Integer.valueOf(ratingKeyValue);
+        }
+
+        return getOrCreateOwnedMovie(title, year, tmdbId, imdbId, thumbnail, summary, ratingKey, key);
+    }
+
+    private @NotNull BasicMovie getOrCreateOwnedMovie(@NotNull String title, int year, @NotNull Integer tmdbId, @NotNull String imdbId, @NotNull String thumbnail, @NotNull String summary, @NotNull Integer ratingKey, @NotNull String key) {
+        BasicMovie previousBasicMovie = previousMovies.get(title, year);
+        BasicMovie basicMovie;
+        if (previousBasicMovie != null) {
+            basicMovie = new BasicMovie.Builder(title, year)
+                    .setPosterUrl(thumbnail)
+                    .setOverview(summary)
+                    .setKey(key)
+                    .setRatingKey(ratingKey)
+                    .setImdbId(previousBasicMovie.getImdbId())
+                    .setCollectionTitle(previousBasicMovie.getCollectionTitle())
+                    .setLanguage(previousBasicMovie.getLanguage())
+                    .setTmdbId(previousBasicMovie.getTmdbId())
+                    .setCollectionId(previousBasicMovie.getCollectionId())
+                    .build();
+            markIdSources(basicMovie, IdSource.PREVIOUS_SCAN);
+        } else {
+            basicMovie = new BasicMovie.Builder(title, year)
+                    .setPosterUrl(thumbnail)
+                    .setOverview(summary)
+                    .setKey(key)
+                    .setRatingKey(ratingKey)
+                    .setTmdbId(tmdbId)
+                    .setImdbId(imdbId)
+                    .build();
+            markIdSources(basicMovie, IdSource.PLEX_AGENT);
+        }
+        return basicMovie;
+    }
+
+    private static void markIdSources(@NotNull BasicMovie basicMovie, @NotNull IdSource idSource) {
+        if (basicMovie.getTmdbId() != -1) {
+            basicMovie.setTmdbId(basicMovie.getTmdbId(), idSource);
+        }
+        if (StringUtils.isNotEmpty(basicMovie.getImdbId())) {
+            basicMovie.setImdbId(basicMovie.getImdbId(), idSource);
+        }
+    }
+
+    private static @NotNull String attributeOrEmpty(@NotNull XMLStreamReader reader, @NotNull String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    private static @NotNull XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xmlInputFactory;
+    }
+}
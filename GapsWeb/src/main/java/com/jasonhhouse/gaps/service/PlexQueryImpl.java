@@ -11,28 +11,35 @@
 package com.jasonhhouse.gaps.service;
 
 import com.jasonhhouse.gaps.BasicMovie;
-import com.jasonhhouse.gaps.Pair;
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.IdSource;
 import com.jasonhhouse.gaps.Payload;
 import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.PreviousMovieIndex;
 import com.jasonhhouse.gaps.UrlGenerator;
 import com.jasonhhouse.gaps.properties.PlexProperties;
 import com.jasonhhouse.plex.libs.MediaContainer;
 import com.jasonhhouse.plex.libs.PlexLibrary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
@@ -49,6 +56,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import org.w3c.dom.Document;
@@ -67,9 +75,43 @@ public class PlexQueryImpl implements PlexQuery {
 
     private final UrlGenerator urlGenerator;
 
+    private final int maxConcurrentRequests;
+
+    private final JaxbContextRegistry jaxbContextRegistry;
+
+    /**
+     * Used for the long running library calls
+     */
+    private final OkHttpClient libraryClient;
+
+    /**
+     * Shares the connection pool of the library client, with a short timeout for checking servers and libraries
+     */
+    private final OkHttpClient client;
+
+    private final MeterRegistry meterRegistry;
+
     @Autowired
-    public PlexQueryImpl(@Qualifier("real") UrlGenerator urlGenerator) {
+    public PlexQueryImpl(@Qualifier("real") UrlGenerator urlGenerator, GapsConfiguration gapsConfiguration, HttpClientFactory httpClientFactory,
+                         JaxbContextRegistry jaxbContextRegistry, MeterRegistry meterRegistry) {
+        this(urlGenerator, httpClientFactory.getClient(HttpClientFactory.Target.PLEX), gapsConfiguration.getPlex().getMaxConcurrentRequests(), jaxbContextRegistry, meterRegistry);
+    }
+
+    public PlexQueryImpl(UrlGenerator urlGenerator, OkHttpClient libraryClient, int maxConcurrentRequests, JaxbContextRegistry jaxbContextRegistry) {
+        this(urlGenerator, libraryClient, maxConcurrentRequests, jaxbContextRegistry, Metrics.globalRegistry);
+    }
+
+    public PlexQueryImpl(UrlGenerator urlGenerator, OkHttpClient libraryClient, int maxConcurrentRequests, JaxbContextRegistry jaxbContextRegistry, MeterRegistry meterRegistry) {
         this.urlGenerator = urlGenerator;
+        this.meterRegistry = meterRegistry;
+        this.jaxbContextRegistry = jaxbContextRegistry;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.libraryClient = libraryClient;
+        this.client = libraryClient.newBuilder()
+                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build();
     }
 
     @Override
@@ -85,12 +127,6 @@ public class PlexQueryImpl implements PlexQuery {
                 .addQueryParameter("X-Plex-Token", plexServer.getPlexToken())
                 .build();
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
-
         try {
             Request request = new Request.Builder()
                     .url(url)
@@ -106,9 +142,7 @@ public class PlexQueryImpl implements PlexQuery {
                 }
 
                 InputStream inputStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
-                JAXBContext jaxbContext = JAXBContext.newInstance(MediaContainer.class);
-                Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-                MediaContainer mediaContainer = (MediaContainer) jaxbUnmarshaller.unmarshal(inputStream);
+                MediaContainer mediaContainer = jaxbContextRegistry.unmarshal(MediaContainer.class, inputStream);
 
                 //Remove everything except movie folders
                 List<PlexLibrary> plexLibraries = mediaContainer.getPlexLibraries().stream().filter(plexLibrary -> plexLibrary.getType().equalsIgnoreCase("movie")).collect(Collectors.toList());
@@ -145,14 +179,6 @@ public class PlexQueryImpl implements PlexQuery {
                 .addQueryParameter("X-Plex-Token", plexServer.getPlexToken())
                 .build();
 
-        //ToDo
-        //Need to control time out here, using gaps object
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
-
         try {
             Request request = new Request.Builder()
                     .url(url)
@@ -213,12 +239,6 @@ public class PlexQueryImpl implements PlexQuery {
     public @NotNull com.jasonhhouse.plex.video.MediaContainer findAllPlexVideos(@NotNull String url) {
         LOGGER.info("findAllPlexVideos()");
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(180, TimeUnit.SECONDS)
-                .writeTimeout(180, TimeUnit.SECONDS)
-                .readTimeout(180, TimeUnit.SECONDS)
-                .build();
-
         if (StringUtils.isEmpty(url)) {
             LOGGER.info("No URL added to findAllPlexVideos().");
             return new com.jasonhhouse.plex.video.MediaContainer();
@@ -232,8 +252,10 @@ public class PlexQueryImpl implements PlexQuery {
                     .url(httpUrl)
                     .build();
 
-            try (Response response = client.newCall(request).execute()) {
+            long start = System.nanoTime();
+            try (Response response = libraryClient.newCall(request).execute()) {
                 String body = response.body() != null ? response.body().string() : null;
+                recordSection("fetch", start);
 
                 if (StringUtils.isBlank(body)) {
                     String reason = "Body returned empty from Plex";
@@ -241,10 +263,10 @@ public class PlexQueryImpl implements PlexQuery {
                     throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
                 }
 
+                long parseStart = System.nanoTime();
                 InputStream inputStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
-                JAXBContext jaxbContext = JAXBContext.newInstance(com.jasonhhouse.plex.video.MediaContainer.class);
-                Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-                mediaContainer = (com.jasonhhouse.plex.video.MediaContainer) jaxbUnmarshaller.unmarshal(inputStream);
+                mediaContainer = jaxbContextRegistry.unmarshal(com.jasonhhouse.plex.video.MediaContainer.class, inputStream);
+                recordSection("parse", parseStart);
 
             } catch (IOException e) {
                 String reason = String.format("Error connecting to Plex to get Movie list: %s", url);
@@ -273,79 +295,86 @@ public class PlexQueryImpl implements PlexQuery {
             return;
         }
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(180, TimeUnit.SECONDS)
-                .writeTimeout(180, TimeUnit.SECONDS)
-                .readTimeout(180, TimeUnit.SECONDS)
-                .build();
-
+        //The library listing already includes Guids on newer servers, only ask for the movies it left without them.
+        //Ids carried over from an earlier scan by title and year may be stale, so they don't count.
+        List<BasicMovie> moviesWithKeys = new ArrayList<>();
         for (BasicMovie basicMovie : basicMovies) {
+            if (basicMovie.getTmdbIdSource() == IdSource.PLEX_GUID || basicMovie.getImdbIdSource() == IdSource.PLEX_GUID) {
+                continue;
+            }
+
             if (basicMovie.getRatingKey() == -1) {
                 LOGGER.info("No key found for the movie {}", basicMovie.getName());
                 continue;
             }
+            moviesWithKeys.add(basicMovie);
+        }
 
-            HttpUrl httpUrl = urlGenerator.generatePlexMetadataUrl(plexServer, plexLibrary, basicMovie.getRatingKey());
-
-            Request request = new Request.Builder()
-                    .url(httpUrl)
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                String body = response.body() != null ? response.body().string() : null;
+        LOGGER.info("{} of {} movies in {} still need ids from Plex", moviesWithKeys.size(), basicMovies.size(), plexLibrary.getTitle());
+        if (moviesWithKeys.isEmpty()) {
+            return;
+        }
 
-                if (StringUtils.isBlank(body)) {
-                    LOGGER.error("Body returned empty from Plex for the movie {}", basicMovie.getName());
-                    continue;
-                }
+        long start = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(maxConcurrentRequests, moviesWithKeys.size()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("Gaps-Plex-"));
+        int failed = 0;
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(moviesWithKeys.size());
+            for (BasicMovie basicMovie : moviesWithKeys) {
+                futures.add(executorService.submit(() -> findMovieIds(basicMovie, plexServer, plexLibrary)));
+            }
 
-                InputStream fileIS = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
-                DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder builder = builderFactory.newDocumentBuilder();
-                Document xmlDocument = builder.parse(fileIS);
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                String expression = "/MediaContainer/Video/Guid";
-                NodeList nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-
-                if (nodeList.getLength() == 0) {
-                    LOGGER.warn("No guids found in url: {}", httpUrl);
-                    continue;
+            for (Future<Boolean> future : futures) {
+                try {
+                    if (!future.get()) {
+                        failed++;
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.error("Unexpected error finding movie ids", e.getCause());
+                    failed++;
                 }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while finding movie ids in {}", plexLibrary.getTitle());
+            Thread.currentThread().interrupt();
+        } finally {
+            executorService.shutdownNow();
+        }
 
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    Node node = nodeList.item(i);
+        LOGGER.info("Found ids for {} of {} movies in {} using {} requests at a time. Time Elapsed: {} seconds", moviesWithKeys.size() - failed, moviesWithKeys.size(),
+                plexLibrary.getTitle(), threads, (System.currentTimeMillis() - start) / 1000);
+    }
 
-                    Node nodeTitle = node.getAttributes().getNamedItem("id");
+    /**
+     * @return False when the metadata couldn't be read, the movie is left as it was so the rest of the library can still be scanned
+     */
+    private boolean findMovieIds(@NotNull BasicMovie basicMovie, @NotNull PlexServer plexServer, @NotNull PlexLibrary plexLibrary) {
+        HttpUrl httpUrl = urlGenerator.generatePlexMetadataUrl(plexServer, plexLibrary, basicMovie.getRatingKey());
 
-                    if (nodeTitle == null) {
-                        LOGGER.error("Missing id from Guid element in Plex");
-                        continue;
-                    }
+        Request request = new Request.Builder()
+                .url(httpUrl)
+                .build();
 
-                    //Files can't have : so need to remove to find matches correctly
-                    String urlId = nodeTitle.getNodeValue();
-                    String id = urlId.replaceAll("[A-Za-z]+://", "");
-                    if (urlId.contains("imdb")) {
-                        basicMovie.setImdbId(id);
-                    } else if (urlId.contains("tmdb")) {
-                        basicMovie.setTmdbId(Integer.parseInt(id));
-                    } else {
-                        LOGGER.warn("Can't find ID to match {}", urlId);
-                    }
-                }
+        try (Response response = libraryClient.newCall(request).execute()) {
+            ResponseBody body = response.body();
 
-            } catch (IOException e) {
-                String reason = String.format("Error connecting to Plex to get Movie list: %s", httpUrl);
-                LOGGER.error(reason, e);
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, reason, e);
-            } catch (ParserConfigurationException | XPathExpressionException | SAXException e) {
-                String reason = String.format("Error parsing XML from Plex: %s", httpUrl);
-                LOGGER.error(reason, e);
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason, e);
+            if (!response.isSuccessful() || body == null) {
+                LOGGER.error("Plex returned {} for the movie {}", response.code(), basicMovie.getName());
+                return false;
             }
 
+            if (PlexMovieListParser.parseGuids(body.byteStream(), basicMovie) == 0) {
+                LOGGER.warn("No guids found in url: {}", httpUrl);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.error(String.format("Error connecting to Plex to get the ids of %s: %s", basicMovie.getName(), httpUrl), e);
+            return false;
+        } catch (XMLStreamException e) {
+            LOGGER.error(String.format("Error parsing XML from Plex for %s: %s", basicMovie.getName(), httpUrl), e);
+            return false;
         }
-
     }
 
     @Override
@@ -372,106 +401,43 @@ public class PlexQueryImpl implements PlexQuery {
     }
 
     @Override
-    public @NotNull List<BasicMovie> findAllPlexMovies(@NotNull Map<Pair<String, Integer>, BasicMovie> previousMovies, @NotNull HttpUrl url) {
+    public @NotNull List<BasicMovie> findAllPlexMovies(@NotNull PreviousMovieIndex previousMovies, @NotNull HttpUrl url) {
         LOGGER.info("findAllPlexMovies()");
 
         List<BasicMovie> ownedBasicMovies = new ArrayList<>();
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(180, TimeUnit.SECONDS)
-                .writeTimeout(180, TimeUnit.SECONDS)
-                .readTimeout(180, TimeUnit.SECONDS)
-                .build();
-
         try {
             Request request = new Request.Builder()
                     .url(url)
                     .build();
 
-            try (Response response = client.newCall(request).execute()) {
-                String body = response.body() != null ? response.body().string() : null;
+            long start = System.nanoTime();
+            try (Response response = libraryClient.newCall(request).execute()) {
+                recordSection("fetch", start);
+                ResponseBody body = response.body();
 
-                if (StringUtils.isBlank(body)) {
+                if (body == null) {
                     String reason = "Body returned empty from Plex";
                     LOGGER.error(reason);
                     throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
                 }
 
-                InputStream fileIS = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
-                DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder builder = builderFactory.newDocumentBuilder();
-                Document xmlDocument = builder.parse(fileIS);
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                String expression = "/MediaContainer/Video";
-                NodeList nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
+                //The body streams in while it's parsed, so parsing includes reading the rest of it
+                long parseStart = System.nanoTime();
+                int count = new PlexMovieListParser(previousMovies).parse(body.byteStream(), ownedBasicMovies::add);
+                recordSection("parse", parseStart);
 
-                if (nodeList.getLength() == 0) {
+                if (count == 0) {
                     LOGGER.warn("No movies found in url: {}", url);
                     return ownedBasicMovies;
                 }
-
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    Node node = nodeList.item(i);
-
-                    Node nodeTitle = node.getAttributes().getNamedItem("title");
-
-                    if (nodeTitle == null) {
-                        String reason = "Missing title from Video element in Plex";
-                        LOGGER.error(reason);
-                        throw new NullPointerException(reason);
-                    }
-
-                    //Files can't have : so need to remove to find matches correctly
-                    String title = nodeTitle.getNodeValue().replaceAll(":", "");
-                    if (node.getAttributes().getNamedItem("year") == null) {
-                        LOGGER.warn("Year not found for {}", title);
-                        continue;
-                    }
-                    int year = Integer.parseInt(node.getAttributes().getNamedItem("year").getNodeValue());
-
-                    Integer tmdbId = -1;
-                    String imdbId = "";
-                    if (node.getAttributes().getNamedItem("guid") != null) {
-                        String guid = node.getAttributes().getNamedItem("guid").getNodeValue();
-                        if (guid.contains("com.plexapp.agents.themoviedb")) {
-                            guid = guid.replaceAll("[A-Za-z\\.]+://", "");
-                            tmdbId = Integer.valueOf(guid.substring(0, guid.indexOf('?')));
-                        } else if (guid.contains("com.plexapp.agents.imdb")) {
-                            guid = guid.replaceAll("[A-Za-z\\.]+://", "");
-                            imdbId = guid.substring(0, guid.indexOf('?'));
-                        }
-                    }
-
-                    String thumbnail = "";
-                    if (node.getAttributes().getNamedItem("thumb") != null) {
-                        thumbnail = node.getAttributes().getNamedItem("thumb").getNodeValue();
-                    }
-
-                    String summary = "";
-                    if (node.getAttributes().getNamedItem("summary") != null) {
-                        summary = node.getAttributes().getNamedItem("summary").getNodeValue();
-                    }
-
-                    String key = "";
-                    if (node.getAttributes().getNamedItem("key") != null) {
-                        key = node.getAttributes().getNamedItem("key").getNodeValue();
-                    }
-
-                    Integer ratingKey = -1;
-                    if (node.getAttributes().getNamedItem("ratingKey") != null) {
-                        ratingKey = Integer.valueOf(node.getAttributes().getNamedItem("ratingKey").getNodeValue());
-                    }
-
-                    BasicMovie basicMovie = getOrCreateOwnedMovie(previousMovies, title, year, tmdbId, imdbId, thumbnail, summary, ratingKey, key);
-                    ownedBasicMovies.add(basicMovie);
-                }
                 LOGGER.info("{} movies found in plex", ownedBasicMovies.size());
 
             } catch (IOException e) {
                 String reason = String.format("Error connecting to Plex to get Movie list: %s", url);
                 LOGGER.error(reason, e);
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND, reason, e);
-            } catch (ParserConfigurationException | XPathExpressionException | SAXException e) {
+            } catch (XMLStreamException e) {
                 String reason = String.format("Error parsing XML from Plex: %s", url);
                 LOGGER.error(reason, e);
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason, e);
@@ -485,31 +451,12 @@ public class PlexQueryImpl implements PlexQuery {
         return ownedBasicMovies;
     }
 
-    private BasicMovie getOrCreateOwnedMovie(Map<Pair<String, Integer>, BasicMovie> previousMovies, @NotNull String title, int year, @NotNull Integer tmdbId, @NotNull String imdbId, @NotNull String thumbnail, @NotNull String summary, @NotNull Integer ratingKey, @NotNull String key) {
-        Pair<String, Integer> moviePair = new Pair<>(title, year);
-        if (previousMovies.containsKey(moviePair)) {
-            BasicMovie previousBasicMovie = previousMovies.get(moviePair);
-            return new BasicMovie.Builder(title, year)
-                    .setPosterUrl(thumbnail)
-                    .setOverview(summary)
-                    .setKey(key)
-                    .setRatingKey(ratingKey)
-                    .setImdbId(previousBasicMovie.getImdbId())
-                    .setCollectionTitle(previousBasicMovie.getCollectionTitle())
-                    .setLanguage(previousBasicMovie.getLanguage())
-                    .setTmdbId(previousBasicMovie.getTmdbId())
-                    .setCollectionId(previousBasicMovie.getCollectionId())
-                    .build();
-        } else {
-            return new BasicMovie.Builder(title, year)
-                    .setPosterUrl(thumbnail)
-                    .setOverview(summary)
-                    .setKey(key)
-                    .setRatingKey(ratingKey)
-                    .setTmdbId(tmdbId)
-                    .setImdbId(imdbId)
-                    .build();
-        }
+    private void recordSection(@NotNull String operation, long start) {
+        Timer.builder("gaps.plex.section")
+                .description("Time spent fetching and parsing Plex library sections")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
     private <T> T parseXml(@NotNull Response response, @NotNull HttpUrl url, @NotNull String expression) throws XPathExpressionException, IOException, SAXException, ParserConfigurationException {
@@ -16,7 +16,6 @@ import com.jasonhhouse.radarr_v3.Movie;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -33,10 +32,14 @@ import org.springframework.web.server.ResponseStatusException;
 public class RadarrV3Service {
     private static final Logger LOGGER = LoggerFactory.getLogger(RadarrV3Service.class);
 
-    private static final long TIMEOUT = 2500;
-
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final HttpClientFactory httpClientFactory;
+
+    public RadarrV3Service(HttpClientFactory httpClientFactory) {
+        this.httpClientFactory = httpClientFactory;
+    }
+
     public @NotNull List<Movie> getMovies(@NotNull String address, @NotNull Integer port, @NotNull String apiKey) {
 
         HttpUrl url = new HttpUrl.Builder()
@@ -49,11 +52,7 @@ public class RadarrV3Service {
                 .addQueryParameter("apikey", apiKey)
                 .build();
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
+        OkHttpClient client = httpClientFactory.getClient(HttpClientFactory.Target.RADARR);
 
         try {
             Request request = new Request.Builder()
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.Pair;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes the RSS feed of a running search in batches instead of on every new recommendation. The feed is written once
+ * enough recommendations have piled up, or a few seconds after the first unwritten one, and always when the search
+ * finishes. Each write replaces the file in one step, so Radarr polling the feed mid search sees the latest batch.
+ */
+@Service
+public class RssFeedWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RssFeedWriter.class);
+
+    private final IO fileIoService;
+
+    private final long flushMillis;
+
+    private final int flushAdditions;
+
+    private final Map<Pair<String, Integer>, Feed> feeds;
+
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public RssFeedWriter(IO fileIoService, GapsConfiguration gapsConfiguration) {
+        this(fileIoService, TimeUnit.SECONDS.toMillis(gapsConfiguration.getSearch().getRssFlushSeconds()), gapsConfiguration.getSearch().getRssFlushAdditions());
+    }
+
+    public RssFeedWriter(IO fileIoService, long flushMillis, int flushAdditions) {
+        this.fileIoService = fileIoService;
+        this.flushMillis = flushMillis;
+        this.flushAdditions = Math.max(flushAdditions, 1);
+        this.feeds = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("Gaps-Rss-"));
+    }
+
+    /**
+     * Starts batching writes of the feed for a library. The set is read each time the feed is written, so it must be
+     * synchronized.
+     */
+    public void start(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Set<BasicMovie> recommended) {
+        Feed previous = feeds.put(new Pair<>(machineIdentifier, key), new Feed(machineIdentifier, key, recommended));
+        if (previous != null) {
+            LOGGER.warn("RSS feed for {} {} was already started, writing it out", machineIdentifier, key);
+            previous.finish();
+        }
+    }
+
+    /**
+     * Notes a new recommendation, writing the feed if enough have piled up
+     */
+    public void added(@NotNull String machineIdentifier, @NotNull Integer key) {
+        Feed feed = feeds.get(new Pair<>(machineIdentifier, key));
+        if (feed == null) {
+            LOGGER.warn("No RSS feed started for {} {}", machineIdentifier, key);
+            return;
+        }
+        feed.added();
+    }
+
+    /**
+     * Writes the feed one last time and stops batching for the library
+     */
+    public void finish(@NotNull String machineIdentifier, @NotNull Integer key) {
+        Feed feed = feeds.remove(new Pair<>(machineIdentifier, key));
+        if (feed != null) {
+            feed.finish();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        feeds.values().forEach(Feed::finish);
+        feeds.clear();
+        scheduler.shutdown();
+    }
+
+    private final class Feed {
+        private final String machineIdentifier;
+        private final Integer key;
+        private final Set<BasicMovie> recommended;
+        /**
+         * Held while copying and writing the feed so an older copy never replaces a newer one
+         */
+        private final Object writeLock;
+
+        private int pending;
+        private boolean immediate;
+        @Nullable
+        private ScheduledFuture<?> scheduled;
+
+        private Feed(String machineIdentifier, Integer key, Set<BasicMovie> recommended) {
+            this.machineIdentifier = machineIdentifier;
+            this.key = key;
+            this.recommended = recommended;
+            this.writeLock = new Object();
+        }
+
+        private synchronized void added() {
+            pending++;
+            if (pending >= flushAdditions && !immediate) {
+                cancelScheduled();
+                immediate = true;
+                scheduled = scheduler.schedule(this::write, 0, TimeUnit.MILLISECONDS);
+            } else if (scheduled == null) {
+                scheduled = scheduler.schedule(this::write, flushMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void finish() {
+            synchronized (this) {
+                cancelScheduled();
+            }
+            write();
+        }
+
+        private void write() {
+            synchronized (writeLock) {
+                Set<BasicMovie> snapshot;
+                synchronized (this) {
+                    scheduled = null;
+                    pending = 0;
+                    immediate = false;
+                    synchronized (recommended) {
+                        snapshot = new HashSet<>(recommended);
+                    }
+                }
+
+                LOGGER.debug("Writing RSS feed for {} {} with {} movies", machineIdentifier, key, snapshot.size());
+                fileIoService.writeRssFile(machineIdentifier, key, snapshot);
+            }
+        }
+
+        private void cancelScheduled() {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+    }
+}
@@ -39,7 +39,7 @@ public class RssService {
     public Map<PlexLibrary, PlexServer> foundAnyRssFeeds() {
         Map<PlexLibrary, PlexServer> plexServerMap = new HashMap<>();
 
-        PlexProperties plexProperties = fileIoService.readProperties();
+        PlexProperties plexProperties = fileIoService.getProperties();
         List<PlexServer> plexServers = plexProperties.getPlexServers();
         if (CollectionUtils.isEmpty(plexServers)) {
             return Collections.emptyMap();
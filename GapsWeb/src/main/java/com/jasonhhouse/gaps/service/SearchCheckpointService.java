@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.SearchCheckpoint;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the latest checkpoint of each library's search next to its owned and recommended movies. A checkpoint is left
+ * behind by any search that didn't finish, whether it was cancelled, failed, or Gaps was stopped, and is removed once a
+ * search of the library finishes.
+ */
+@Service
+public class SearchCheckpointService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchCheckpointService.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Path storageFolder;
+
+    private final String fileName;
+
+    private final AtomicFileWriter atomicFileWriter;
+
+    @Autowired
+    public SearchCheckpointService(GapsConfiguration gapsConfiguration, AtomicFileWriter atomicFileWriter) {
+        this(Paths.get(gapsConfiguration.getStorageFolder()), gapsConfiguration.getProperties().getSearchCheckpoint(), atomicFileWriter);
+    }
+
+    public SearchCheckpointService(@NotNull Path storageFolder, @NotNull String fileName, @NotNull AtomicFileWriter atomicFileWriter) {
+        this.storageFolder = storageFolder;
+        this.fileName = fileName;
+        this.atomicFileWriter = atomicFileWriter;
+    }
+
+    /**
+     * @return The library's checkpoint, empty if there is none or it can't be read
+     */
+    public @NotNull Optional<SearchCheckpoint> read(@NotNull String machineIdentifier, @NotNull Integer key) {
+        Path file = getFile(machineIdentifier, key);
+        if (Files.notExists(file)) {
+            return Optional.empty();
+        }
+
+        try {
+            SearchCheckpoint searchCheckpoint = objectMapper.readValue(file.toFile(), SearchCheckpoint.class);
+            if (!machineIdentifier.equals(searchCheckpoint.getMachineIdentifier()) || !key.equals(searchCheckpoint.getKey())) {
+                LOGGER.warn("Ignoring checkpoint {} saved for another library", file);
+                return Optional.empty();
+            }
+            return Optional.of(searchCheckpoint);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't read search checkpoint %s", file), e);
+            return Optional.empty();
+        }
+    }
+
+    public void write(@NotNull SearchCheckpoint searchCheckpoint) {
+        Path file = getFile(searchCheckpoint.getMachineIdentifier(), searchCheckpoint.getKey());
+        try {
+            atomicFileWriter.write(file, outputStream -> objectMapper.writeValue(outputStream, searchCheckpoint));
+            LOGGER.debug("Wrote {}", searchCheckpoint);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't write search checkpoint %s", file), e);
+        }
+    }
+
+    public void delete(@NotNull String machineIdentifier, @NotNull Integer key) {
+        Path file = getFile(machineIdentifier, key);
+        try {
+            if (Files.deleteIfExists(file)) {
+                LOGGER.info("Removed search checkpoint for {} {}", machineIdentifier, key);
+            }
+        } catch (IOException e) {
+            LOGGER.error(String.format("Can't delete search checkpoint %s", file), e);
+        }
+    }
+
+    private @NotNull Path getFile(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return storageFolder.resolve(machineIdentifier).resolve(key.toString()).resolve(fileName);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.Pair;
+import com.jasonhhouse.gaps.SearchJob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Tracks the latest search of each library, keyed by machine identifier and library key, and runs them on a pool sized
+ * by search.maxConcurrentSearches. Searches past that limit wait their turn. A library only ever has one search queued
+ * or running, asking for another hands back the one already under way. How long each library's searches take, and
+ * how many are running or waiting, are published as metrics.
+ */
+@Service
+public class SearchJobRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchJobRegistry.class);
+
+    @NotNull
+    private final ConcurrentMap<Pair<String, Integer>, SearchJob> searchJobs;
+
+    @NotNull
+    private final ExecutorService executorService;
+
+    @NotNull
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public SearchJobRegistry(GapsConfiguration gapsConfiguration, MeterRegistry meterRegistry) {
+        this(gapsConfiguration.getSearch().getMaxConcurrentSearches(), meterRegistry);
+    }
+
+    public SearchJobRegistry(int maxConcurrentSearches) {
+        this(maxConcurrentSearches, Metrics.globalRegistry);
+    }
+
+    public SearchJobRegistry(int maxConcurrentSearches, @NotNull MeterRegistry meterRegistry) {
+        int threads = Math.max(1, maxConcurrentSearches);
+        this.searchJobs = new ConcurrentHashMap<>();
+        this.executorService = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("Gaps-Search-"));
+        this.meterRegistry = meterRegistry;
+
+        for (SearchJob.State state : List.of(SearchJob.State.QUEUED, SearchJob.State.RUNNING)) {
+            Gauge.builder("gaps.searches", this, searchJobRegistry -> searchJobRegistry.count(state))
+                    .description("Library searches waiting or running")
+                    .tag("state", state.name().toLowerCase(Locale.ENGLISH))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Queues a search of the library unless one is already queued or running
+     *
+     * @param search Runs the search, checking {@link SearchJob#isCancelled()} as it goes
+     * @return The new search, or the one already under way
+     */
+    public @NotNull SearchJob submit(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Consumer<SearchJob> search) {
+        Pair<String, Integer> libraryKey = new Pair<>(machineIdentifier, key);
+        SearchJob[] created = new SearchJob[1];
+        SearchJob searchJob = searchJobs.compute(libraryKey, (ignored, existing) -> {
+            if (existing != null && existing.isActive()) {
+                return existing;
+            }
+            created[0] = new SearchJob(machineIdentifier, key);
+            return created[0];
+        });
+
+        if (created[0] == null) {
+            LOGGER.info("Search of {} {} already {}", machineIdentifier, key, searchJob.getState());
+            return searchJob;
+        }
+
+        try {
+            executorService.execute(() -> run(searchJob, search));
+        } catch (RejectedExecutionException e) {
+            LOGGER.error("Can't queue search of {} {}", machineIdentifier, key);
+            searchJob.failed(e);
+        }
+        return searchJob;
+    }
+
+    /**
+     * @return The latest search of the library, whether or not it's still running
+     */
+    public @NotNull Optional<SearchJob> get(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return Optional.ofNullable(searchJobs.get(new Pair<>(machineIdentifier, key)));
+    }
+
+    /**
+     * @return The search with the id, as long as it's still the latest one of its library
+     */
+    public @NotNull Optional<SearchJob> getById(@NotNull String id) {
+        return searchJobs.values().stream().filter(searchJob -> searchJob.getId().equals(id)).findFirst();
+    }
+
+    /**
+     * @return The latest search of every library
+     */
+    public @NotNull List<SearchJob> getSearchJobs() {
+        return new ArrayList<>(searchJobs.values());
+    }
+
+    /**
+     * @return True if the library had a search queued or running to cancel
+     */
+    public boolean cancel(@NotNull String machineIdentifier, @NotNull Integer key) {
+        SearchJob searchJob = searchJobs.get(new Pair<>(machineIdentifier, key));
+        if (searchJob == null || !searchJob.isActive()) {
+            return false;
+        }
+        searchJob.cancel();
+        return true;
+    }
+
+    public void cancelAll() {
+        searchJobs.values().forEach(SearchJob::cancel);
+    }
+
+    private long count(@NotNull SearchJob.State state) {
+        return searchJobs.values().stream().filter(searchJob -> searchJob.getState() == state).count();
+    }
+
+    public boolean isSearching() {
+        return searchJobs.values().stream().anyMatch(SearchJob::isActive);
+    }
+
+    public boolean isSearching(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return get(machineIdentifier, key).map(SearchJob::isActive).orElse(false);
+    }
+
+    @PreDestroy
+    public void close() {
+        cancelAll();
+        executorService.shutdownNow();
+    }
+
+    private void run(@NotNull SearchJob searchJob, @NotNull Consumer<SearchJob> search) {
+        if (searchJob.isCancelled()) {
+            LOGGER.info("Search of {} {} cancelled before it started", searchJob.getMachineIdentifier(), searchJob.getKey());
+            searchJob.finished();
+            return;
+        }
+
+        searchJob.started();
+        try {
+            search.accept(searchJob);
+            searchJob.finished();
+        } catch (RuntimeException e) {
+            searchJob.failed(e);
+        } catch (Error e) {
+            //Let the error through, but never leave the library marked as searching
+            searchJob.failed(e);
+            throw e;
+        } finally {
+            LOGGER.info("Search of {} {} {}", searchJob.getMachineIdentifier(), searchJob.getKey(), searchJob.getState());
+            recordDuration(searchJob);
+        }
+    }
+
+    private void recordDuration(@NotNull SearchJob searchJob) {
+        Instant startedAt = searchJob.getStartedAt();
+        Instant finishedAt = searchJob.getFinishedAt();
+        if (startedAt == null || finishedAt == null) {
+            return;
+        }
+
+        Timer.builder("gaps.search.duration")
+                .description("Time taken to search a library")
+                .tags("machineIdentifier", searchJob.getMachineIdentifier(), "key", searchJob.getKey().toString(),
+                        "state", searchJob.getState().name().toLowerCase(Locale.ENGLISH))
+                .register(meterRegistry)
+                .record(Duration.between(startedAt, finishedAt));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.Pair;
+import com.jasonhhouse.gaps.SearchJob;
+import com.jasonhhouse.gaps.SearchResults;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sends the progress of each running search to the browser at a fixed interval instead of once per movie looked at.
+ * Every update carries the latest counts and all the movies recommended since the one before, and nothing is sent when
+ * nothing changed. Each library has its own topic, so a page only hears about the library it shows.
+ */
+@Service
+public class SearchProgressPublisher {
+
+    public static final String NEW_MOVIE_FOUND_URL = "/newMovieFound";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchProgressPublisher.class);
+
+    private final SimpMessagingTemplate template;
+
+    private final long intervalMillis;
+
+    private final Map<Pair<String, Integer>, Stream> streams;
+
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SearchProgressPublisher(SimpMessagingTemplate template, GapsConfiguration gapsConfiguration) {
+        this(template, gapsConfiguration.getSearch().getProgressIntervalMillis());
+    }
+
+    public SearchProgressPublisher(SimpMessagingTemplate template, long intervalMillis) {
+        this.template = template;
+        this.intervalMillis = Math.max(intervalMillis, 1);
+        this.streams = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("Gaps-Progress-"));
+    }
+
+    /**
+     * @return Topic the progress of the library's searches is sent to
+     */
+    public static @NotNull String getDestination(@NotNull String machineIdentifier, @NotNull Integer key) {
+        return NEW_MOVIE_FOUND_URL + "/" + machineIdentifier + "/" + key;
+    }
+
+    /**
+     * Starts sending the progress of the search. Counts are read from the search each interval.
+     */
+    public void start(@NotNull SearchJob searchJob) {
+        Stream stream = new Stream(searchJob);
+        Stream previous = streams.put(new Pair<>(searchJob.getMachineIdentifier(), searchJob.getKey()), stream);
+        if (previous != null) {
+            LOGGER.warn("Progress of {} {} was already being sent, finishing it", searchJob.getMachineIdentifier(), searchJob.getKey());
+            previous.finish();
+        }
+        stream.scheduled = scheduler.scheduleAtFixedRate(stream::send, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Notes that the counts changed, they go out with the next update
+     */
+    public void updated(@NotNull String machineIdentifier, @NotNull Integer key) {
+        Stream stream = streams.get(new Pair<>(machineIdentifier, key));
+        if (stream != null) {
+            stream.updates.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queues a new recommendation for the next update
+     */
+    public void recommended(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull BasicMovie basicMovie) {
+        Stream stream = streams.get(new Pair<>(machineIdentifier, key));
+        if (stream == null) {
+            LOGGER.warn("No progress started for {} {}", machineIdentifier, key);
+            return;
+        }
+        stream.updates.incrementAndGet();
+        stream.nextMovies.add(basicMovie);
+    }
+
+    /**
+     * Sends whatever is left and stops sending progress for the library
+     */
+    public void finish(@NotNull String machineIdentifier, @NotNull Integer key) {
+        Stream stream = streams.remove(new Pair<>(machineIdentifier, key));
+        if (stream != null) {
+            stream.finish();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        streams.values().forEach(Stream::finish);
+        streams.clear();
+        scheduler.shutdown();
+    }
+
+    private final class Stream {
+        private final SearchJob searchJob;
+        private final String destination;
+        private final Queue<BasicMovie> nextMovies;
+        /**
+         * Messages a search used to send, one per movie looked at or recommended
+         */
+        private final AtomicInteger updates;
+
+        private int sent;
+        private int lastSearchedMovieCount;
+        @Nullable
+        private volatile ScheduledFuture<?> scheduled;
+
+        private Stream(SearchJob searchJob) {
+            this.searchJob = searchJob;
+            this.destination = getDestination(searchJob.getMachineIdentifier(), searchJob.getKey());
+            this.nextMovies = new ConcurrentLinkedQueue<>();
+            this.updates = new AtomicInteger();
+            this.lastSearchedMovieCount = -1;
+        }
+
+        private synchronized void send() {
+            List<BasicMovie> basicMovies = new ArrayList<>();
+            BasicMovie basicMovie;
+            while ((basicMovie = nextMovies.poll()) != null) {
+                basicMovies.add(basicMovie);
+            }
+
+            int searchedMovieCount = searchJob.getSearchedMovieCount().get();
+            if (basicMovies.isEmpty() && searchedMovieCount == lastSearchedMovieCount) {
+                return;
+            }
+            lastSearchedMovieCount = searchedMovieCount;
+
+            try {
+                template.convertAndSend(destination, new SearchResults(searchedMovieCount, searchJob.getTotalMovieCount().get(), basicMovies));
+                sent++;
+            } catch (RuntimeException e) {
+                LOGGER.error(String.format("Can't send progress to %s", destination), e);
+            }
+        }
+
+        private void finish() {
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            send();
+            synchronized (this) {
+                LOGGER.info("Sent {} progress updates for {} {} in place of {}", sent, searchJob.getMachineIdentifier(), searchJob.getKey(), updates.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Caches TMDB responses on disk under the storage folder, with the most recently used ones also kept in memory.
+ * Entries older than the TTL are treated as missing, deleted when read and get replaced the next time TMDB is asked.
+ * Expired files nobody asks for again are deleted at startup. Hits, misses and the hit ratio are published as metrics.
+ */
+@Service
+public class TmdbCache implements MeterBinder {
+
+    public static final String TMDB_CACHE_FOLDER = "tmdb";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TmdbCache.class);
+
+    private final Path folder;
+
+    private final long ttlMillis;
+
+    private final Map<String, Entry> memory;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong misses;
+
+    @Autowired
+    public TmdbCache(GapsConfiguration gapsConfiguration) {
+        this(Paths.get(gapsConfiguration.getStorageFolder(), TMDB_CACHE_FOLDER),
+                Duration.ofHours(gapsConfiguration.getTmdb().getCacheTtlHours()),
+                gapsConfiguration.getTmdb().getCacheMaxEntries());
+    }
+
+    public TmdbCache(@NotNull Path folder, @NotNull Duration ttl, int maxEntries) {
+        this.folder = folder;
+        this.ttlMillis = ttl.toMillis();
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Deletes expired cache files in the background so startup isn't held up by a large cache folder
+     */
+    @PostConstruct
+    public void sweep() {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+
+        Thread sweeper = new Thread(this::removeExpired, "Gaps-Tmdb-Cache-Sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * Deletes every cache file older than the TTL, including temp files left behind by an interrupted write. When the
+     * cache is off every file is deleted.
+     *
+     * @return The number of files deleted
+     */
+    public int removeExpired() {
+        long start = System.currentTimeMillis();
+        int removed = 0;
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (isExpired(file, start) && delete(file)) {
+                    removed++;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn(String.format("Failed to clean up %s", folder), e);
+        }
+
+        LOGGER.info("Removed {} expired TMDB cache files in {} ms", removed, System.currentTimeMillis() - start);
+        return removed;
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * @return The cached response body, or null if it isn't cached or has expired
+     */
+    public @Nullable String get(@NotNull Type type, @NotNull String id) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String key = key(type, id);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+
+        if (entry == null) {
+            entry = readFromDisk(type, id);
+            if (entry != null) {
+                synchronized (memory) {
+                    memory.put(key, entry);
+                }
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (now - entry.created > ttlMillis) {
+            synchronized (memory) {
+                memory.remove(key, entry);
+            }
+            Path file = file(type, id);
+            //A fresh response may have been written since, so only delete the file if it's still expired
+            if (isExpired(file, now)) {
+                delete(file);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.json;
+    }
+
+    public void put(@NotNull Type type, @NotNull String id, @NotNull String json) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Entry entry = new Entry(json, System.currentTimeMillis());
+        synchronized (memory) {
+            memory.put(key(type, id), entry);
+        }
+
+        Path file = file(type, id);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed to cache TMDB %s %s", type, id), e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Share of lookups answered from the cache, zero before the first lookup
+     */
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public void bindTo(@NotNull MeterRegistry registry) {
+        FunctionCounter.builder("gaps.tmdb.cache.hits", this, TmdbCache::getHits)
+                .description("TMDB responses answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("gaps.tmdb.cache.misses", this, TmdbCache::getMisses)
+                .description("TMDB responses not in the cache or expired")
+                .register(registry);
+        Gauge.builder("gaps.tmdb.cache.hit.ratio", this, TmdbCache::getHitRatio)
+                .description("Share of TMDB lookups answered from the cache")
+                .register(registry);
+        Gauge.builder("gaps.tmdb.cache.memory.entries", this, TmdbCache::getMemoryEntries)
+                .description("TMDB responses held in memory")
+                .register(registry);
+    }
+
+    private int getMemoryEntries() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    private @Nullable Entry readFromDisk(@NotNull Type type, @NotNull String id) {
+        Path file = file(type, id);
+        try {
+            long created = Files.getLastModifiedTime(file).toMillis();
+            return new Entry(Files.readString(file), created);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed to read cached TMDB %s %s", type, id), e);
+            return null;
+        }
+    }
+
+    private boolean isExpired(@NotNull Path file, long now) {
+        if (!isEnabled()) {
+            return true;
+        }
+
+        try {
+            return now - Files.getLastModifiedTime(file).toMillis() > ttlMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean delete(@NotNull Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed to delete expired cache file %s", file), e);
+            return false;
+        }
+    }
+
+    private @NotNull Path file(@NotNull Type type, @NotNull String id) {
+        //Search ids hold titles, so hash anything that isn't safe as a file name
+        String fileName = id.matches("[A-Za-z0-9_-]+") ? id : DigestUtils.md5DigestAsHex(id.getBytes(StandardCharsets.UTF_8));
+        return folder.resolve(type.getFolder()).resolve(fileName + ".json");
+    }
+
+    private static @NotNull String key(@NotNull Type type, @NotNull String id) {
+        return type.getFolder() + "/" + id;
+    }
+
+    public enum Type {
+        MOVIE("movie"),
+        COLLECTION("collection"),
+        FIND("find"),
+        SEARCH("search");
+
+        private final String folder;
+
+        Type(String folder) {
+            this.folder = folder;
+        }
+
+        public String getFolder() {
+            return folder;
+        }
+    }
+
+    private static final class Entry {
+        private final String json;
+        private final long created;
+
+        private Entry(String json, long created) {
+            this.json = json;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Token bucket shared by every call made to TMDB. The bucket starts with, and never holds more than, the configured
+ * burst and refills at the configured requests per second. Callers that find the bucket empty reserve the next free
+ * slot and sleep outside of the lock, so concurrent searches never exceed the quota, not even in the first second.
+ */
+@Service
+public class TmdbRateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TmdbRateLimiter.class);
+
+    private final double capacity;
+
+    private final double nanosPerPermit;
+
+    private final LongSupplier ticker;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    @Autowired
+    public TmdbRateLimiter(GapsConfiguration gapsConfiguration) {
+        this(gapsConfiguration.getTmdb().getRequestsPerSecond(), gapsConfiguration.getTmdb().getBurst());
+    }
+
+    public TmdbRateLimiter(double requestsPerSecond) {
+        this(requestsPerSecond, 1);
+    }
+
+    public TmdbRateLimiter(double requestsPerSecond, int burst) {
+        this(requestsPerSecond, burst, System::nanoTime);
+    }
+
+    TmdbRateLimiter(double requestsPerSecond, int burst, @NotNull LongSupplier ticker) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be greater than zero");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least one request");
+        }
+
+        LOGGER.info("Limiting TMDB to {} requests per second with a burst of {}", requestsPerSecond, burst);
+        this.capacity = burst;
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        this.ticker = ticker;
+        this.tokens = capacity;
+        this.lastRefill = ticker.getAsLong();
+    }
+
+    /**
+     * Blocks until a request to TMDB is allowed
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the next free slot
+     *
+     * @return Nanoseconds the caller has to wait before using the slot
+     */
+    synchronized long reserve() {
+        long now = ticker.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerPermit);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens * nanosPerPermit);
+    }
+}
@@ -29,6 +29,12 @@ public class TmdbService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TmdbService.class);
 
+    private final HttpClientFactory httpClientFactory;
+
+    public TmdbService(HttpClientFactory httpClientFactory) {
+        this.httpClientFactory = httpClientFactory;
+    }
+
     public @NotNull Payload testTmdbKey(String key) {
         LOGGER.info("testTmdbKey( {} )", key);
 
@@ -44,8 +50,7 @@ public class TmdbService {
 
         LOGGER.info("url: {}", url);
 
-        OkHttpClient client = new OkHttpClient.Builder()
-                .build();
+        OkHttpClient client = httpClientFactory.getClient(HttpClientFactory.Target.TMDB);
 
         Request request = new Request.Builder()
                 .url(url)
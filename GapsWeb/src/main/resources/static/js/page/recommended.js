@@ -31,19 +31,8 @@ let searchTitle;
 let searchDescription;
 let movieCounter;
 let socket;
-
-function switchPlexLibrary(machineIdentifier, key) {
-  libraryKey = key;
-  plexServer = plexServers[machineIdentifier];
-  const plexLibrary = plexServer.plexLibraries.find((tempPlexLibrary) => tempPlexLibrary.key === parseInt(key, 10));
-  libraryTitle.text(`${plexServer.friendlyName} - ${plexLibrary.title}`);
-
-  notSearchedYetContainer.css({ display: 'none' });
-  moviesTable.data().clear();
-  moviesTable.rows().invalidate().draw();
-
-  getRecommendedMoviesForTable(`/recommended/${machineIdentifier}/${libraryKey}`, movieContainer, noMovieContainer, notSearchedYetContainer, moviesTable);
-}
+let progressSubscription;
+let finishedSubscription;
 
 function cancel() {
   stompClient.send(`/recommended/cancel/${plexServer.machineIdentifier}/${libraryKey}`);
@@ -73,6 +62,69 @@ function showSearchStatus(obj) {
   }
 }
 
+function showProgress(status) {
+  const obj = JSON.parse(status.body);
+  showSearchStatus(obj);
+
+  // Movies recommended since the last update arrive together
+  if (obj.nextMovies && obj.nextMovies.length) {
+    movieCounter += obj.nextMovies.length;
+    moviesTable.rows.add(obj.nextMovies).draw();
+    obj.nextMovies.forEach((nextMovie) => {
+      searchResults.push(`${nextMovie.name} (${nextMovie.year}) in collection '${nextMovie.collection}'`);
+    });
+  }
+}
+
+function showFinished(message) {
+  searchContainer.css({ display: 'none' });
+
+  const payload = JSON.parse(message.body);
+
+  backButton.text('Restart');
+  if (payload && payload.code === Payload.SEARCH_SUCCESSFUL) {
+    searchTitle.text('Search Complete');
+    searchDescription.text(`${movieCounter} movies to add to complete your collections. Below is everything Gaps found that is missing from your movie collections.`);
+    setCopyToClipboardEnabled(true);
+  } else {
+    searchTitle.text('Search Failed');
+    searchDescription.text(payload.reason);
+    setCopyToClipboardEnabled(false);
+    movieContainer.css({ display: 'none' });
+    notSearchedYetContainer.css({ display: 'none' });
+    noMovieContainer.show(100);
+  }
+}
+
+function subscribeToProgress() {
+  if (!stompClient || !stompClient.connected) {
+    return;
+  }
+
+  if (progressSubscription) {
+    progressSubscription.unsubscribe();
+  }
+  if (finishedSubscription) {
+    finishedSubscription.unsubscribe();
+  }
+  progressSubscription = stompClient.subscribe(`/newMovieFound/${plexServer.machineIdentifier}/${libraryKey}`, showProgress);
+  finishedSubscription = stompClient.subscribe(`/finishedSearching/${plexServer.machineIdentifier}/${libraryKey}`, showFinished);
+}
+
+function switchPlexLibrary(machineIdentifier, key) {
+  libraryKey = key;
+  plexServer = plexServers[machineIdentifier];
+  const plexLibrary = plexServer.plexLibraries.find((tempPlexLibrary) => tempPlexLibrary.key === parseInt(key, 10));
+  libraryTitle.text(`${plexServer.friendlyName} - ${plexLibrary.title}`);
+
+  notSearchedYetContainer.css({ display: 'none' });
+  moviesTable.data().clear();
+  moviesTable.rows().invalidate().draw();
+
+  getRecommendedMoviesForTable(`/recommended/${machineIdentifier}/${libraryKey}`, movieContainer, noMovieContainer, notSearchedYetContainer, moviesTable);
+  subscribeToProgress();
+}
+
 function searchForMovies() {
   movieContainer.show(100);
   searchContainer.show(100);
@@ -181,36 +233,7 @@ jQuery(($) => {
   socket = new SockJS('/gs-guide-websocket');
   stompClient = Stomp.over(socket);
   stompClient.connect({}, () => {
-    stompClient.subscribe('/finishedSearching', (message) => {
-      searchContainer.css({ display: 'none' });
-
-      const payload = JSON.parse(message.body);
-
-      backButton.text('Restart');
-      if (payload && payload.code === Payload.SEARCH_SUCCESSFUL) {
-        searchTitle.text('Search Complete');
-        searchDescription.text(`${movieCounter} movies to add to complete your collections. Below is everything Gaps found that is missing from your movie collections.`);
-        setCopyToClipboardEnabled(true);
-      } else {
-        searchTitle.text('Search Failed');
-        searchDescription.text(payload.reason);
-        setCopyToClipboardEnabled(false);
-        movieContainer.css({ display: 'none' });
-        notSearchedYetContainer.css({ display: 'none' });
-        noMovieContainer.show(100);
-      }
-    });
-
-    stompClient.subscribe('/newMovieFound', (status) => {
-      const obj = JSON.parse(status.body);
-      showSearchStatus(obj);
-
-      if (obj.nextMovie) {
-        movieCounter += 1;
-        moviesTable.row.add(obj.nextMovie).draw();
-        searchResults.push(`${obj.nextMovie.name} (${obj.nextMovie.year}) in collection '${obj.nextMovie.collection}'`);
-      }
-    });
+    subscribeToProgress();
   });
 
   // Exposing function for onClick()
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.controller;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.SearchJob;
+import com.jasonhhouse.gaps.SearchJobStatus;
+import com.jasonhhouse.gaps.service.GapsSearch;
+import com.jasonhhouse.gaps.service.SearchJobRegistry;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchJobControllerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private SearchJobRegistry searchJobRegistry;
+    private SearchJobController searchJobController;
+
+    @BeforeEach
+    void setUp() {
+        searchJobRegistry = new SearchJobRegistry(1);
+        searchJobController = new SearchJobController(new BlockingGapsSearch(), searchJobRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        searchJobRegistry.close();
+    }
+
+    @Test
+    void postAnswersBeforeTheSearchFinishes() throws InterruptedException {
+        ResponseEntity<SearchJobStatus> response = searchJobController.postSearch("machine", 1);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode(), "Starting a search should be accepted");
+        SearchJobStatus status = response.getBody();
+        assertNotNull(status, "Start should return the search's status");
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Search should run in the background");
+
+        SearchJobStatus polled = searchJobController.getSearch(status.getId()).getBody();
+        assertNotNull(polled, "Search should be found by id");
+        assertEquals(SearchJob.State.RUNNING, polled.getState(), "Search should still be running");
+        assertEquals(status.getId(), searchJobController.postSearch("machine", 1).getBody().getId(), "Library should only have one search under way");
+        assertEquals(1, searchJobController.getSearches().getBody().size(), "Search should be listed");
+
+        release.countDown();
+        searchJobRegistry.getById(status.getId()).orElseThrow().getCompletion().join();
+        SearchJobStatus finished = searchJobController.getSearch(status.getId()).getBody();
+        assertEquals(SearchJob.State.FINISHED, finished.getState(), "Search should have finished");
+        assertEquals(2, finished.getRecommendedMovieCount(), "Every recommendation should be counted");
+        assertNull(finished.getEtaSeconds(), "Finished search should not have an ETA");
+    }
+
+    @Test
+    void recommendedMoviesArePolledWhileSearching() throws InterruptedException {
+        String id = searchJobController.postSearch("machine", 1).getBody().getId();
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Search should run in the background");
+
+        List<BasicMovie> recommended = searchJobController.getRecommended(id).getBody();
+        assertEquals(1, recommended.size(), "Recommendations so far should be returned while searching");
+        assertEquals("First", recommended.get(0).getName(), "Recommendation found so far should be returned");
+    }
+
+    @Test
+    void etaAssumesRemainingMoviesTakeAsLong() throws InterruptedException {
+        String id = searchJobController.postSearch("machine", 1).getBody().getId();
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Search should run in the background");
+
+        SearchJob searchJob = searchJobRegistry.getById(id).orElseThrow();
+        SearchJobStatus status = SearchJobStatus.of(searchJob, searchJob.getStartedAt().plusSeconds(10));
+        assertEquals(10, status.getSearchedMovieCount(), "Searched movies should be counted");
+        assertEquals(40, status.getTotalMovieCount(), "Total movies should be counted");
+        assertEquals(30L, status.getEtaSeconds().longValue(), "30 movies left at a second each should take 30 seconds");
+    }
+
+    @Test
+    void deleteCancelsTheSearch() throws InterruptedException {
+        String id = searchJobController.postSearch("machine", 1).getBody().getId();
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Search should run in the background");
+
+        searchJobController.deleteSearch(id);
+        release.countDown();
+        searchJobRegistry.getById(id).orElseThrow().getCompletion().join();
+
+        assertEquals(SearchJob.State.CANCELLED, searchJobController.getSearch(id).getBody().getState(), "Search should be cancelled");
+    }
+
+    @Test
+    void unknownSearchIsNotFound() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> searchJobController.getSearch("missing"), "Unknown id should not be found");
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatus(), "Unknown id should be a 404");
+        assertThrows(ResponseStatusException.class, () -> searchJobController.deleteSearch("missing"), "Unknown id should not be cancelled");
+    }
+
+    private void search(@NotNull SearchJob searchJob) {
+        searchJob.getTotalMovieCount().set(40);
+        searchJob.getSearchedMovieCount().set(10);
+        searchJob.getRecommended().add(new BasicMovie.Builder("First", 2000).setTmdbId(1).build());
+        started.countDown();
+        try {
+            release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!searchJob.isCancelled()) {
+            searchJob.getRecommended().add(new BasicMovie.Builder("Second", 2001).setTmdbId(2).build());
+        }
+    }
+
+    private final class BlockingGapsSearch implements GapsSearch {
+
+        @Override
+        public void run(@NotNull String machineIdentifier, @NotNull Integer key) {
+            start(machineIdentifier, key).getCompletion().join();
+        }
+
+        @Override
+        public void run(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies) {
+            run(machineIdentifier, key);
+        }
+
+        @Override
+        public @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key) {
+            Consumer<SearchJob> search = SearchJobControllerTest.this::search;
+            return searchJobRegistry.submit(machineIdentifier, key, search);
+        }
+
+        @Override
+        public @NotNull SearchJob start(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Collection<BasicMovie> changedMovies) {
+            return start(machineIdentifier, key);
+        }
+
+        @Override
+        public void cancelSearch() {
+            searchJobRegistry.cancelAll();
+        }
+
+        @Override
+        public void cancelSearch(@NotNull String machineIdentifier, @NotNull Integer key) {
+            searchJobRegistry.cancel(machineIdentifier, key);
+        }
+
+        @Override
+        public boolean isSearching() {
+            return searchJobRegistry.isSearching();
+        }
+
+        @Override
+        public boolean isSearching(@NotNull String machineIdentifier, @NotNull Integer key) {
+            return searchJobRegistry.isSearching(machineIdentifier, key);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtomicFileWriterTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void replacesFileWithoutLeavingTempFiles() throws IOException {
+        AtomicFileWriter atomicFileWriter = new AtomicFileWriter(true, 0L);
+        Path target = folder.resolve("movieIds.json");
+
+        atomicFileWriter.write(target, "[1]".getBytes(StandardCharsets.UTF_8));
+        atomicFileWriter.write(target, "[1,2]".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("[1,2]", Files.readString(target), "Second write should replace the first");
+        assertEquals(List.of(target), listFolder(), "Only the target should be left in the folder");
+    }
+
+    @Test
+    void createsMissingFolders() throws IOException {
+        AtomicFileWriter atomicFileWriter = new AtomicFileWriter(false, 0L);
+        Path target = folder.resolve("machine").resolve("1").resolve("rssFeed.json");
+
+        atomicFileWriter.write(target, "[]".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("[]", Files.readString(target), "File should be written into new folders");
+    }
+
+    @Test
+    void readersNeverSeePartialFiles() throws Exception {
+        AtomicFileWriter atomicFileWriter = new AtomicFileWriter(false, 0L);
+        Path target = folder.resolve("recommendedMovies.json");
+        String small = "a".repeat(10);
+        String large = "b".repeat(1024 * 1024);
+        atomicFileWriter.write(target, small.getBytes(StandardCharsets.UTF_8));
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger partialReads = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                try {
+                    String contents = Files.readString(target);
+                    if (!contents.equals(small) && !contents.equals(large)) {
+                        partialReads.incrementAndGet();
+                    }
+                    reads.incrementAndGet();
+                } catch (NoSuchFileException e) {
+                    partialReads.incrementAndGet();
+                } catch (IOException e) {
+                    // Retry on the next pass
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 50; i++) {
+            atomicFileWriter.write(target, (i % 2 == 0 ? large : small).getBytes(StandardCharsets.UTF_8));
+        }
+        writing.set(false);
+        reader.join();
+
+        assertTrue(reads.get() > 0, "Reader should have read the file");
+        assertEquals(0, partialReads.get(), "Reader should only see whole files");
+    }
+
+    @Test
+    void batchedWritesAreFlushed() throws IOException {
+        AtomicFileWriter atomicFileWriter = new AtomicFileWriter(true, 60000L);
+        Path first = folder.resolve("ownedMovies.json");
+        Path second = folder.resolve("gaps.properties");
+
+        atomicFileWriter.write(first, "[]".getBytes(StandardCharsets.UTF_8));
+        atomicFileWriter.write(second, "{}".getBytes(StandardCharsets.UTF_8));
+        Files.delete(first);
+        atomicFileWriter.close();
+
+        assertEquals("{}", Files.readString(second), "Batched write should be readable right away");
+        assertEquals(List.of(second), listFolder(), "Only the remaining target should be left in the folder");
+    }
+
+    private List<Path> listFolder() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
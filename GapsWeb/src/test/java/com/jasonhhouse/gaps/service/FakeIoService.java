@@ -112,6 +112,11 @@ public class FakeIoService implements IO {
         }
     }
 
+    @Override
+    public @NotNull PlexProperties getProperties() {
+        return readProperties();
+    }
+
     @Override
     public @NotNull Payload nuke() {
         return null;
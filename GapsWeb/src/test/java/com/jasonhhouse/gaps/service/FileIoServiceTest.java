@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.properties.PlexProperties;
+import com.jasonhhouse.plex.libs.PlexLibrary;
+import com.sun.management.ThreadMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileIoServiceTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIoServiceTest.class);
+
+    private static final int ITERATIONS = 5;
+
+    private static final long WATCH_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    @TempDir
+    Path folder;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FileIoService fileIoService;
+
+    @BeforeEach
+    void setUp() {
+        fileIoService = newFileIoService(false);
+        fileIoService.watchProperties();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fileIoService.stopWatchingProperties();
+    }
+
+    @Test
+    void readPropertiesReturnsCopies() {
+        PlexProperties plexProperties = new PlexProperties();
+        plexProperties.setMovieDbApiKey("key");
+        fileIoService.writeProperties(plexProperties);
+        plexProperties.setMovieDbApiKey("changed after writing");
+
+        assertSame(fileIoService.getProperties(), fileIoService.getProperties(), "Shared properties shouldn't be read again");
+        assertEquals("key", fileIoService.getProperties().getMovieDbApiKey(), "Changes after writing shouldn't leak into the shared properties");
+
+        PlexProperties copy = fileIoService.readProperties();
+        assertNotSame(fileIoService.getProperties(), copy, "readProperties should hand out a copy");
+        copy.setMovieDbApiKey("edited copy");
+        assertEquals("key", fileIoService.getProperties().getMovieDbApiKey(), "Editing a copy shouldn't change the shared properties");
+    }
+
+    @Test
+    void sharedPropertiesCantBeChanged() {
+        PlexProperties plexProperties = new PlexProperties();
+        PlexServer plexServer = new PlexServer("Friendly Name", "machineIdentifier", "token", "localhost", 32400);
+        plexServer.getPlexLibraries().add(new PlexLibrary());
+        plexProperties.addPlexServer(plexServer);
+        fileIoService.writeProperties(plexProperties);
+
+        PlexProperties shared = fileIoService.getProperties();
+        PlexServer sharedPlexServer = shared.getPlexServers().get(0);
+        assertThrows(UnsupportedOperationException.class, () -> shared.setMovieDbApiKey("changed"), "Shared properties can't be set");
+        assertThrows(UnsupportedOperationException.class, () -> shared.getPlexServers().clear(), "Shared server list can't be changed");
+        assertThrows(UnsupportedOperationException.class, () -> sharedPlexServer.setAddress("changed"), "Shared servers can't be set");
+        assertThrows(UnsupportedOperationException.class, () -> sharedPlexServer.getPlexLibraries().clear(), "Shared library set can't be changed");
+        assertThrows(UnsupportedOperationException.class, () -> shared.getDiscordProperties().getNotificationTypes().clear(), "Notification types can't be changed");
+
+        PlexProperties copy = fileIoService.readProperties();
+        copy.getPlexServers().get(0).setAddress("changed");
+        copy.getPlexServers().get(0).getPlexLibraries().clear();
+        copy.setMovieDbApiKey("changed");
+        assertEquals("localhost", fileIoService.getProperties().getPlexServers().get(0).getAddress(), "Copies should still be editable on their own");
+    }
+
+    @Test
+    void writeIsVisibleWithoutReadingTheFile() throws IOException {
+        PlexProperties plexProperties = fileIoService.readProperties();
+        plexProperties.setMovieDbApiKey("written");
+        fileIoService.writeProperties(plexProperties);
+
+        assertEquals("written", fileIoService.getProperties().getMovieDbApiKey(), "Write should update the shared properties");
+        assertEquals("written", new ObjectMapper().readValue(folder.resolve("gaps.properties").toFile(), PlexProperties.class).getMovieDbApiKey(), "Write should reach the disk");
+    }
+
+    @Test
+    void externalEditIsReloaded() throws Exception {
+        fileIoService.writeProperties(new PlexProperties());
+
+        PlexProperties edited = new PlexProperties();
+        edited.setMovieDbApiKey("edited on disk");
+        Files.write(folder.resolve("gaps.properties"), new ObjectMapper().writeValueAsBytes(edited));
+
+        long deadline = System.currentTimeMillis() + WATCH_TIMEOUT;
+        while (!"edited on disk".equals(fileIoService.getProperties().getMovieDbApiKey()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertEquals("edited on disk", fileIoService.getProperties().getMovieDbApiKey(), "External edit should be picked up");
+    }
+
+    @Test
+    void brokenFileKeepsLastProperties() throws Exception {
+        PlexProperties plexProperties = new PlexProperties();
+        plexProperties.setMovieDbApiKey("good");
+        fileIoService.writeProperties(plexProperties);
+
+        Files.write(folder.resolve("gaps.properties"), "{\"movieDbApiKey\":".getBytes());
+        Thread.sleep(500);
+
+        assertEquals("good", fileIoService.getProperties().getMovieDbApiKey(), "Half written file shouldn't replace the properties");
+    }
+
+    @Test
+    void moviesAreStreamedBackInFull() {
+        Set<BasicMovie> movies = movies();
+        fileIoService.writeMovieIdsToFile(movies);
+
+        Set<BasicMovie> read = fileIoService.readMovieIdsFromFile();
+        assertEquals(movies, read, "Every movie should be read back");
+        BasicMovie collectionMovie = read.stream().filter(movie -> movie.getTmdbId() == 2).findFirst().orElseThrow();
+        assertEquals("Collection", collectionMovie.getCollectionTitle(), "Movie fields should be read back");
+    }
+
+    @Test
+    void gzippedMoviesAreReadInEitherForm() throws IOException {
+        FileIoService gzipFileIoService = newFileIoService(true);
+        List<BasicMovie> movies = new ArrayList<>(movies());
+        gzipFileIoService.writeOwnedMoviesToFile(movies, "machine", 1);
+
+        byte[] header = Arrays.copyOf(Files.readAllBytes(folder.resolve(Paths.get("machine", "1", "ownedMovies.json"))), 2);
+        assertArrayEquals(new byte[]{(byte) 0x1f, (byte) 0x8b}, header, "File should be gzipped");
+        assertEquals(new HashSet<>(movies), new HashSet<>(fileIoService.readOwnedMovies("machine", 1)), "Plain service should read gzipped files");
+
+        fileIoService.writeRecommendedToFile(new HashSet<>(movies), "machine", 1);
+        assertEquals(new HashSet<>(movies), new HashSet<>(gzipFileIoService.readRecommendedMovies("machine", 1)), "Gzip service should read plain files");
+    }
+
+    @Test
+    void movieFileAccessIsTimed() {
+        List<BasicMovie> movies = new ArrayList<>(movies());
+        fileIoService.writeOwnedMoviesToFile(movies, "machine", 1);
+        fileIoService.readOwnedMovies("machine", 1);
+        fileIoService.readOwnedMovies("machine", 1);
+
+        Timer write = meterRegistry.find(AtomicFileWriter.FILE_IO_METRIC).tags("operation", "write", "file", "ownedMovies.json").timer();
+        Timer read = meterRegistry.find(AtomicFileWriter.FILE_IO_METRIC).tags("operation", "read", "file", "ownedMovies.json").timer();
+        assertNotNull(write, "Writes should be timed by file");
+        assertNotNull(read, "Reads should be timed by file");
+        assertEquals(1L, write.count(), "Every write should be timed");
+        assertEquals(2L, read.count(), "Every read should be timed");
+    }
+
+    @Test
+    void brokenMovieFileReadsAsEmpty() throws IOException {
+        Path ownedMovies = folder.resolve(Paths.get("machine", "1", "ownedMovies.json"));
+        Files.createDirectories(ownedMovies.getParent());
+        Files.write(ownedMovies, "[{\"name\":\"Alien\",\"year\":1979},{\"name\"".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(fileIoService.readOwnedMovies("machine", 1).isEmpty(), "Broken file should read as no movies");
+    }
+
+    @Test
+    void bundledMovieIdsStreamLikeTheWholeFile() throws IOException {
+        Path bundled = Paths.get("..", "movieIds.json");
+        assumeTrue(Files.exists(bundled), "Bundled movieIds.json not found");
+        Files.copy(bundled, folder.resolve("movieIds.json"));
+
+        Set<BasicMovie> wholeFile = readWholeFile(folder.resolve("movieIds.json"));
+        Set<BasicMovie> streamed = FileIoService.readMovies(folder.resolve("movieIds.json"), new HashSet<>());
+
+        assertTrue(wholeFile.size() > 1000, "Bundled file should hold thousands of movies");
+        assertEquals(wholeFile.size(), streamed.size(), "Streaming should read every movie");
+        assertEquals(wholeFile, streamed, "Both reads should find the same movies");
+    }
+
+    /**
+     * Reads the bundled movieIds.json the way FileIoService used to, through one big string, and then streamed
+     */
+    @Test
+    @Tag("benchmark")
+    void streamingMovieIdsBenchmark() throws IOException {
+        Path bundled = Paths.get("..", "movieIds.json");
+        assumeTrue(Files.exists(bundled), "Bundled movieIds.json not found");
+        Files.copy(bundled, folder.resolve("movieIds.json"));
+
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Set<BasicMovie> wholeFile = Collections.emptySet();
+        Set<BasicMovie> streamed = Collections.emptySet();
+
+        long wholeFileBytes = 0;
+        long wholeFileStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            wholeFile = readWholeFile(folder.resolve("movieIds.json"));
+            wholeFileBytes += threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+        }
+        long wholeFileMillis = (System.nanoTime() - wholeFileStart) / 1_000_000 / ITERATIONS;
+
+        long streamedBytes = 0;
+        long streamedStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            streamed = FileIoService.readMovies(folder.resolve("movieIds.json"), new HashSet<>());
+            streamedBytes += threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+        }
+        long streamedMillis = (System.nanoTime() - streamedStart) / 1_000_000 / ITERATIONS;
+
+        LOGGER.info("Whole file: {} ms and {} KB allocated per read. Streamed: {} ms and {} KB allocated per read.",
+                wholeFileMillis, wholeFileBytes / 1024 / ITERATIONS, streamedMillis, streamedBytes / 1024 / ITERATIONS);
+        assertEquals(wholeFile, streamed, "Both reads should find the same movies");
+        assertTrue(streamedBytes < wholeFileBytes, "Streaming should allocate less than reading the whole file");
+    }
+
+    private static Set<BasicMovie> readWholeFile(Path file) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+            StringBuilder fullFile = new StringBuilder();
+            String line;
+            while ((line = br.readLine()) != null) {
+                fullFile.append(line);
+            }
+
+            return new ObjectMapper().readValue(fullFile.toString(), new TypeReference<>() {
+            });
+        }
+    }
+
+    private FileIoService newFileIoService(boolean gzip) {
+        GapsConfiguration.Properties properties = new GapsConfiguration.Properties("rssFeed.json", "gaps.properties", "movieIds.json", "ownedMovies.json", "recommendedMovies.json", "movieIds.log", "searchCheckpoint.json");
+        GapsConfiguration gapsConfiguration = new GapsConfiguration("Gaps", "Gaps", "test", false, false, folder.toString(), properties,
+                new GapsConfiguration.Tmdb(4d, 1, 4, 0, 10), new GapsConfiguration.Search(false, 5L, 50, 2, 60L, 500L), new GapsConfiguration.Plex(4, 4, 60L),
+                new GapsConfiguration.Http(180000L, 30000L, 2500L, 2500L, 5, 300L), new GapsConfiguration.Storage(true, 0L, gzip),
+                new GapsConfiguration.Notifications(4, 10000L, 3, 2000L, 500, false));
+        AtomicFileWriter atomicFileWriter = new AtomicFileWriter(gapsConfiguration, meterRegistry);
+        return new FileIoService(gapsConfiguration, atomicFileWriter, new MovieStore(gapsConfiguration, atomicFileWriter), meterRegistry);
+    }
+
+    private static Set<BasicMovie> movies() {
+        Set<BasicMovie> movies = new HashSet<>();
+        movies.add(new BasicMovie.Builder("Alien", 1979).setTmdbId(1).setImdbId("tt0078748").build());
+        movies.add(new BasicMovie.Builder("Aliens", 1986).setTmdbId(2).setImdbId("tt0090605").setCollectionId(8091).setCollectionTitle("Collection").build());
+        movies.add(new BasicMovie.Builder("Zatôichi and the Chest of Gold", 1964).build());
+        return movies;
+    }
+}
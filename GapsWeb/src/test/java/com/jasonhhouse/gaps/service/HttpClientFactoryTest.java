@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.GapsConfiguration;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HttpClientFactoryTest {
+
+    private HttpServer server;
+
+    private HttpClientFactory httpClientFactory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+        httpClientFactory = new HttpClientFactory(new GapsConfiguration.Http(180000L, 30000L, 2500L, 1000L, 5, 300L), 8, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        httpClientFactory.close();
+        server.stop(0);
+    }
+
+    @Test
+    void clientsAreShared() {
+        OkHttpClient plex = httpClientFactory.getClient(HttpClientFactory.Target.PLEX);
+        assertSame(plex, httpClientFactory.getClient(HttpClientFactory.Target.PLEX), "Same client should be returned every time");
+        assertNotSame(plex.connectionPool(), httpClientFactory.getClient(HttpClientFactory.Target.TMDB).connectionPool(), "Each target should have its own pool");
+        assertEquals(180000, plex.readTimeoutMillis(), "Plex timeout should come from the configuration");
+        assertEquals(1000, httpClientFactory.getClient(HttpClientFactory.Target.NOTIFICATIONS).connectTimeoutMillis(), "Notification timeout should come from the configuration");
+        assertEquals(8, plex.dispatcher().getMaxRequestsPerHost(), "Plex should allow as many requests per host as concurrent metadata calls");
+    }
+
+    @Test
+    void connectionsAreReused() throws IOException {
+        OkHttpClient client = httpClientFactory.getClient(HttpClientFactory.Target.RADARR);
+        HttpUrl url = new HttpUrl.Builder()
+                .scheme("http")
+                .host(server.getAddress().getHostString())
+                .port(server.getAddress().getPort())
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+                assertEquals("ok", response.body().string(), "Server should answer");
+            }
+        }
+
+        HttpClientFactory.PoolStats poolStats = httpClientFactory.getPoolStats().get(HttpClientFactory.Target.RADARR);
+        assertEquals(1, poolStats.getConnections(), "Sequential calls should reuse one connection");
+        assertEquals(1, poolStats.getIdleConnections(), "Connection should be kept alive for the next call");
+        assertEquals(0, httpClientFactory.getPoolStats().get(HttpClientFactory.Target.TMDB).getConnections(), "Other pools should be untouched");
+    }
+}
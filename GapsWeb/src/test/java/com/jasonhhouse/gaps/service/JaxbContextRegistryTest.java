@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.plex.libs.MediaContainer;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JaxbContextRegistryTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JaxbContextRegistryTest.class);
+
+    private static final int ITERATIONS = 200;
+
+    private static final String LIBRARIES = "<MediaContainer size=\"2\" title1=\"Plex Library\">" +
+            "<Directory key=\"1\" type=\"movie\" title=\"Movies\" scanner=\"Plex Movie\"><Location id=\"1\" path=\"/movies\"/></Directory>" +
+            "<Directory key=\"2\" type=\"show\" title=\"TV Shows\" scanner=\"Plex TV Series\"><Location id=\"2\" path=\"/tv\"/></Directory>" +
+            "</MediaContainer>";
+
+    private static final String VIDEOS = "<MediaContainer size=\"2\" title1=\"Movies\">" +
+            "<Video ratingKey=\"1\" title=\"Alien\" year=\"1979\"><Media id=\"1\"><Part id=\"1\" file=\"/movies/Alien.mkv\"/></Media></Video>" +
+            "<Video ratingKey=\"2\" title=\"Aliens\" year=\"1986\"/>" +
+            "</MediaContainer>";
+
+    private JaxbContextRegistry jaxbContextRegistry;
+
+    @BeforeEach
+    void setUp() throws JAXBException {
+        jaxbContextRegistry = new JaxbContextRegistry();
+    }
+
+    @Test
+    void unmarshalsBothModels() throws JAXBException {
+        MediaContainer libraries = jaxbContextRegistry.unmarshal(MediaContainer.class, stream(LIBRARIES));
+        assertEquals(2, libraries.getPlexLibraries().size(), "Both directories should be read");
+        assertEquals("Movies", libraries.getPlexLibraries().get(0).getTitle(), "Directory title should be read");
+
+        com.jasonhhouse.plex.video.MediaContainer videos = jaxbContextRegistry.unmarshal(com.jasonhhouse.plex.video.MediaContainer.class, stream(VIDEOS));
+        assertEquals(2, videos.getVideos().size(), "Both videos should be read");
+        assertEquals(1986, videos.getVideos().get(1).getYear().intValue(), "Video year should be read");
+    }
+
+    @Test
+    void unknownType() {
+        assertThrows(IllegalArgumentException.class, () -> jaxbContextRegistry.unmarshal(String.class, stream(VIDEOS)), "Only registered types can be unmarshalled");
+    }
+
+    @Test
+    void concurrentUnmarshalling() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < ITERATIONS; i++) {
+                futures.add(executorService.submit(() -> jaxbContextRegistry.unmarshal(com.jasonhhouse.plex.video.MediaContainer.class, stream(VIDEOS)).getVideos().size()));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(2, future.get().intValue(), "Every thread should read both videos");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        int pooled = jaxbContextRegistry.pooled(com.jasonhhouse.plex.video.MediaContainer.class);
+        assertTrue(pooled >= 1 && pooled <= 8, "Pool should keep between one and eight unmarshallers, kept " + pooled);
+    }
+
+    @Test
+    void unmarshallersAreReused() throws JAXBException {
+        for (int i = 0; i < ITERATIONS; i++) {
+            jaxbContextRegistry.unmarshal(com.jasonhhouse.plex.video.MediaContainer.class, stream(VIDEOS));
+        }
+        assertEquals(1, jaxbContextRegistry.pooled(com.jasonhhouse.plex.video.MediaContainer.class), "One caller at a time should keep reusing one unmarshaller");
+        assertEquals(0, jaxbContextRegistry.pooled(MediaContainer.class), "Types not read yet shouldn't have an unmarshaller");
+    }
+
+    /**
+     * Compares building a JAXBContext for every call, like PlexQueryImpl used to, with the shared contexts
+     */
+    @Test
+    @Tag("benchmark")
+    void sharedContextBenchmark() throws JAXBException {
+        long perCallStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            JAXBContext.newInstance(com.jasonhhouse.plex.video.MediaContainer.class).createUnmarshaller().unmarshal(stream(VIDEOS));
+        }
+        long perCallMicros = (System.nanoTime() - perCallStart) / 1_000 / ITERATIONS;
+
+        long sharedStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            jaxbContextRegistry.unmarshal(com.jasonhhouse.plex.video.MediaContainer.class, stream(VIDEOS));
+        }
+        long sharedMicros = (System.nanoTime() - sharedStart) / 1_000 / ITERATIONS;
+
+        LOGGER.info("New JAXBContext per call: {} microseconds per unmarshal. Shared JAXBContext: {} microseconds per unmarshal.", perCallMicros, sharedMicros);
+        assertTrue(sharedMicros < perCallMicros, "Shared context should be faster than creating one per call");
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jasonhhouse.gaps.BasicMovie;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieStoreTest {
+
+    @TempDir
+    Path folder;
+
+    private Path file;
+
+    private Path legacyFile;
+
+    private MovieStore movieStore;
+
+    @BeforeEach
+    void setUp() {
+        file = folder.resolve("movieIds.log");
+        legacyFile = folder.resolve("movieIds.json");
+        movieStore = newMovieStore();
+    }
+
+    @Test
+    void migratesLegacyJsonOnce() throws IOException {
+        Files.write(legacyFile, new ObjectMapper().writeValueAsBytes(List.of(alien(), aliens(), zatoichi())));
+
+        assertEquals(3, movieStore.size(), "Every legacy movie should be moved over");
+        assertFalse(Files.exists(legacyFile), "Legacy file should be moved aside");
+        assertTrue(Files.exists(folder.resolve("movieIds.json.migrated")), "Legacy file should be kept as a backup");
+
+        Files.write(legacyFile, new ObjectMapper().writeValueAsBytes(List.of(alien())));
+        MovieStore reopened = newMovieStore();
+        assertEquals(3, reopened.size(), "Legacy file should only be read once");
+        assertEquals("Collection", reopened.getByTmdbId(2).getCollectionTitle(), "Movie fields should survive the move");
+    }
+
+    @Test
+    void findsMoviesBySecondaryKeys() {
+        movieStore.add(alien());
+        movieStore.add(aliens());
+        movieStore.add(zatoichi());
+        movieStore.close();
+
+        MovieStore reopened = newMovieStore();
+        assertEquals("Alien", reopened.getByTmdbId(1).getName(), "Should find by TMDB id");
+        assertEquals("Aliens", reopened.getByImdbId("tt0090605").getName(), "Should find by IMDB id");
+        assertNotNull(reopened.getByNameAndYear("Zatôichi and the Chest of Gold", 1964), "Should find by title and year");
+        assertNull(reopened.getByNameAndYear("Zatôichi and the Chest of Gold", 1965), "Year should be part of the key");
+        assertSame(reopened.getByTmdbId(1), reopened.get(new BasicMovie.Builder("Alien", 1979).build()), "Loaded movies should be handed out again");
+    }
+
+    @Test
+    void upsertOnlyAppendsTheChangedMovie() throws IOException {
+        movieStore.add(alien());
+        movieStore.add(aliens());
+        movieStore.add(zatoichi());
+        long before = Files.size(file);
+
+        BasicMovie zatoichi = movieStore.getByNameAndYear("Zatôichi and the Chest of Gold", 1964);
+        zatoichi.setTmdbId(40897);
+        movieStore.upsert(zatoichi);
+        movieStore.flush();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(4, lines.size(), "Only the changed movie should be written again");
+        assertTrue(Files.size(file) - before < before, "Upsert shouldn't rewrite the other movies");
+
+        MovieStore reopened = newMovieStore();
+        assertEquals(3, reopened.size(), "Upsert shouldn't add a record");
+        assertEquals("Zatôichi and the Chest of Gold", reopened.getByTmdbId(40897).getName(), "Latest version should win");
+    }
+
+    @Test
+    void upsertReplacesMatchingMovie() {
+        movieStore.add(alien());
+        movieStore.flush();
+
+        BasicMovie replacement = new BasicMovie.Builder("Alien", 1979).setTmdbId(1).setCollectionId(8091).setCollectionTitle("Alien Collection").build();
+        movieStore.upsert(replacement);
+        movieStore.upsert(aliens());
+
+        assertEquals(2, movieStore.size(), "Matching movie should be replaced and new movie added");
+        assertEquals(List.of("Alien Collection", "Collection"),
+                newMovieStore().readAll().stream().map(BasicMovie::getCollectionTitle).collect(Collectors.toList()), "Movies should be read back in the order they were added");
+    }
+
+    @Test
+    void halfWrittenRecordIsDropped() throws IOException {
+        movieStore.add(alien());
+        movieStore.close();
+        long size = Files.size(file);
+        Files.write(file, "1\t{\"name\":\"Ali".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        MovieStore reopened = newMovieStore();
+        assertEquals(1, reopened.size(), "Half written record should be ignored");
+        assertEquals(size, Files.size(file), "Half written record should be cut off");
+
+        reopened.add(aliens());
+        reopened.close();
+        assertEquals(2, newMovieStore().readAll().size(), "Records after the cut should be readable");
+    }
+
+    @Test
+    void compactsStaleRecords() throws IOException {
+        movieStore.add(alien());
+        movieStore.add(aliens());
+        BasicMovie alien = movieStore.getByTmdbId(1);
+        for (int i = 0; i < 1001; i++) {
+            alien.setCollectionId(i);
+            movieStore.upsert(alien);
+        }
+        movieStore.flush();
+
+        assertEquals(2, Files.readAllLines(file).size(), "Compacting should keep one line per movie");
+        assertEquals(1000, movieStore.getByTmdbId(1).getCollectionId().intValue(), "Compacting should keep the latest version");
+        assertEquals(2, movieStore.size(), "Compacting shouldn't drop movies");
+    }
+
+    @Test
+    void waitsForRunningSearchesBeforeCompacting() throws IOException {
+        movieStore.add(alien());
+        movieStore.add(aliens());
+        movieStore.startSearch();
+        movieStore.startSearch();
+        BasicMovie alien = movieStore.getByTmdbId(1);
+        for (int i = 0; i < 1001; i++) {
+            alien.setCollectionId(i);
+            movieStore.upsert(alien);
+        }
+
+        movieStore.finishSearch();
+        assertEquals(1003, Files.readAllLines(file).size(), "Log shouldn't be compacted while a search is running");
+        assertSame(alien, movieStore.getByTmdbId(1), "Running search should keep the movie it was handed");
+
+        movieStore.finishSearch();
+        assertEquals(2, Files.readAllLines(file).size(), "Log should be compacted once the last search finishes");
+        assertEquals(1000, movieStore.getByTmdbId(1).getCollectionId().intValue(), "Compacting should keep the latest version");
+    }
+
+    @Test
+    void readsRecordsLongerThanTheBuffer() {
+        String overview = "A".repeat(200 * 1024);
+        for (int i = 0; i < 2000; i++) {
+            movieStore.add(new BasicMovie.Builder("Movie " + i, 2000).setTmdbId(i + 10).build());
+        }
+        movieStore.add(new BasicMovie.Builder("Long", 2001).setTmdbId(5).setOverview(overview).build());
+        movieStore.add(zatoichi());
+        movieStore.close();
+
+        MovieStore reopened = newMovieStore();
+        assertEquals(2002, reopened.size(), "Every record should be read back");
+        assertEquals(overview, reopened.getByTmdbId(5).getOverview(), "Record longer than the buffer should be read whole");
+        assertEquals("Movie 1999", reopened.getByTmdbId(2009).getName(), "Records across buffer boundaries should be read whole");
+        assertNotNull(reopened.getByNameAndYear("Zatôichi and the Chest of Gold", 1964), "Record after a long one should be read");
+    }
+
+    @Test
+    void replaceAllRewritesEveryRecord() throws IOException {
+        movieStore.add(alien());
+        movieStore.replaceAll(List.of(aliens(), zatoichi()));
+
+        assertNull(movieStore.getByTmdbId(1), "Replaced movies should be gone");
+        assertEquals(2, movieStore.size(), "New movies should be stored");
+        assertEquals(2, Files.readAllLines(file).size(), "Log should only hold the new movies");
+    }
+
+    private MovieStore newMovieStore() {
+        return new MovieStore(file, legacyFile, new AtomicFileWriter(false, 0L), false);
+    }
+
+    private static BasicMovie alien() {
+        return new BasicMovie.Builder("Alien", 1979).setTmdbId(1).setImdbId("tt0078748").build();
+    }
+
+    private static BasicMovie aliens() {
+        return new BasicMovie.Builder("Aliens", 1986).setTmdbId(2).setImdbId("tt0090605").setCollectionId(8091).setCollectionTitle("Collection").build();
+    }
+
+    private static BasicMovie zatoichi() {
+        return new BasicMovie.Builder("Zatôichi and the Chest of Gold", 1964).build();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.gaps.notifications.GapsEvent;
+import com.jasonhhouse.plex.libs.PlexLibrary;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NotificationDigestTest {
+
+    @Test
+    void summaryGroupsEventsByServerAndLibrary() {
+        PlexServer plexServer = new PlexServer();
+        plexServer.setFriendlyName("Den");
+        PlexLibrary movies = new PlexLibrary();
+        movies.setTitle("Movies");
+        PlexLibrary kids = new PlexLibrary();
+        kids.setTitle("Kids");
+
+        List<GapsEvent> gapsEvents = List.of(
+                GapsEvent.tmdbConnectionSuccessful(),
+                GapsEvent.plexServerConnectSuccessful(plexServer),
+                GapsEvent.plexLibraryScanSuccessful(plexServer, movies),
+                GapsEvent.plexLibraryScanSuccessful(plexServer, kids),
+                GapsEvent.recommendedMoviesSearchStarted(plexServer, movies),
+                GapsEvent.recommendedMoviesSearchStarted(plexServer, kids),
+                GapsEvent.recommendedMoviesSearchFinished(plexServer, movies),
+                GapsEvent.recommendedMoviesSearchFailed(plexServer, kids, "Timed out"));
+
+        assertEquals("5 succeeded, 1 failed\n" +
+                "TMDB: connected\n" +
+                "Den: connected\n" +
+                "Den / Movies: scanned, search finished\n" +
+                "Den / Kids: scanned, search failed\n" +
+                "\n" +
+                "Failures:\n" +
+                "Scanning Plex Server Den on Library Kids Failed Timed out", NotificationDigest.summarize(gapsEvents), "Summary should list each server and library once");
+        assertEquals("ERROR", NotificationDigest.getLevel(gapsEvents), "Any failure should raise the level");
+    }
+
+    @Test
+    void unfinishedSearchesStayInTheSummary() {
+        PlexServer plexServer = new PlexServer();
+        plexServer.setFriendlyName("Den");
+        PlexLibrary movies = new PlexLibrary();
+        movies.setTitle("Movies");
+
+        List<GapsEvent> gapsEvents = List.of(GapsEvent.recommendedMoviesSearchStarted(plexServer, movies));
+
+        assertEquals("1 succeeded, 0 failed\nDen / Movies: search started", NotificationDigest.summarize(gapsEvents), "A search with no end should still be listed");
+        assertEquals("INFO", NotificationDigest.getLevel(gapsEvents), "Nothing failed");
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotificationDispatcherTest {
+
+    private NotificationDispatcher notificationDispatcher;
+
+    @AfterEach
+    void tearDown() {
+        notificationDispatcher.close();
+    }
+
+    @Test
+    void agentsAreSentToAtTheSameTime() {
+        notificationDispatcher = new NotificationDispatcher(2, 5000L, 1, 0L, 10);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        CompletableFuture<Boolean> discord = notificationDispatcher.send("Discord", () -> {
+            bothStarted.countDown();
+            return bothStarted.await(2, TimeUnit.SECONDS);
+        });
+        CompletableFuture<Boolean> email = notificationDispatcher.send("Email", () -> {
+            bothStarted.countDown();
+            return bothStarted.await(2, TimeUnit.SECONDS);
+        });
+
+        assertTrue(discord.join(), "Discord should be sent while email is sending");
+        assertTrue(email.join(), "Email should be sent while discord is sending");
+    }
+
+    @Test
+    void slowAgentMissesTheDeadline() {
+        notificationDispatcher = new NotificationDispatcher(1, 50L, 1, 0L, 10);
+
+        long start = System.nanoTime();
+        Boolean sent = notificationDispatcher.send("Email", () -> {
+            Thread.sleep(5000);
+            return true;
+        }).join();
+
+        assertFalse(sent, "Agent slower than the deadline should count as not sent");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000, "Should not wait for the slow agent");
+    }
+
+    @Test
+    void deadlineStartsWhenTheSendStarts() {
+        notificationDispatcher = new NotificationDispatcher(1, 500L, 1, 0L, 10);
+
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sends.add(notificationDispatcher.send("Telegram " + i, () -> {
+                Thread.sleep(200);
+                return true;
+            }));
+        }
+
+        for (int i = 0; i < sends.size(); i++) {
+            assertTrue(sends.get(i).join(), "Message " + i + " shouldn't run out of time while waiting for the sender");
+        }
+    }
+
+    @Test
+    void queuedMessagesAreRetried() throws InterruptedException {
+        notificationDispatcher = new NotificationDispatcher(1, 1000L, 3, 1L, 10);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch sent = new CountDownLatch(1);
+
+        assertTrue(notificationDispatcher.enqueue("Slack", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Webhook unavailable");
+            }
+            sent.countDown();
+            return true;
+        }), "Message should be queued");
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS), "Third attempt should succeed");
+        assertEquals(3, attempts.get(), "Two failures then a success expected");
+    }
+
+    @Test
+    void lateAgentThatAcceptsIsNotRetried() throws InterruptedException {
+        notificationDispatcher = new NotificationDispatcher(1, 50L, 3, 1L, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertTrue(notificationDispatcher.enqueue("Discord", () -> {
+            attempts.incrementAndGet();
+            ignoreInterrupts(300);
+            return true;
+        }), "Message should be queued");
+
+        for (int i = 0; i < 100 && notificationDispatcher.getOutboxCount() > 0; i++) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(0, notificationDispatcher.getOutboxCount(), "Message should have left the outbox");
+        assertEquals(1, attempts.get(), "Late answer that was accepted shouldn't be sent again");
+    }
+
+    @Test
+    void deadlineDoesNotInterruptTheNextMessage() {
+        notificationDispatcher = new NotificationDispatcher(1, 50L, 1, 0L, 10);
+
+        CompletableFuture<Boolean> late = notificationDispatcher.send("Email", () -> {
+            ignoreInterrupts(200);
+            return true;
+        });
+        CompletableFuture<Boolean> next = notificationDispatcher.send("Gotify", () -> {
+            Thread.sleep(20);
+            return true;
+        });
+
+        assertFalse(late.join(), "First message should miss the deadline");
+        assertTrue(next.join(), "Next message on the same thread shouldn't be interrupted");
+    }
+
+    @Test
+    void fullOutboxDropsMessages() {
+        notificationDispatcher = new NotificationDispatcher(1, 5000L, 1, 0L, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        assertTrue(notificationDispatcher.enqueue("Gotify", () -> release.await(5, TimeUnit.SECONDS)), "First message fits in the outbox");
+        assertFalse(notificationDispatcher.enqueue("Gotify", () -> true), "Second message should be dropped");
+        assertEquals(1, notificationDispatcher.getOutboxCount(), "Only the first message should be waiting");
+        release.countDown();
+    }
+
+    /**
+     * Stands in for an agent blocked somewhere an interrupt can't reach
+     */
+    private static void ignoreInterrupts(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end) {
+            LockSupport.parkNanos(end - System.nanoTime());
+        }
+    }
+}
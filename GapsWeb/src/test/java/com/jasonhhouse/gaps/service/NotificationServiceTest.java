@@ -11,22 +11,33 @@
 
 package com.jasonhhouse.gaps.service;
 
+import com.jasonhhouse.gaps.NotificationType;
 import com.jasonhhouse.gaps.PlexServer;
 import com.jasonhhouse.gaps.notifications.DiscordNotificationAgent;
 import com.jasonhhouse.gaps.notifications.EmailNotificationAgent;
+import com.jasonhhouse.gaps.notifications.GapsEvent;
 import com.jasonhhouse.gaps.notifications.GotifyNotificationAgent;
 import com.jasonhhouse.gaps.notifications.NotificationAgent;
 import com.jasonhhouse.gaps.notifications.PushBulletNotificationAgent;
 import com.jasonhhouse.gaps.notifications.PushOverNotificationAgent;
 import com.jasonhhouse.gaps.notifications.SlackNotificationAgent;
 import com.jasonhhouse.gaps.notifications.TelegramNotificationAgent;
+import com.jasonhhouse.gaps.properties.DiscordProperties;
 import com.jasonhhouse.gaps.properties.NotificationProperties;
+import com.jasonhhouse.plex.libs.PlexLibrary;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class NotificationServiceTest {
@@ -54,15 +65,164 @@ class NotificationServiceTest {
         plexServer.setFriendlyName("Friendly Name");
         String error = "";
 
-        Boolean result = notificationService.plexServerConnectFailed(plexServer, error);
+        Boolean result = notificationService.publish(GapsEvent.plexServerConnectFailed(plexServer, error));
         assertTrue(result, "Should have sent plex server connect failed message");
     }
 
     @Test
     public void tmdbConnectionFailed() {
         if (notificationService.isAnyNotificationAgentEnabled()) {
-            Boolean result = notificationService.tmdbConnectionFailed("");
+            Boolean result = notificationService.publish(GapsEvent.tmdbConnectionFailed(""));
             assertFalse(result, "Should have failed to send plex server connect failed");
         }
     }
+
+    @Test
+    void eventsOnlyReachSubscribedAgents() throws InterruptedException {
+        RecordingAgent searches = new RecordingAgent(1, true, List.of(NotificationType.GAPS_MISSING_COLLECTIONS));
+        RecordingAgent disabled = new RecordingAgent(2, false, List.of(NotificationType.GAPS_MISSING_COLLECTIONS));
+        NotificationService notificationService = new NotificationService(List.of(searches, disabled));
+
+        PlexServer plexServer = new PlexServer();
+        plexServer.setFriendlyName("Friendly Name");
+        assertTrue(notificationService.publish(GapsEvent.plexServerConnectSuccessful(plexServer)), "Nothing to queue still counts as queued");
+        assertTrue(notificationService.publish(GapsEvent.tmdbConnectionSuccessful()), "Nothing to queue still counts as queued");
+        assertTrue(notificationService.publish(GapsEvent.test()), "Test event should be queued");
+
+        assertEquals("Test Successful", searches.messages.poll(5, TimeUnit.SECONDS), "Only the test event should reach the agent");
+        assertNull(searches.messages.poll(100, TimeUnit.MILLISECONDS), "Unsubscribed events should not reach the agent");
+        assertTrue(disabled.messages.isEmpty(), "Disabled agent should not be sent anything");
+    }
+
+    @Test
+    void subscriptionsFollowChangedProperties() throws InterruptedException {
+        RecordingAgent agent = new RecordingAgent(1, false, List.of(NotificationType.TMDB_API_CONNECTION));
+        NotificationService notificationService = new NotificationService(List.of(agent));
+        assertFalse(notificationService.isAnyNotificationAgentEnabled(), "Agent starts disabled");
+
+        agent.discordProperties = new DiscordProperties(true, List.of(NotificationType.TMDB_API_CONNECTION), null);
+        assertTrue(notificationService.isAnyNotificationAgentEnabled(), "New properties should enable the agent");
+
+        notificationService.publish(GapsEvent.tmdbConnectionFailed("Invalid key"));
+        assertEquals("TMDB Connection Failed. Invalid key", agent.messages.poll(5, TimeUnit.SECONDS), "Agent should be sent the event once enabled");
+    }
+
+    @Test
+    void digestSendsOneSummaryPerAgent() throws InterruptedException {
+        RecordingAgent agent = new RecordingAgent(1, true, List.of(NotificationType.PLEX_METADATA_UPDATE, NotificationType.GAPS_MISSING_COLLECTIONS));
+        NotificationService notificationService = new NotificationService(List.of(agent));
+
+        PlexServer plexServer = new PlexServer();
+        plexServer.setFriendlyName("Friendly Name");
+        try (NotificationDigest notificationDigest = notificationService.startDigest()) {
+            for (int key = 1; key <= 12; key++) {
+                PlexLibrary plexLibrary = new PlexLibrary();
+                plexLibrary.setTitle("Library " + key);
+                notificationService.publish(GapsEvent.plexLibraryScanSuccessful(plexServer, plexLibrary), notificationDigest);
+                notificationService.publish(GapsEvent.recommendedMoviesSearchStarted(plexServer, plexLibrary), notificationDigest);
+                notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, plexLibrary), notificationDigest);
+            }
+            assertNull(agent.messages.poll(100, TimeUnit.MILLISECONDS), "Nothing should be sent while the digest is open");
+        }
+
+        String summary = agent.messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(summary, "Summary should be sent when the digest closes");
+        assertTrue(summary.startsWith("24 succeeded, 0 failed"), "Summary should start with the totals");
+        assertTrue(summary.contains("Friendly Name / Library 12: scanned, search finished"), "Summary should have a line per library");
+        assertNull(agent.messages.poll(100, TimeUnit.MILLISECONDS), "Only one message expected");
+
+        notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, new PlexLibrary()));
+        assertNotNull(agent.messages.poll(5, TimeUnit.SECONDS), "Events after the digest closes are sent on their own");
+    }
+
+    @Test
+    void eventsOutsideTheDigestAreSentOnTheirOwn() throws InterruptedException {
+        RecordingAgent agent = new RecordingAgent(1, true, List.of(NotificationType.GAPS_MISSING_COLLECTIONS));
+        NotificationService notificationService = new NotificationService(List.of(agent));
+
+        PlexServer plexServer = new PlexServer();
+        plexServer.setFriendlyName("Friendly Name");
+        PlexLibrary scheduled = new PlexLibrary();
+        scheduled.setTitle("Scheduled");
+        PlexLibrary manual = new PlexLibrary();
+        manual.setTitle("Manual");
+        try (NotificationDigest notificationDigest = notificationService.startDigest()) {
+            notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, scheduled), notificationDigest);
+            notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, manual));
+
+            String message = agent.messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "A search started from the page should be sent while the digest is open");
+            assertTrue(message.contains("Manual"), "Only the search outside the digest should be sent");
+            assertNull(agent.messages.poll(100, TimeUnit.MILLISECONDS), "The scheduled search should wait for the summary");
+        }
+
+        String summary = agent.messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(summary, "Summary should be sent when the digest closes");
+        assertTrue(summary.startsWith("1 succeeded, 0 failed"), "Summary should only count its own run");
+        assertFalse(summary.contains("Manual"), "Summary shouldn't include the search outside the digest");
+    }
+
+    @Test
+    void digestsAreSummarisedSeparately() throws InterruptedException {
+        RecordingAgent agent = new RecordingAgent(1, true, List.of(NotificationType.GAPS_MISSING_COLLECTIONS));
+        NotificationService notificationService = new NotificationService(List.of(agent));
+
+        PlexServer plexServer = new PlexServer();
+        plexServer.setFriendlyName("Friendly Name");
+        PlexLibrary first = new PlexLibrary();
+        first.setTitle("First");
+        PlexLibrary second = new PlexLibrary();
+        second.setTitle("Second");
+        NotificationDigest firstDigest = notificationService.startDigest();
+        NotificationDigest secondDigest = notificationService.startDigest();
+        notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, first), firstDigest);
+        notificationService.publish(GapsEvent.recommendedMoviesSearchFinished(plexServer, second), secondDigest);
+
+        secondDigest.close();
+        String summary = agent.messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(summary, "Second digest should be sent when it closes");
+        assertTrue(summary.contains("Second") && !summary.contains("First"), "Each digest should only hold its own events");
+        assertNull(agent.messages.poll(100, TimeUnit.MILLISECONDS), "First digest is still open");
+
+        firstDigest.close();
+        summary = agent.messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(summary, "First digest should be sent when it closes");
+        assertTrue(summary.contains("First") && !summary.contains("Second"), "Each digest should only hold its own events");
+    }
+
+    private static final class RecordingAgent implements NotificationAgent<DiscordProperties> {
+        private final int id;
+        private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        private volatile DiscordProperties discordProperties;
+
+        private RecordingAgent(int id, boolean enabled, List<NotificationType> notificationTypes) {
+            this.id = id;
+            this.discordProperties = new DiscordProperties(enabled, notificationTypes, null);
+        }
+
+        @Override
+        public @NotNull Integer getId() {
+            return id;
+        }
+
+        @Override
+        public @NotNull String getName() {
+            return "Recording Agent " + id;
+        }
+
+        @Override
+        public @NotNull Boolean isEnabled() {
+            return discordProperties.getEnabled();
+        }
+
+        @Override
+        public @NotNull Boolean sendMessage(@NotNull NotificationType notificationType, @NotNull String level, @NotNull String title, @NotNull String message) {
+            return messages.add(message);
+        }
+
+        @Override
+        public @NotNull DiscordProperties getNotificationProperties() {
+            return discordProperties;
+        }
+    }
 }
\ No newline at end of file
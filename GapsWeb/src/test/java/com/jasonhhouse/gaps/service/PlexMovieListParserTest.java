@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.IdSource;
+import com.jasonhhouse.gaps.PreviousMovieIndex;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlexMovieListParserTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlexMovieListParserTest.class);
+
+    private static final int LARGE_LIBRARY = 50_000;
+
+    private static final int SAMPLE_EVERY = 5_000;
+
+    private static final String LIBRARY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<MediaContainer size=\"3\" librarySectionTitle=\"Movies\">\n" +
+            "  <Video ratingKey=\"1\" key=\"/library/metadata/1\" guid=\"com.plexapp.agents.themoviedb://348?lang=en\" title=\"Alien\" summary=\"In space\" year=\"1979\" thumb=\"/thumb/1\">\n" +
+            "    <Media id=\"1\"><Part id=\"1\" file=\"/movies/Alien.mkv\"/></Media>\n" +
+            "  </Video>\n" +
+            "  <Video ratingKey=\"2\" key=\"/library/metadata/2\" guid=\"com.plexapp.agents.imdb://tt0090605?lang=en\" title=\"Aliens: Special Edition\" year=\"1986\"/>\n" +
+            "  <Video ratingKey=\"3\" key=\"/library/metadata/3\" guid=\"local://3\" title=\"Home Movie\"/>\n" +
+            "</MediaContainer>";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void parsesVideos() throws Exception {
+        List<BasicMovie> basicMovies = new ArrayList<>();
+        int count = new PlexMovieListParser(PreviousMovieIndex.empty()).parse(stream(LIBRARY), basicMovies::add);
+
+        assertEquals(2, count, "Video without a year should be skipped");
+        BasicMovie alien = basicMovies.get(0);
+        assertEquals("Alien", alien.getName(), "Title should be read");
+        assertEquals(1979, alien.getYear().intValue(), "Year should be read");
+        assertEquals(348, alien.getTmdbId().intValue(), "TMDB id should come from the guid");
+        assertEquals(1, alien.getRatingKey().intValue(), "Rating key should be read");
+        assertEquals("/library/metadata/1", alien.getKey(), "Key should be read");
+        assertEquals("/thumb/1", alien.getPosterUrl(), "Thumb should be read");
+        assertEquals("In space", alien.getOverview(), "Summary should be read");
+
+        BasicMovie aliens = basicMovies.get(1);
+        assertEquals("Aliens Special Edition", aliens.getName(), "Colons should be removed from the title");
+        assertEquals("tt0090605", aliens.getImdbId(), "IMDB id should come from the guid");
+        assertEquals(-1, aliens.getTmdbId().intValue(), "No TMDB id for IMDB agent");
+    }
+
+    @Test
+    void keepsPreviousIds() throws Exception {
+        BasicMovie previous = new BasicMovie.Builder("Aliens Special Edition", 1986).setTmdbId(679).setCollectionId(8091).build();
+        PreviousMovieIndex previousMovies = PreviousMovieIndex.of(List.of(previous));
+
+        List<BasicMovie> basicMovies = new ArrayList<>();
+        new PlexMovieListParser(previousMovies).parse(stream(LIBRARY), basicMovies::add);
+
+        assertEquals(679, basicMovies.get(1).getTmdbId().intValue(), "TMDB id should be carried over");
+        assertEquals(8091, basicMovies.get(1).getCollectionId().intValue(), "Collection should be carried over");
+        assertEquals(IdSource.PREVIOUS_SCAN, basicMovies.get(1).getTmdbIdSource(), "TMDB id should be marked as carried over");
+        assertEquals(IdSource.UNKNOWN, basicMovies.get(1).getImdbIdSource(), "Missing IMDB id has no source");
+    }
+
+    @Test
+    void readsGuidChildren() throws Exception {
+        String library = "<MediaContainer size=\"3\">" +
+                "<Video ratingKey=\"1\" guid=\"plex://movie/5d776825880197001ec90a3e\" title=\"Alien\" year=\"1979\">" +
+                "<Media id=\"1\"><Part id=\"1\"><Guid id=\"tmdb://1\"/></Part></Media>" +
+                "<Guid id=\"imdb://tt0078748\"/><Guid id=\"tmdb://348\"/><Guid id=\"tvdb://3\"/>" +
+                "</Video>" +
+                "<Video ratingKey=\"2\" guid=\"plex://movie/1\" title=\"No Year\"><Guid id=\"tmdb://2\"/></Video>" +
+                "<Video ratingKey=\"3\" guid=\"plex://movie/2\" title=\"Unmatched\" year=\"2001\"/>" +
+                "</MediaContainer>";
+        BasicMovie previous = new BasicMovie.Builder("Alien", 1979).setTmdbId(1).setCollectionId(8091).build();
+
+        List<BasicMovie> basicMovies = new ArrayList<>();
+        int count = new PlexMovieListParser(PreviousMovieIndex.of(List.of(previous))).parse(stream(library), basicMovies::add);
+
+        assertEquals(2, count, "Video without a year should be skipped");
+        BasicMovie alien = basicMovies.get(0);
+        assertEquals("tt0078748", alien.getImdbId(), "IMDB id should come from the Guid children");
+        assertEquals(348, alien.getTmdbId().intValue(), "Guid children should win over ids from an earlier scan");
+        assertEquals(8091, alien.getCollectionId().intValue(), "Collection should be carried over");
+        assertEquals(IdSource.PLEX_GUID, alien.getTmdbIdSource(), "TMDB id should be marked as read from the Guids");
+        assertEquals(IdSource.PLEX_GUID, alien.getImdbIdSource(), "IMDB id should be marked as read from the Guids");
+
+        BasicMovie unmatched = basicMovies.get(1);
+        assertEquals("Unmatched", unmatched.getName(), "Video after one with children should be read");
+        assertEquals(-1, unmatched.getTmdbId().intValue(), "Video without Guid children has no ids");
+    }
+
+    @Test
+    void missingTitle() {
+        String library = "<MediaContainer><Video year=\"1979\"/></MediaContainer>";
+        assertThrows(NullPointerException.class, () -> new PlexMovieListParser(PreviousMovieIndex.empty()).parse(stream(library), basicMovie -> {
+        }), "Video without a title is an error");
+    }
+
+    /**
+     * Compares the heap the StAX parser holds on to with the DOM and XPath parsing it replaced, over a synthetic 50k video
+     * library. Streaming is sampled every few thousand videos as it goes, the DOM once the document is built.
+     */
+    @Test
+    @Tag("benchmark")
+    void largeLibraryBenchmark() throws Exception {
+        Path library = folder.resolve("library.xml");
+        try (Writer writer = Files.newBufferedWriter(library, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<MediaContainer size=\"" + LARGE_LIBRARY + "\">\n");
+            for (int i = 0; i < LARGE_LIBRARY; i++) {
+                writer.write("  <Video ratingKey=\"" + i + "\" key=\"/library/metadata/" + i + "\" guid=\"com.plexapp.agents.themoviedb://" + i + "?lang=en\" title=\"Movie " + i + "\" summary=\"A movie summary long enough to look like the ones Plex returns for a real title in a library.\" year=\"" + (1950 + i % 70) + "\" thumb=\"/library/metadata/" + i + "/thumb/1600000000\">\n");
+                writer.write("    <Media id=\"" + i + "\" duration=\"7200000\" videoResolution=\"1080\"><Part id=\"" + i + "\" file=\"/movies/Movie " + i + ".mkv\" size=\"8000000000\"/></Media>\n");
+                writer.write("  </Video>\n");
+            }
+            writer.write("</MediaContainer>\n");
+        }
+
+        AtomicInteger streamed = new AtomicInteger();
+        AtomicLong staxPeak = new AtomicLong();
+        long staxBaseline = retainedHeap();
+        try (InputStream inputStream = Files.newInputStream(library)) {
+            new PlexMovieListParser(PreviousMovieIndex.empty()).parse(inputStream, basicMovie -> {
+                if (streamed.incrementAndGet() % SAMPLE_EVERY == 0) {
+                    staxPeak.accumulateAndGet(retainedHeap() - staxBaseline, Math::max);
+                }
+            });
+        }
+
+        long domBaseline = retainedHeap();
+        String body = Files.readString(library);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        NodeList nodeList = (NodeList) XPathFactory.newInstance().newXPath().compile("/MediaContainer/Video").evaluate(document, XPathConstants.NODESET);
+        long domRetained = retainedHeap() - domBaseline;
+
+        LOGGER.info("StAX: {} videos holding at most {} MB. DOM: {} videos holding {} MB.",
+                streamed.get(), staxPeak.get() / 1_048_576, nodeList.getLength(), domRetained / 1_048_576);
+
+        assertEquals(LARGE_LIBRARY, streamed.get(), "Every video should be streamed");
+        assertEquals(LARGE_LIBRARY, nodeList.getLength(), "DOM should see every video too");
+        assertTrue(staxPeak.get() * 10 < domRetained, "Streaming should hold a small fraction of the heap the DOM does");
+    }
+
+    /**
+     * @return Heap still in use after a full collection
+     */
+    private static long retainedHeap() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.GapsUrlGenerator;
+import com.jasonhhouse.gaps.IdSource;
+import com.jasonhhouse.gaps.PlexServer;
+import com.jasonhhouse.plex.libs.PlexLibrary;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.bind.JAXBException;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlexQueryImplTest {
+
+    private static final int MAX_CONCURRENT_REQUESTS = 3;
+
+    private static final int MOVIES = 30;
+
+    private static final int FAILING_RATING_KEY = 7;
+
+    private static final int BROKEN_RATING_KEY = 11;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private AtomicInteger inFlight;
+
+    private AtomicInteger maxInFlight;
+
+    private AtomicInteger requests;
+
+    private JaxbContextRegistry jaxbContextRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException, JAXBException {
+        jaxbContextRegistry = new JaxbContextRegistry();
+        inFlight = new AtomicInteger();
+        maxInFlight = new AtomicInteger();
+        requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/library/metadata", exchange -> {
+            requests.incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(20);
+                String path = exchange.getRequestURI().getPath();
+                int ratingKey = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+
+                if (ratingKey == FAILING_RATING_KEY) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+
+                String xml = ratingKey == BROKEN_RATING_KEY ? "<MediaContainer><Video>" :
+                        "<MediaContainer size=\"1\"><Video ratingKey=\"" + ratingKey + "\">" +
+                                "<Guid id=\"imdb://tt" + ratingKey + "\"/><Guid id=\"tmdb://" + (ratingKey * 10) + "\"/><Guid id=\"tvdb://1\"/>" +
+                                "</Video></MediaContainer>";
+                byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS * 2);
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void findAllMovieIds() {
+        PlexServer plexServer = plexServer();
+        PlexLibrary plexLibrary = plexLibrary();
+
+        List<BasicMovie> basicMovies = new ArrayList<>();
+        for (int i = 1; i <= MOVIES; i++) {
+            basicMovies.add(new BasicMovie.Builder("Movie " + i, 2000).setRatingKey(i).build());
+        }
+        basicMovies.add(new BasicMovie.Builder("No Key", 2000).build());
+
+        PlexQueryImpl plexQuery = new PlexQueryImpl(new GapsUrlGenerator(), new OkHttpClient(), MAX_CONCURRENT_REQUESTS, jaxbContextRegistry);
+        plexQuery.findAllMovieIds(basicMovies, plexServer, plexLibrary);
+
+        for (BasicMovie basicMovie : basicMovies) {
+            int ratingKey = basicMovie.getRatingKey();
+            if (ratingKey == -1 || ratingKey == FAILING_RATING_KEY || ratingKey == BROKEN_RATING_KEY) {
+                assertEquals(-1, basicMovie.getTmdbId().intValue(), "Movies that failed should keep their ids");
+            } else {
+                assertEquals("tt" + ratingKey, basicMovie.getImdbId(), "Should read the imdb id from the Guid");
+                assertEquals(ratingKey * 10, basicMovie.getTmdbId().intValue(), "Should read the tmdb id from the Guid");
+            }
+        }
+
+        assertTrue(maxInFlight.get() <= MAX_CONCURRENT_REQUESTS, "Should never send more requests than allowed at once");
+        assertTrue(maxInFlight.get() > 1, "Should fetch metadata in parallel");
+    }
+
+    @Test
+    void onlyFetchesMoviesWithoutGuids() {
+        List<BasicMovie> basicMovies = new ArrayList<>();
+        BasicMovie listedTmdb = new BasicMovie.Builder("Listed Tmdb", 2000).setRatingKey(1).build();
+        listedTmdb.setTmdbId(100, IdSource.PLEX_GUID);
+        basicMovies.add(listedTmdb);
+        BasicMovie listedImdb = new BasicMovie.Builder("Listed Imdb", 2000).setRatingKey(2).build();
+        listedImdb.setImdbId("tt100", IdSource.PLEX_GUID);
+        basicMovies.add(listedImdb);
+        basicMovies.add(new BasicMovie.Builder("Unlisted", 2000).setRatingKey(3).build());
+        BasicMovie carriedOver = new BasicMovie.Builder("Carried Over", 2000).setRatingKey(4).build();
+        carriedOver.setTmdbId(999, IdSource.PREVIOUS_SCAN);
+        basicMovies.add(carriedOver);
+
+        new PlexQueryImpl(new GapsUrlGenerator(), new OkHttpClient(), MAX_CONCURRENT_REQUESTS, jaxbContextRegistry).findAllMovieIds(basicMovies, plexServer(), plexLibrary());
+
+        assertEquals(2, requests.get(), "Movies that already have ids from the listing's Guids shouldn't be fetched");
+        assertEquals(100, listedTmdb.getTmdbId().intValue(), "Ids from the listing should be kept");
+        assertEquals(30, basicMovies.get(2).getTmdbId().intValue(), "Movie without ids should be fetched");
+        assertEquals(40, carriedOver.getTmdbId().intValue(), "Ids carried over from an earlier scan should be refreshed");
+        assertEquals(IdSource.PLEX_GUID, carriedOver.getTmdbIdSource(), "Refreshed id should be marked as read from the Guids");
+    }
+
+    private PlexServer plexServer() {
+        return new PlexServer("Test", "machine", "token", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    private static PlexLibrary plexLibrary() {
+        PlexLibrary plexLibrary = new PlexLibrary();
+        plexLibrary.setKey(1);
+        plexLibrary.setTitle("Movies");
+        plexLibrary.setScanner("Plex Movie");
+        return plexLibrary;
+    }
+}
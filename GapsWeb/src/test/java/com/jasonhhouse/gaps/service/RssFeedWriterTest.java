@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RssFeedWriterTest {
+
+    private static final long WAIT_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private static final String MACHINE_IDENTIFIER = "machine";
+
+    private static final Integer KEY = 1;
+
+    private List<Set<BasicMovie>> writes;
+
+    private IO fileIoService;
+
+    private Set<BasicMovie> recommended;
+
+    private RssFeedWriter rssFeedWriter;
+
+    @BeforeEach
+    void setUp() {
+        writes = new CopyOnWriteArrayList<>();
+        fileIoService = new FakeIoService() {
+            @Override
+            public void writeRssFile(@NotNull String machineIdentifier, @NotNull Integer key, @NotNull Set<BasicMovie> recommended) {
+                writes.add(recommended);
+            }
+        };
+        recommended = Collections.synchronizedSet(new LinkedHashSet<>());
+    }
+
+    @AfterEach
+    void tearDown() {
+        rssFeedWriter.close();
+    }
+
+    @Test
+    void writesOnceEnoughMoviesAreFound() throws InterruptedException {
+        rssFeedWriter = new RssFeedWriter(fileIoService, TimeUnit.MINUTES.toMillis(10), 3);
+        rssFeedWriter.start(MACHINE_IDENTIFIER, KEY, recommended);
+
+        for (int i = 0; i < 3; i++) {
+            recommend(i);
+        }
+        waitForWrites(1);
+
+        recommend(3);
+        recommend(4);
+        Thread.sleep(200);
+        assertEquals(1, writes.size(), "Feed shouldn't be written again until enough movies are found");
+        assertTrue(writes.get(0).size() >= 3, "Feed should hold the movies found so far");
+
+        rssFeedWriter.finish(MACHINE_IDENTIFIER, KEY);
+        assertEquals(2, writes.size(), "Finishing should write the feed");
+        assertEquals(5, writes.get(1).size(), "Last write should hold every movie");
+    }
+
+    @Test
+    void writesAfterDelay() {
+        rssFeedWriter = new RssFeedWriter(fileIoService, 100, 1000);
+        rssFeedWriter.start(MACHINE_IDENTIFIER, KEY, recommended);
+
+        recommend(1);
+        recommend(2);
+        waitForWrites(1);
+
+        assertEquals(1, writes.size(), "Movies found close together should be written together");
+        assertEquals(2, writes.get(0).size(), "Delayed write should hold both movies");
+    }
+
+    @Test
+    void finishWritesWithoutNewMovies() {
+        rssFeedWriter = new RssFeedWriter(fileIoService, TimeUnit.MINUTES.toMillis(10), 50);
+        recommended.add(new BasicMovie.Builder("Earlier", 2000).build());
+        rssFeedWriter.start(MACHINE_IDENTIFIER, KEY, recommended);
+
+        rssFeedWriter.finish(MACHINE_IDENTIFIER, KEY);
+        rssFeedWriter.added(MACHINE_IDENTIFIER, KEY);
+
+        assertEquals(1, writes.size(), "Finishing should write the feed once");
+        assertEquals(1, writes.get(0).size(), "Earlier recommendations should be kept");
+    }
+
+    private void recommend(int year) {
+        recommended.add(new BasicMovie.Builder("Movie " + year, 2000 + year).build());
+        rssFeedWriter.added(MACHINE_IDENTIFIER, KEY);
+    }
+
+    private void waitForWrites(int count) {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (writes.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(count, writes.size(), "Feed should have been written");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.SearchCheckpoint;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchCheckpointServiceTest {
+
+    private static final String MACHINE_IDENTIFIER = "machine";
+    private static final Integer KEY = 1;
+
+    @TempDir
+    Path folder;
+
+    private SearchCheckpointService searchCheckpointService;
+
+    @BeforeEach
+    void setUp() {
+        searchCheckpointService = new SearchCheckpointService(folder, "searchCheckpoint.json", new AtomicFileWriter(false, 0));
+    }
+
+    @Test
+    void checkpointIsReadBack() {
+        BasicMovie alien = new BasicMovie.Builder("Alien", 1979).setTmdbId(348).setCollectionId(8091).setCollectionTitle("Alien Collection").build();
+        BasicMovie aliens = new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).setCollectionId(8091).build();
+        BasicMovie alien3 = new BasicMovie.Builder("Alien³", 1992).setTmdbId(8077).setImdbId("tt0103644").build();
+
+        searchCheckpointService.write(new SearchCheckpoint(MACHINE_IDENTIFIER, KEY, 1000L, List.of(alien), List.of(alien, aliens), List.of(alien3)));
+
+        assertTrue(Files.exists(folder.resolve(MACHINE_IDENTIFIER).resolve(KEY.toString()).resolve("searchCheckpoint.json")), "Checkpoint should be kept in the library's folder");
+        SearchCheckpoint searchCheckpoint = searchCheckpointService.read(MACHINE_IDENTIFIER, KEY).orElseThrow();
+        assertEquals(1000L, searchCheckpoint.getSavedAt().longValue(), "Save time should be read back");
+        assertEquals(List.of(alien), searchCheckpoint.getProcessed(), "Processed movies should be read back");
+        assertEquals(List.of(alien, aliens), searchCheckpoint.getSearched(), "Searched movies should be read back");
+        assertEquals(List.of(alien3), searchCheckpoint.getRecommended(), "Recommended movies should be read back");
+        assertEquals("Alien Collection", searchCheckpoint.getSearched().get(0).getCollectionTitle(), "Resolved collection should be read back");
+        assertEquals("tt0103644", searchCheckpoint.getRecommended().get(0).getImdbId(), "Recommended ids should be read back");
+    }
+
+    @Test
+    void latestCheckpointReplacesEarlierOne() {
+        BasicMovie alien = new BasicMovie.Builder("Alien", 1979).setTmdbId(348).build();
+        BasicMovie aliens = new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).build();
+
+        searchCheckpointService.write(new SearchCheckpoint(MACHINE_IDENTIFIER, KEY, 1000L, List.of(alien), List.of(), List.of()));
+        searchCheckpointService.write(new SearchCheckpoint(MACHINE_IDENTIFIER, KEY, 2000L, List.of(alien, aliens), List.of(), List.of()));
+
+        SearchCheckpoint searchCheckpoint = searchCheckpointService.read(MACHINE_IDENTIFIER, KEY).orElseThrow();
+        assertEquals(2000L, searchCheckpoint.getSavedAt().longValue(), "Latest checkpoint should be read");
+        assertEquals(2, searchCheckpoint.getProcessed().size(), "Latest progress should be read");
+    }
+
+    @Test
+    void missingCheckpointIsEmpty() {
+        assertFalse(searchCheckpointService.read(MACHINE_IDENTIFIER, KEY).isPresent(), "Library never searched should have no checkpoint");
+    }
+
+    @Test
+    void deletedCheckpointIsGone() {
+        searchCheckpointService.write(new SearchCheckpoint(MACHINE_IDENTIFIER, KEY, 1000L, List.of(), List.of(), List.of()));
+
+        searchCheckpointService.delete(MACHINE_IDENTIFIER, KEY);
+
+        assertFalse(searchCheckpointService.read(MACHINE_IDENTIFIER, KEY).isPresent(), "Finished search should leave no checkpoint");
+    }
+
+    @Test
+    void unreadableCheckpointIsIgnored() throws IOException {
+        Path file = folder.resolve(MACHINE_IDENTIFIER).resolve(KEY.toString()).resolve("searchCheckpoint.json");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "{\"machineIdentifier\":\"machine\",\"key\":1,\"proc".getBytes(StandardCharsets.UTF_8));
+
+        Optional<SearchCheckpoint> searchCheckpoint = searchCheckpointService.read(MACHINE_IDENTIFIER, KEY);
+
+        assertFalse(searchCheckpoint.isPresent(), "Broken checkpoint should start the search over");
+    }
+
+    @Test
+    void checkpointOfAnotherLibraryIsIgnored() throws IOException {
+        searchCheckpointService.write(new SearchCheckpoint("other", 2, 1000L, List.of(), List.of(), List.of()));
+        Path otherFile = folder.resolve("other").resolve("2").resolve("searchCheckpoint.json");
+        Path file = folder.resolve(MACHINE_IDENTIFIER).resolve(KEY.toString()).resolve("searchCheckpoint.json");
+        Files.createDirectories(file.getParent());
+        Files.copy(otherFile, file);
+
+        assertFalse(searchCheckpointService.read(MACHINE_IDENTIFIER, KEY).isPresent(), "Checkpoint of another library should not be resumed");
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.SearchJob;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchJobRegistryTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private SearchJobRegistry searchJobRegistry;
+
+    @BeforeEach
+    void setUp() {
+        searchJobRegistry = new SearchJobRegistry(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchJobRegistry.close();
+    }
+
+    @Test
+    void searchesLibrariesSideBySideUpToTheLimit() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        SearchJob[] searchJobs = new SearchJob[3];
+        for (int key = 0; key < searchJobs.length; key++) {
+            searchJobs[key] = searchJobRegistry.submit("machine", key, searchJob -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                bothRunning.countDown();
+                await(release);
+                running.decrementAndGet();
+            });
+        }
+
+        assertTrue(bothRunning.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Two libraries should be searched at once");
+        assertEquals(SearchJob.State.QUEUED, searchJobs[2].getState(), "Third library should wait its turn");
+        assertTrue(searchJobRegistry.isSearching(), "Registry should report searches under way");
+
+        release.countDown();
+        for (SearchJob searchJob : searchJobs) {
+            searchJob.getCompletion().join();
+            assertEquals(SearchJob.State.FINISHED, searchJob.getState(), "Every search should finish");
+        }
+        assertEquals(2, maxRunning.get(), "No more than two searches should run at once");
+        assertFalse(searchJobRegistry.isSearching(), "Nothing should be searching after every search finished");
+    }
+
+    @Test
+    void libraryOnlyHasOneSearchUnderWay() {
+        CountDownLatch release = new CountDownLatch(1);
+        SearchJob first = searchJobRegistry.submit("machine", 1, searchJob -> await(release));
+        SearchJob second = searchJobRegistry.submit("machine", 1, searchJob -> {
+            throw new IllegalStateException("Second search shouldn't run");
+        });
+        assertSame(first, second, "Second request should get the search under way");
+
+        release.countDown();
+        first.getCompletion().join();
+        SearchJob third = searchJobRegistry.submit("machine", 1, searchJob -> {
+        });
+        assertNotSame(first, third, "Finished search should be replaced by a new one");
+        third.getCompletion().join();
+        assertSame(third, searchJobRegistry.get("machine", 1).orElseThrow(), "Latest search should be tracked");
+    }
+
+    @Test
+    void cancellingOneLibraryLeavesTheOthersRunning() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+        SearchJob cancelled = searchJobRegistry.submit("machine", 1, searchJob -> runUntilCancelled(searchJob, started));
+        SearchJob other = searchJobRegistry.submit("machine", 2, searchJob -> runUntilCancelled(searchJob, started));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "Both searches should start");
+
+        assertTrue(searchJobRegistry.cancel("machine", 1), "Running search should be cancelled");
+        cancelled.getCompletion().join();
+
+        assertEquals(SearchJob.State.CANCELLED, cancelled.getState(), "Cancelled search should say so");
+        assertTrue(other.isActive(), "Other library should keep searching");
+        assertTrue(searchJobRegistry.isSearching("machine", 2), "Other library should still be searching");
+        assertFalse(searchJobRegistry.isSearching("machine", 1), "Cancelled library shouldn't be searching");
+
+        searchJobRegistry.cancelAll();
+        other.getCompletion().join();
+        assertEquals(SearchJob.State.CANCELLED, other.getState(), "Cancel all should reach every search");
+    }
+
+    @Test
+    void failedSearchPassesOnTheError() {
+        IllegalStateException error = new IllegalStateException("TMDB down");
+        SearchJob searchJob = searchJobRegistry.submit("machine", 1, ignored -> {
+            throw error;
+        });
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> searchJob.getCompletion().join(), "Waiting on a failed search should throw");
+        assertSame(error, thrown.getCause(), "Error should be passed on");
+        assertEquals(SearchJob.State.FAILED, searchJob.getState(), "Search should be marked failed");
+    }
+
+    @Test
+    void searchThatThrowsAnErrorIsMarkedFailed() {
+        StackOverflowError error = new StackOverflowError("Too deep");
+        SearchJob searchJob = searchJobRegistry.submit("machine", 1, ignored -> {
+            throw error;
+        });
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> searchJob.getCompletion().join(), "Waiting on a failed search should throw");
+        assertSame(error, thrown.getCause(), "Error should be passed on");
+        assertEquals(SearchJob.State.FAILED, searchJob.getState(), "Search should be marked failed");
+        assertFalse(searchJobRegistry.isSearching("machine", 1), "Library shouldn't be left searching");
+
+        SearchJob next = searchJobRegistry.submit("machine", 1, ignored -> {
+        });
+        next.getCompletion().join();
+        assertEquals(SearchJob.State.FINISHED, next.getState(), "Library should be searchable again");
+    }
+
+    private static void runUntilCancelled(SearchJob searchJob, CountDownLatch started) {
+        started.countDown();
+        while (!searchJob.isCancelled()) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
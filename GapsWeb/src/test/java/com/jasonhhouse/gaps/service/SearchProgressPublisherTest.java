@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import com.jasonhhouse.gaps.BasicMovie;
+import com.jasonhhouse.gaps.SearchJob;
+import com.jasonhhouse.gaps.SearchResults;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchProgressPublisherTest {
+
+    private static final String MACHINE_IDENTIFIER = "machine";
+    private static final Integer KEY = 1;
+
+    private final List<Message<?>> messages = new CopyOnWriteArrayList<>();
+
+    private final SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> messages.add(message));
+
+    private SearchProgressPublisher searchProgressPublisher;
+
+    @AfterEach
+    void tearDown() {
+        searchProgressPublisher.close();
+    }
+
+    @Test
+    void updatesBetweenIntervalsGoOutTogether() {
+        searchProgressPublisher = new SearchProgressPublisher(template, TimeUnit.HOURS.toMillis(1));
+        SearchJob searchJob = newSearchJob(100);
+        searchProgressPublisher.start(searchJob);
+
+        for (int i = 0; i < 100; i++) {
+            searchJob.getSearchedMovieCount().incrementAndGet();
+            searchProgressPublisher.updated(MACHINE_IDENTIFIER, KEY);
+        }
+        searchProgressPublisher.recommended(MACHINE_IDENTIFIER, KEY, new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).build());
+        searchProgressPublisher.recommended(MACHINE_IDENTIFIER, KEY, new BasicMovie.Builder("Alien³", 1992).setTmdbId(8077).build());
+        searchProgressPublisher.finish(MACHINE_IDENTIFIER, KEY);
+
+        assertEquals(1, messages.size(), "Everything in one interval should be one update");
+        assertEquals("/newMovieFound/machine/1", SimpMessageHeaderAccessor.getDestination(messages.get(0).getHeaders()), "Update should go to the library's topic");
+        SearchResults searchResults = (SearchResults) messages.get(0).getPayload();
+        assertEquals(100, searchResults.getSearchedMovieCount(), "Update should have the latest count");
+        assertEquals(100, searchResults.getTotalMovieCount(), "Update should have the total");
+        assertEquals(List.of("Aliens", "Alien³"), searchResults.getNextMovies().stream().map(BasicMovie::getName).collect(Collectors.toList()), "Update should have every new recommendation");
+    }
+
+    @Test
+    void nothingIsSentWhenNothingChanged() throws InterruptedException {
+        searchProgressPublisher = new SearchProgressPublisher(template, 10);
+        SearchJob searchJob = newSearchJob(100);
+        searchJob.getSearchedMovieCount().set(5);
+        searchProgressPublisher.start(searchJob);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+        searchProgressPublisher.finish(MACHINE_IDENTIFIER, KEY);
+
+        assertEquals(1, messages.size(), "Counts that didn't change should only be sent once");
+    }
+
+    @Test
+    void everyRecommendationIsSentOnce() throws InterruptedException {
+        searchProgressPublisher = new SearchProgressPublisher(template, 5);
+        SearchJob searchJob = newSearchJob(2000);
+        searchProgressPublisher.start(searchJob);
+
+        int recommendations = 0;
+        for (int i = 0; i < 2000; i++) {
+            searchJob.getSearchedMovieCount().incrementAndGet();
+            searchProgressPublisher.updated(MACHINE_IDENTIFIER, KEY);
+            if (i % 10 == 0) {
+                searchProgressPublisher.recommended(MACHINE_IDENTIFIER, KEY, new BasicMovie.Builder("Movie " + i, 2000).setTmdbId(i).build());
+                recommendations++;
+            }
+            if (i % 100 == 0) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        }
+        searchProgressPublisher.finish(MACHINE_IDENTIFIER, KEY);
+
+        List<SearchResults> sent = messages.stream().map(message -> (SearchResults) message.getPayload()).collect(Collectors.toList());
+        List<Integer> tmdbIds = sent.stream().flatMap(searchResults -> searchResults.getNextMovies().stream()).map(BasicMovie::getTmdbId).collect(Collectors.toList());
+        assertEquals(recommendations, tmdbIds.size(), "Every recommendation should be sent once");
+        assertEquals(recommendations, tmdbIds.stream().distinct().count(), "No recommendation should be sent twice");
+        assertEquals(2000, sent.get(sent.size() - 1).getSearchedMovieCount(), "Last update should have the final count");
+        assertTrue(sent.size() < 2000 + recommendations, "Updates should be coalesced");
+    }
+
+    @Test
+    void librariesHaveTheirOwnTopics() {
+        searchProgressPublisher = new SearchProgressPublisher(template, TimeUnit.HOURS.toMillis(1));
+        SearchJob first = newSearchJob(10);
+        SearchJob second = new SearchJob(MACHINE_IDENTIFIER, 2);
+        second.getTotalMovieCount().set(10);
+        searchProgressPublisher.start(first);
+        searchProgressPublisher.start(second);
+
+        searchProgressPublisher.recommended(MACHINE_IDENTIFIER, 2, new BasicMovie.Builder("Aliens", 1986).setTmdbId(679).build());
+        searchProgressPublisher.finish(MACHINE_IDENTIFIER, KEY);
+        searchProgressPublisher.finish(MACHINE_IDENTIFIER, 2);
+
+        for (Message<?> message : messages) {
+            SearchResults searchResults = (SearchResults) message.getPayload();
+            if ("/newMovieFound/machine/2".equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+                assertEquals(1, searchResults.getNextMovies().size(), "Recommendation should go to its own library's topic");
+            } else {
+                assertTrue(searchResults.getNextMovies().isEmpty(), "Recommendation should not go to another library's topic");
+            }
+        }
+    }
+
+    private SearchJob newSearchJob(int totalMovieCount) {
+        SearchJob searchJob = new SearchJob(MACHINE_IDENTIFIER, KEY);
+        searchJob.getTotalMovieCount().set(totalMovieCount);
+        return searchJob;
+    }
+}
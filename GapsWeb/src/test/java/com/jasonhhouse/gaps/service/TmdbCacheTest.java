@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.jasonhhouse.gaps.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TmdbCacheTest {
+
+    private static final String MOVIE_JSON = "{\"id\":348,\"title\":\"Alien\"}";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void missThenHit() {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+
+        assertNull(tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US"), "Nothing cached yet");
+        tmdbCache.put(TmdbCache.Type.MOVIE, "348_en-US", MOVIE_JSON);
+        assertEquals(MOVIE_JSON, tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US"), "Should return the cached response");
+
+        assertEquals(1, tmdbCache.getHits(), "One hit expected");
+        assertEquals(1, tmdbCache.getMisses(), "One miss expected");
+    }
+
+    @Test
+    void hitsAndMissesAreMetered() {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        tmdbCache.bindTo(meterRegistry);
+
+        tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US");
+        tmdbCache.put(TmdbCache.Type.MOVIE, "348_en-US", MOVIE_JSON);
+        tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US");
+        tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US");
+
+        assertEquals(2.0, meterRegistry.get("gaps.tmdb.cache.hits").functionCounter().count(), "Two hits expected");
+        assertEquals(1.0, meterRegistry.get("gaps.tmdb.cache.misses").functionCounter().count(), "One miss expected");
+        assertEquals(2.0 / 3, meterRegistry.get("gaps.tmdb.cache.hit.ratio").gauge().value(), 0.001, "Two of three lookups hit");
+        assertEquals(1.0, meterRegistry.get("gaps.tmdb.cache.memory.entries").gauge().value(), "One entry held in memory");
+    }
+
+    @Test
+    void readsFromDiskAfterRestart() {
+        new TmdbCache(folder, Duration.ofHours(1), 10).put(TmdbCache.Type.COLLECTION, "8091_en-US", MOVIE_JSON);
+
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+        assertEquals(MOVIE_JSON, tmdbCache.get(TmdbCache.Type.COLLECTION, "8091_en-US"), "Should return the response saved to disk");
+        assertTrue(Files.exists(folder.resolve("collection").resolve("8091_en-US.json")), "Collection should be saved by type and id");
+    }
+
+    @Test
+    void expiredEntriesMiss() throws IOException {
+        new TmdbCache(folder, Duration.ofHours(1), 10).put(TmdbCache.Type.MOVIE, "348_en-US", MOVIE_JSON);
+        Files.setLastModifiedTime(folder.resolve("movie").resolve("348_en-US.json"), FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+        assertNull(tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US"), "Entry older than the TTL should not be used");
+        assertEquals(1, tmdbCache.getMisses(), "Expired entry counts as a miss");
+    }
+
+    @Test
+    void expiredFilesAreDeletedWhenRead() throws IOException {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+        tmdbCache.put(TmdbCache.Type.MOVIE, "348_en-US", MOVIE_JSON);
+        Path file = folder.resolve("movie").resolve("348_en-US.json");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        assertNull(new TmdbCache(folder, Duration.ofHours(1), 10).get(TmdbCache.Type.MOVIE, "348_en-US"), "Entry older than the TTL should not be used");
+        assertFalse(Files.exists(file), "Expired file should be deleted once read");
+    }
+
+    @Test
+    void removeExpiredKeepsFreshFiles() throws IOException {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+        tmdbCache.put(TmdbCache.Type.MOVIE, "1_en-US", MOVIE_JSON);
+        tmdbCache.put(TmdbCache.Type.COLLECTION, "2_en-US", MOVIE_JSON);
+        tmdbCache.put(TmdbCache.Type.MOVIE, "3_en-US", MOVIE_JSON);
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofHours(2)));
+        Files.setLastModifiedTime(folder.resolve("movie").resolve("1_en-US.json"), old);
+        Files.setLastModifiedTime(folder.resolve("collection").resolve("2_en-US.json"), old);
+        Path temp = Files.writeString(folder.resolve("movie").resolve("4_en-US.json123.tmp"), MOVIE_JSON);
+        Files.setLastModifiedTime(temp, old);
+
+        assertEquals(3, tmdbCache.removeExpired(), "Both expired responses and the stale temp file should be deleted");
+        assertTrue(Files.exists(folder.resolve("movie").resolve("3_en-US.json")), "Fresh response should be kept");
+        assertFalse(Files.exists(folder.resolve("collection").resolve("2_en-US.json")), "Expired collection should be deleted");
+    }
+
+    @Test
+    void removeExpiredWithoutFolder() {
+        assertEquals(0, new TmdbCache(folder.resolve("missing"), Duration.ofHours(1), 10).removeExpired(), "Nothing to delete");
+    }
+
+    @Test
+    void evictedEntriesFallBackToDisk() {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 1);
+        tmdbCache.put(TmdbCache.Type.MOVIE, "1_en-US", MOVIE_JSON);
+        tmdbCache.put(TmdbCache.Type.MOVIE, "2_en-US", MOVIE_JSON);
+
+        assertEquals(MOVIE_JSON, tmdbCache.get(TmdbCache.Type.MOVIE, "1_en-US"), "Evicted entry should still be read from disk");
+    }
+
+    @Test
+    void searchIdsAreHashed() throws IOException {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ofHours(1), 10);
+        tmdbCache.put(TmdbCache.Type.SEARCH, "Alien: Resurrection_1997_en-US", MOVIE_JSON);
+
+        assertEquals(MOVIE_JSON, tmdbCache.get(TmdbCache.Type.SEARCH, "Alien: Resurrection_1997_en-US"), "Search should be cached");
+        try (var files = Files.list(folder.resolve("search"))) {
+            assertTrue(files.allMatch(file -> file.getFileName().toString().matches("[0-9a-f]{32}\\.json")), "Titles should not be used as file names");
+        }
+    }
+
+    @Test
+    void disabled() {
+        TmdbCache tmdbCache = new TmdbCache(folder, Duration.ZERO, 10);
+        tmdbCache.put(TmdbCache.Type.MOVIE, "348_en-US", MOVIE_JSON);
+
+        assertFalse(tmdbCache.isEnabled(), "Zero TTL turns the cache off");
+        assertNull(tmdbCache.get(TmdbCache.Type.MOVIE, "348_en-US"), "Nothing should be cached");
+    }
+}
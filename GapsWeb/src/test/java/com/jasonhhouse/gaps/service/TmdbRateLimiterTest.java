@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 Jason H House
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.jasonhhouse.gaps.service;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TmdbRateLimiterTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TmdbRateLimiterTest.class);
+
+    private static final double REQUESTS_PER_SECOND = 40;
+
+    private static final long NANOS_PER_PERMIT = TimeUnit.MILLISECONDS.toNanos(25);
+
+    private static final int REQUESTS = 160;
+
+    private static final int THREADS = 8;
+
+    private AtomicLong ticker;
+
+    @BeforeEach
+    void setUp() {
+        ticker = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Test
+    void burstIsNotDelayed() {
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(REQUESTS_PER_SECOND, 5, ticker::get);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, tmdbRateLimiter.reserve(), "Request " + i + " is part of the burst and should not wait");
+        }
+        assertEquals(NANOS_PER_PERMIT, tmdbRateLimiter.reserve(), "The request after the burst should wait for one permit");
+    }
+
+    @Test
+    void firstSecondStaysWithinQuota() {
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(REQUESTS_PER_SECOND, 1, ticker::get);
+        int allowed = 0;
+        while (tmdbRateLimiter.reserve() < TimeUnit.SECONDS.toNanos(1)) {
+            allowed++;
+        }
+        assertEquals((int) REQUESTS_PER_SECOND, allowed, "Only the quota should be let through in the first second");
+    }
+
+    @Test
+    void permitsAreSpacedByTheRate() {
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(REQUESTS_PER_SECOND, 1, ticker::get);
+        for (int i = 0; i < 160; i++) {
+            assertEquals(i * NANOS_PER_PERMIT, tmdbRateLimiter.reserve(), "Request " + i + " should wait for its own slot");
+        }
+    }
+
+    @Test
+    void permitsFollowTheClock() {
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(REQUESTS_PER_SECOND, 1, ticker::get);
+        assertEquals(0, tmdbRateLimiter.reserve(), "The first request should not wait");
+        ticker.addAndGet(NANOS_PER_PERMIT / 5);
+        assertEquals(NANOS_PER_PERMIT * 4 / 5, tmdbRateLimiter.reserve(), "Only the rest of the interval should be waited");
+        ticker.addAndGet(NANOS_PER_PERMIT * 4 / 5);
+        assertEquals(NANOS_PER_PERMIT, tmdbRateLimiter.reserve(), "The reserved slot should still be taken");
+    }
+
+    @Test
+    void idleTimeOnlyRefillsTheBurst() {
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(REQUESTS_PER_SECOND, 3, ticker::get);
+        for (int i = 0; i < 3; i++) {
+            tmdbRateLimiter.reserve();
+        }
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, tmdbRateLimiter.reserve(), "Request " + i + " should use the refilled burst");
+        }
+        assertEquals(NANOS_PER_PERMIT, tmdbRateLimiter.reserve(), "Idle time should not build up more than the burst");
+    }
+
+    @Test
+    void acquireSleepsForTheReservedSlot() throws InterruptedException {
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(1000, 1);
+        long start = System.nanoTime();
+        tmdbRateLimiter.acquire();
+        tmdbRateLimiter.acquire();
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(1), "The second request should wait for the next slot, took " + elapsed + "ns");
+    }
+
+    /**
+     * Drives a mock TMDB from several threads and counts the requests that reach it in every one second window
+     */
+    @Test
+    @Tag("benchmark")
+    void throughputMatchesQuota() throws Exception {
+        List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+        HttpServer tmdb = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        tmdb.createContext("/3/movie", exchange -> {
+            arrivals.add(System.nanoTime());
+            byte[] body = "{\"id\":1,\"title\":\"Mock\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        ExecutorService tmdbExecutor = Executors.newFixedThreadPool(THREADS);
+        tmdb.setExecutor(tmdbExecutor);
+        tmdb.start();
+
+        TmdbRateLimiter tmdbRateLimiter = new TmdbRateLimiter(REQUESTS_PER_SECOND, 1);
+        OkHttpClient client = new OkHttpClient();
+        String url = "http://" + tmdb.getAddress().getHostString() + ":" + tmdb.getAddress().getPort() + "/3/movie/1";
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            //Open every connection first so setting them up doesn't bunch the first requests together
+            List<Future<Integer>> warmUp = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                warmUp.add(executorService.submit(() -> get(client, url)));
+            }
+            for (Future<Integer> future : warmUp) {
+                future.get();
+            }
+            arrivals.clear();
+
+            long start = System.nanoTime();
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                futures.add(executorService.submit(() -> {
+                    tmdbRateLimiter.acquire();
+                    return get(client, url);
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(200, future.get().intValue(), "Mock TMDB should answer every request");
+            }
+            double throughput = REQUESTS / ((System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1));
+            int busiestSecond = busiestSecond(arrivals);
+
+            LOGGER.info("{} requests at {} per second, at most {} in any one second", REQUESTS, throughput, busiestSecond);
+            assertEquals(REQUESTS, arrivals.size(), "Every request should reach mock TMDB");
+            assertTrue(busiestSecond <= REQUESTS_PER_SECOND * 1.05, busiestSecond + " requests reached mock TMDB in one second");
+            assertTrue(throughput >= REQUESTS_PER_SECOND * 0.85, "Throughput of " + throughput + " requests per second is well under the quota");
+        } finally {
+            executorService.shutdownNow();
+            tmdb.stop(0);
+            tmdbExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TmdbRateLimiter(0), "Rate must be positive");
+    }
+
+    @Test
+    void invalidBurst() {
+        assertThrows(IllegalArgumentException.class, () -> new TmdbRateLimiter(REQUESTS_PER_SECOND, 0), "Burst must be positive");
+    }
+
+    private static int get(@NotNull OkHttpClient client, @NotNull String url) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            return response.code();
+        }
+    }
+
+    /**
+     * @return Most requests that arrived within any one second
+     */
+    private static int busiestSecond(@NotNull List<Long> arrivals) {
+        List<Long> sorted = new ArrayList<>(arrivals);
+        Collections.sort(sorted);
+        int busiest = 0;
+        int first = 0;
+        for (int last = 0; last < sorted.size(); last++) {
+            while (sorted.get(last) - sorted.get(first) >= TimeUnit.SECONDS.toNanos(1)) {
+                first++;
+            }
+            busiest = Math.max(busiest, last - first + 1);
+        }
+        return busiest;
+    }
+}
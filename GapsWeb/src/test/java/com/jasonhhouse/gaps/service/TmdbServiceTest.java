@@ -1,11 +1,13 @@
 package com.jasonhhouse.gaps.service;
 
+import com.jasonhhouse.gaps.GapsConfiguration;
 import com.jasonhhouse.gaps.Payload;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
@@ -13,6 +15,9 @@ import static org.junit.Assert.assertEquals;
 @RunWith(MockitoJUnitRunner.class)
 public class TmdbServiceTest {
 
+    @Spy
+    HttpClientFactory httpClientFactory = new HttpClientFactory(new GapsConfiguration.Http(180000L, 30000L, 2500L, 2500L, 5, 300L), 4, 4);
+
     @InjectMocks
     TmdbService tmdbService;
 